@@ -0,0 +1,88 @@
+package com.marksware.simplescheduler.presentation;
+
+import com.marksware.simplescheduler.models.SimpleEvent;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/*
+Builds synthetic calendars for the benchmarks.
+A share of the events carry a scheduling command, and a share are halves we generated on an earlier run.
+Recurring events repeat every weekday or once a week, without an end, as most standing meetings do.
+ */
+public class CalendarGenerator {
+
+    public static List<SimpleEvent> Generate(int count, double commandRatio, double generatedRatio, long seed)
+    {
+        return Generate(count, commandRatio, generatedRatio, seed, Instant.parse("2026-01-05T09:00:00Z"));
+    }
+
+    // Eight events a day from start onwards
+    public static List<SimpleEvent> Generate(int count, double commandRatio, double generatedRatio, long seed, Instant start)
+    {
+        var random = new Random(seed);
+        var events = new ArrayList<SimpleEvent>(count);
+
+        for (int i = 0; i < count; i++) {
+            var e = new SimpleEvent();
+            e.SetID(String.format("ev%08d", i));
+            e.SetSummary("Event " + i);
+            e.SetLocation(random.nextBoolean() ? "Room " + random.nextInt(20) : "");
+
+            var eventStart = start.plus(i / 8, ChronoUnit.DAYS).plus(random.nextInt(9 * 60), ChronoUnit.MINUTES);
+            var eventEnd = eventStart.plus(15 + random.nextInt(8) * 15, ChronoUnit.MINUTES);
+            e.SetStartDateTime(eventStart);
+            e.SetEndDateTime(eventEnd);
+
+            var roll = random.nextDouble();
+            if (roll < generatedRatio) {
+                e.SetDescription(SchedulingUtil.SchedulingCommands._SimpleSchedule_SplitInHalfToNextDay.toString());
+                e.GetExtendedProperties().put(SchedulingUtil.ScheduledIdentifiers._SimpleSchedule_Generated.toString(), "");
+                e.GetExtendedProperties().put(SchedulingUtil.ScheduledIdentifiers._SimpleSchedule_SourceID.toString(),
+                        String.format("ev%08d", Math.max(0, i - 8)));
+            } else if (roll < generatedRatio + commandRatio) {
+                e.SetDescription("Notes for " + i + "\n" + SchedulingUtil.SchedulingCommands._SimpleSchedule_SplitInHalfToNextDay.toString());
+                // Half of the command events look like they were split on an earlier run
+                if (random.nextBoolean()) {
+                    var props = e.GetExtendedProperties();
+                    var half = eventStart.plus(Duration.between(eventStart, eventEnd).dividedBy(2));
+                    props.put(SchedulingUtil.ScheduledIdentifiers._SimpleSchedule_OriginalStartDateTime.toString(), eventStart.toString());
+                    props.put(SchedulingUtil.ScheduledIdentifiers._SimpleSchedule_OriginalEndDateTime.toString(), eventEnd.toString());
+                    props.put(SchedulingUtil.ScheduledIdentifiers._SimpleSchedule_UpdatedStartDateTime.toString(), eventStart.toString());
+                    props.put(SchedulingUtil.ScheduledIdentifiers._SimpleSchedule_UpdatedEndDateTime.toString(), half.toString());
+                    e.SetEndDateTime(half);
+                }
+            } else {
+                e.SetDescription(random.nextInt(4) == 0 ? "Agenda: item one, item two" : "");
+            }
+            events.add(e);
+        }
+        return events;
+    }
+
+    // Recurring events starting on days from start onwards, in a zone with daylight saving
+    public static List<SimpleEvent> GenerateRecurring(int count, double commandRatio, long seed, Instant start)
+    {
+        var random = new Random(seed);
+        var events = new ArrayList<SimpleEvent>(count);
+
+        for (int i = 0; i < count; i++) {
+            var e = new SimpleEvent();
+            e.SetID(String.format("rec%06d", i));
+            e.SetSummary((i % 2 == 0 ? "Standup " : "Weekly ") + i);
+            var eventStart = start.plus(i % 7, ChronoUnit.DAYS).plus(random.nextInt(9 * 4) * 15, ChronoUnit.MINUTES);
+            e.SetStartDateTime(eventStart);
+            e.SetEndDateTime(eventStart.plus(15 + random.nextInt(4) * 15, ChronoUnit.MINUTES));
+            e.SetTimeZone("America/New_York");
+            e.SetRecurrence(List.of(i % 2 == 0 ? "RRULE:FREQ=WEEKLY;BYDAY=MO,TU,WE,TH,FR" : "RRULE:FREQ=WEEKLY"));
+            e.SetDescription(random.nextDouble() < commandRatio
+                    ? "Notes for " + i + "\n" + SchedulingUtil.SchedulingCommands._SimpleSchedule_SplitInHalfToNextDay.toString() : "");
+            events.add(e);
+        }
+        return events;
+    }
+}
@@ -0,0 +1,136 @@
+package com.marksware.simplescheduler.presentation;
+
+import com.google.api.client.http.javanet.NetHttpTransport;
+import com.marksware.simplescheduler.models.SimpleEvent;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+Load test of the whole scheduler against FakeCalendarServer: pages are fetched, events expanded, and the writes sent
+back as batches, all through GoogleUtil and the Google client library, with latency, errors and rate limiting injected
+by the server. Reports end to end events/s for every round.
+
+    java -cp out:libs/* com.marksware.simplescheduler.presentation.CalendarLoadTest
+        [--events 10000] [--calendars 1] [--commands 0.1] [--rounds 2] [--incremental] [--edits 100]
+        [--recurring 0] [--recurring-commands 0.1] [--expand-recurrence]
+        [--page-size 250] [--parallel 4] [--max-in-flight 4] [--backoff-millis 500]
+        [--latency-millis 20] [--jitter-millis 10] [--part-latency-millis 1] [--error-rate 0] [--rate-limit-rate 0]
+        [--no-streaming-parse] [--log-level warn] [--serve 8090]
+
+The first round writes the split halves; later rounds find little to change, unless --incremental edits events in
+between. --incremental keeps its sync state under sync/ in the working directory, like the scheduler does.
+--recurring adds that many recurring events to each calendar, which Google would list instance by instance unless
+--expand-recurrence has the scheduler fetch them whole and expand them itself.
+--serve only seeds the server and keeps it running on the given port, to try the scheduler itself against it:
+
+    java -cp out:libs/* Main --root-url http://127.0.0.1:8090/ --all-calendars
+ */
+public class CalendarLoadTest {
+
+    public static void main(String[] args) throws Exception
+    {
+        var eventCount = Integer.parseInt(GetOption(args, "--events", "10000"));
+        var calendarCount = Integer.parseInt(GetOption(args, "--calendars", "1"));
+        var commands = Double.parseDouble(GetOption(args, "--commands", "0.1"));
+        var rounds = Integer.parseInt(GetOption(args, "--rounds", "2"));
+        var incremental = List.of(args).contains("--incremental");
+        var edits = Integer.parseInt(GetOption(args, "--edits", "100"));
+        var pageSize = Integer.parseInt(GetOption(args, "--page-size", "250"));
+        var parallel = Integer.parseInt(GetOption(args, "--parallel", "4"));
+        var recurring = Integer.parseInt(GetOption(args, "--recurring", "0"));
+        var recurringCommands = Double.parseDouble(GetOption(args, "--recurring-commands", "0.1"));
+        var serve = GetOption(args, "--serve", null);
+        Log.SetLevel(Log.ParseLevel(GetOption(args, "--log-level", "warn")));
+
+        var server = new FakeCalendarServer(serve != null ? Integer.parseInt(serve) : 0);
+        server.SetLatencyMillis(Long.parseLong(GetOption(args, "--latency-millis", "20")));
+        server.SetJitterMillis(Long.parseLong(GetOption(args, "--jitter-millis", "10")));
+        server.SetPartLatencyMillis(Long.parseLong(GetOption(args, "--part-latency-millis", "1")));
+        server.SetErrorRate(Double.parseDouble(GetOption(args, "--error-rate", "0")));
+        server.SetRateLimitRate(Double.parseDouble(GetOption(args, "--rate-limit-rate", "0")));
+
+        // Starting from today keeps every event inside the year that a full run fetches
+        var start = Instant.now().truncatedTo(ChronoUnit.DAYS).plus(9, ChronoUnit.HOURS);
+        var calendarIDs = new ArrayList<String>();
+        for (int c = 0; c < calendarCount; c++) {
+            var calendarID = c == 0 ? SimpleEvent.CALENDARID_PRIMARY : "calendar" + c;
+            calendarIDs.add(calendarID);
+            for (var e : CalendarGenerator.Generate(eventCount, commands, 0, 42 + c, start)) {
+                e.SetCalendarID(calendarID);
+                server.PutEvent(e);
+            }
+            // Recurring events that began a month ago, so some of their instances are in the past
+            for (var e : CalendarGenerator.GenerateRecurring(recurring, recurringCommands, 1042 + c, start.minus(30, ChronoUnit.DAYS))) {
+                e.SetCalendarID(calendarID);
+                server.PutEvent(e);
+            }
+        }
+        server.Start();
+
+        if (serve != null) {
+            System.out.printf("Serving %d calendars of %d events at %s\n", calendarCount, eventCount, server.GetRootUrl());
+            Thread.currentThread().join();
+        }
+
+        GoogleUtil.SetRootUrl(server.GetRootUrl());
+        GoogleUtil.SetTransport(new NetHttpTransport());
+        GoogleUtil.SetStreamingParse(!List.of(args).contains("--no-streaming-parse"));
+        SchedulingUtil.SetExpandRecurrence(List.of(args).contains("--expand-recurrence"));
+        var pipeline = SchedulingUtil.GetPipeline();
+        pipeline.SetMaxInFlight(Integer.parseInt(GetOption(args, "--max-in-flight", "4")));
+        pipeline.SetBaseBackoffMillis(Long.parseLong(GetOption(args, "--backoff-millis", "500")));
+
+        try {
+            for (int round = 1; round <= rounds; round++) {
+                if (incremental && round > 1) {
+                    for (var calendarID : calendarIDs) {
+                        server.EditEvents(calendarID, edits);
+                    }
+                }
+                var started = System.nanoTime();
+                var reports = SchedulingUtil.ProcessCalendars(calendarIDs, pageSize, parallel, incremental);
+                var seconds = (System.nanoTime() - started) / 1e9;
+
+                int fetched = 0, writes = 0, failed = 0;
+                for (var r : reports) {
+                    if (r.GetError() != null)
+                        System.out.printf("%s failed: %s\n", r.GetCalendarID(), r.GetError());
+                    fetched += r.GetFetchedEvents();
+                    writes += r.GetDeleted() + r.GetUpdated() + r.GetAdded();
+                    failed += r.GetFailed();
+                }
+                System.out.printf("Round %d: %d events, %d writes (%d failed) in %.2f s: %.0f events/s, %.0f writes/s\n",
+                        round, fetched, writes, failed, seconds, fetched / seconds, writes / seconds);
+            }
+        } finally {
+            server.Stop();
+        }
+
+        var snapshot = Metrics.GetSnapshot();
+        System.out.printf("Server: %d requests, %d calls, %d injected errors, %d injected rate limits\n",
+                server.GetRequests(), server.GetCalls(), server.GetInjectedErrors(), server.GetInjectedRateLimits());
+        System.out.printf("Client: %d write retries, %d read retries, %d rate limited, %d bytes sent, %d bytes received\n",
+                snapshot.GetCounters().getOrDefault("retries", 0L), snapshot.GetCounters().getOrDefault("retries:read", 0L),
+                snapshot.GetCounters().getOrDefault("rate_limited", 0L),
+                snapshot.GetCounters().getOrDefault("bytes:sent", 0L), snapshot.GetCounters().getOrDefault("bytes:received", 0L));
+        for (var t : snapshot.GetTimers().entrySet()) {
+            if (!t.getKey().startsWith("google:"))
+                continue;
+            var timer = t.getValue();
+            System.out.printf("%-24s %8d calls %10.1f ms p50 %10.1f ms p99\n", t.getKey(), timer.GetCount(),
+                    timer.GetPercentileNanos(0.5) / 1e6, timer.GetPercentileNanos(0.99) / 1e6);
+        }
+    }
+
+    private static String GetOption(String[] args, String name, String defaultValue)
+    {
+        for (int i = 0; i + 1 < args.length; i++) {
+            if (args[i].equals(name))
+                return args[i + 1];
+        }
+        return defaultValue;
+    }
+}
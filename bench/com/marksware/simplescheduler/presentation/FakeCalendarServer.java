@@ -0,0 +1,731 @@
+package com.marksware.simplescheduler.presentation;
+
+import com.google.api.client.googleapis.json.GoogleJsonError;
+import com.google.api.client.googleapis.json.GoogleJsonErrorContainer;
+import com.google.api.client.json.JsonFactory;
+import com.google.api.client.json.gson.GsonFactory;
+import com.google.api.client.util.DateTime;
+import com.google.api.services.calendar.model.CalendarList;
+import com.google.api.services.calendar.model.CalendarListEntry;
+import com.google.api.services.calendar.model.Event;
+import com.google.api.services.calendar.model.EventDateTime;
+import com.google.api.services.calendar.model.Events;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import com.marksware.simplescheduler.models.Recurrence;
+import com.marksware.simplescheduler.models.SimpleEvent;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+A stand-in for the Calendar v3 API on localhost, for load and latency tests that must not touch Google.
+It answers events.list with paging and sync tokens, events.get, insert, update and delete, the calendar list, and
+multipart batch requests, and trims responses to a fields= mask. Recurring events are stored whole and listed
+instance by instance with singleEvents=true; updating or deleting an instance stores it on its own, as Google does. Point GoogleUtil at it with SetRootUrl(GetRootUrl()) so every request still goes through
+the Google client library, batching and error parsing included.
+
+Latency is added to every HTTP request, plus a little more for every call inside a batch. Errors (503) and rate
+limiting (429) are injected per call, so inside a batch only some of the parts fail, as they do against Google.
+ */
+public class FakeCalendarServer {
+
+    private static final JsonFactory JSON_FACTORY = GsonFactory.getDefaultInstance();
+    private static final int DEFAULT_PAGE_SIZE = 250;
+    private static final int MAX_PAGE_SIZE = 2500;
+    // Listings that clients stopped paging through are forgotten after this many newer ones
+    private static final int MAX_OPEN_LISTINGS = 1000;
+    // How far ahead a recurring event without an end is listed instance by instance
+    private static final long INSTANCE_HORIZON_MILLIS = 365 * 24 * 60 * 60 * 1000L;
+    private static final DateTimeFormatter INSTANCE_TIME = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss'Z'");
+
+    private static class StoredEvent {
+        final Event _Event;
+        final long _Version;
+
+        StoredEvent(Event event, long version)
+        {
+            _Event = event;
+            _Version = version;
+        }
+
+        boolean IsCancelled() { return SimpleEvent.STATUS_CANCELLED.equals(_Event.getStatus()); }
+    }
+
+    // The rest of a listing, taken when its first page was asked for, so later pages are consistent with it
+    private static class Listing {
+        final List<Event> _Items;
+        final int _Offset;
+        final int _PageSize;
+        final String _NextSyncToken;
+
+        Listing(List<Event> items, int offset, int pageSize, String nextSyncToken)
+        {
+            _Items = items;
+            _Offset = offset;
+            _PageSize = pageSize;
+            _NextSyncToken = nextSyncToken;
+        }
+    }
+
+    // What a fields= mask selects: each field maps to what is selected inside it, or to null for all of it
+    private static class FieldMask extends HashMap<String, FieldMask> {
+        private static final long serialVersionUID = 1L;
+    }
+
+    private static class Response {
+        final int _Status;
+        final String _Body;
+
+        Response(int status, String body)
+        {
+            _Status = status;
+            _Body = body;
+        }
+    }
+
+    // Tokens from an earlier server, such as one that was restarted, are treated as expired
+    private final String _Epoch = Long.toString(System.nanoTime(), 36);
+
+    private final LinkedHashMap<String, LinkedHashMap<String, StoredEvent>> _Calendars = new LinkedHashMap<String, LinkedHashMap<String, StoredEvent>>();
+    private final LinkedHashMap<String, Listing> _Listings = new LinkedHashMap<String, Listing>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Listing> eldest) { return size() > MAX_OPEN_LISTINGS; }
+    };
+    private long _Version = 0;
+    private long _NextID = 0;
+
+    private final HttpServer _Server;
+    private final ExecutorService _Executor;
+
+    private volatile long _LatencyMillis = 0;
+    public long GetLatencyMillis() { return _LatencyMillis; }
+    public void SetLatencyMillis(long value) { _LatencyMillis = value; }
+
+    // Up to this much more latency, picked at random for every request
+    private volatile long _JitterMillis = 0;
+    public long GetJitterMillis() { return _JitterMillis; }
+    public void SetJitterMillis(long value) { _JitterMillis = value; }
+
+    // Latency added for every call inside a batch, on top of the request's own
+    private volatile long _PartLatencyMillis = 0;
+    public long GetPartLatencyMillis() { return _PartLatencyMillis; }
+    public void SetPartLatencyMillis(long value) { _PartLatencyMillis = value; }
+
+    // Share of calls answered 503 backendError
+    private volatile double _ErrorRate = 0;
+    public double GetErrorRate() { return _ErrorRate; }
+    public void SetErrorRate(double value) { _ErrorRate = value; }
+
+    // Share of calls answered 429 rateLimitExceeded
+    private volatile double _RateLimitRate = 0;
+    public double GetRateLimitRate() { return _RateLimitRate; }
+    public void SetRateLimitRate(double value) { _RateLimitRate = value; }
+
+    private final AtomicLong _Requests = new AtomicLong();
+    public long GetRequests() { return _Requests.get(); }
+
+    // System.nanoTime() when the first request since ResetFirstRequest arrived, or 0 if none has
+    private final AtomicLong _FirstRequestNanos = new AtomicLong();
+    public long GetFirstRequestNanos() { return _FirstRequestNanos.get(); }
+    public void ResetFirstRequest() { _FirstRequestNanos.set(0); }
+
+    private final AtomicLong _Calls = new AtomicLong();
+    public long GetCalls() { return _Calls.get(); }
+
+    private final AtomicLong _InjectedErrors = new AtomicLong();
+    public long GetInjectedErrors() { return _InjectedErrors.get(); }
+
+    private final AtomicLong _InjectedRateLimits = new AtomicLong();
+    public long GetInjectedRateLimits() { return _InjectedRateLimits.get(); }
+
+    /*
+    Listens on the loopback address only; port 0 picks a free one
+     */
+    public FakeCalendarServer(int port) throws IOException
+    {
+        _Server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        _Server.createContext("/calendar/v3/", this::Handle);
+        _Server.createContext("/batch/calendar/v3", this::HandleBatch);
+        _Executor = Executors.newCachedThreadPool(r -> {
+            var thread = new Thread(r, "FakeCalendarServer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        _Server.setExecutor(_Executor);
+    }
+
+    public int GetPort() { return _Server.getAddress().getPort(); }
+
+    public String GetRootUrl() { return "http://" + _Server.getAddress().getHostString() + ":" + GetPort() + "/"; }
+
+    public void Start() { _Server.start(); }
+
+    public void Stop()
+    {
+        _Server.stop(0);
+        _Executor.shutdownNow();
+    }
+
+    /*
+    Put an event on its calendar as is, assigning an ID if it has none
+     */
+    public synchronized String PutEvent(SimpleEvent simple)
+    {
+        var event = SimpleEvent.NewGoogleEvent(simple);
+        event.setId(simple.GetID() != null ? simple.GetID() : NewID());
+        event.setStatus("confirmed");
+        Store(simple.GetCalendarID(), event);
+        return event.getId();
+    }
+
+    public synchronized int Size(String calendarID)
+    {
+        int count = 0;
+        for (var s : GetCalendar(calendarID).values()) {
+            if (!s.IsCancelled())
+                count++;
+        }
+        return count;
+    }
+
+    /*
+    Change the summary of up to count events on the calendar, as a user editing them would, so the next
+    incremental sync has something to fetch. Returns how many were changed.
+     */
+    public synchronized int EditEvents(String calendarID, int count)
+    {
+        var edited = new ArrayList<Event>();
+        for (var s : GetCalendar(calendarID).values()) {
+            if (edited.size() >= count)
+                break;
+            if (!s.IsCancelled())
+                edited.add(s._Event.clone().setSummary(s._Event.getSummary() + " (edited)"));
+        }
+        for (var event : edited) {
+            Store(calendarID, event);
+        }
+        return edited.size();
+    }
+
+    private LinkedHashMap<String, StoredEvent> GetCalendar(String calendarID)
+    {
+        var calID = calendarID == null ? SimpleEvent.CALENDARID_PRIMARY : calendarID;
+        return _Calendars.computeIfAbsent(calID, k -> new LinkedHashMap<String, StoredEvent>());
+    }
+
+    private void Store(String calendarID, Event event)
+    {
+        event.setUpdated(new DateTime(System.currentTimeMillis()));
+        event.setEtag("\"" + (++_Version) + "\"");
+        GetCalendar(calendarID).put(event.getId(), new StoredEvent(event, _Version));
+    }
+
+    private String NewID()
+    {
+        return String.format("%s%06d", _Epoch, ++_NextID);
+    }
+
+    private void Handle(HttpExchange exchange) throws IOException
+    {
+        try (exchange) {
+            _Requests.incrementAndGet();
+            _FirstRequestNanos.compareAndSet(0, System.nanoTime());
+            var body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+            Sleep(_LatencyMillis + Jitter());
+            var uri = exchange.getRequestURI();
+            var response = Call(exchange.getRequestMethod(), uri.getRawPath(), uri.getRawQuery(), body);
+            Send(exchange, response._Status, "application/json; charset=UTF-8", response._Body);
+        }
+    }
+
+    /*
+    A multipart/mixed batch: every part holds one HTTP request, and the response holds one part per request, in order
+     */
+    private void HandleBatch(HttpExchange exchange) throws IOException
+    {
+        try (exchange) {
+            _Requests.incrementAndGet();
+            _FirstRequestNanos.compareAndSet(0, System.nanoTime());
+            var body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+            var boundary = GetBoundary(exchange.getRequestHeaders().getFirst("Content-Type"));
+            if (!exchange.getRequestMethod().equals("POST") || boundary == null) {
+                var error = Error(400, "badRequest", "Batch requests are multipart/mixed POSTs");
+                Send(exchange, error._Status, "application/json; charset=UTF-8", error._Body);
+                return;
+            }
+
+            var parts = new ArrayList<String>();
+            for (var part : body.replace("\r\n", "\n").split("--" + boundary)) {
+                if (!part.isBlank() && !part.startsWith("--"))
+                    parts.add(part);
+            }
+            Sleep(_LatencyMillis + Jitter() + _PartLatencyMillis * parts.size());
+
+            var responseBoundary = "batch_" + Long.toString(ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE, 36);
+            var out = new StringBuilder();
+            int index = 0;
+            for (var part : parts) {
+                index++;
+                // Part headers, then the request line, its headers and its body
+                var sections = part.strip().split("\n\n", 3);
+                var contentID = Header(sections[0], "Content-ID");
+                Response response;
+                if (sections.length < 2) {
+                    response = Error(400, "badRequest", "Batch part has no request");
+                } else {
+                    var lines = sections[1].split("\n");
+                    var requestLine = lines[0].split(" ");
+                    var uri = URI.create(requestLine[1]);
+                    response = Call(requestLine[0], uri.getRawPath(), uri.getRawQuery(), sections.length > 2 ? sections[2] : "");
+                }
+
+                var responseBody = response._Body != null ? response._Body : "";
+                out.append("--").append(responseBoundary).append("\r\n");
+                out.append("Content-Type: application/http\r\n");
+                out.append("Content-ID: response-").append(contentID != null ? contentID.replaceAll("[<>]", "") : index).append("\r\n\r\n");
+                out.append("HTTP/1.1 ").append(response._Status).append(' ').append(StatusText(response._Status)).append("\r\n");
+                out.append("Content-Type: application/json; charset=UTF-8\r\n");
+                out.append("Content-Length: ").append(responseBody.getBytes(StandardCharsets.UTF_8).length).append("\r\n\r\n");
+                out.append(responseBody).append("\r\n");
+            }
+            out.append("--").append(responseBoundary).append("--\r\n");
+            Send(exchange, 200, "multipart/mixed; boundary=" + responseBoundary, out.toString());
+        }
+    }
+
+    private static String GetBoundary(String contentType)
+    {
+        if (contentType == null || !contentType.startsWith("multipart/mixed"))
+            return null;
+        for (var parameter : contentType.split(";")) {
+            var p = parameter.trim();
+            if (p.startsWith("boundary="))
+                return p.substring("boundary=".length()).replace("\"", "");
+        }
+        return null;
+    }
+
+    private static String Header(String headers, String name)
+    {
+        for (var line : headers.split("\n")) {
+            var colon = line.indexOf(':');
+            if (colon > 0 && line.substring(0, colon).trim().equalsIgnoreCase(name))
+                return line.substring(colon + 1).trim();
+        }
+        return null;
+    }
+
+    private static void Send(HttpExchange exchange, int status, String contentType, String body) throws IOException
+    {
+        if (body == null) {
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        var bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+
+    private long Jitter()
+    {
+        var jitter = _JitterMillis;
+        return jitter > 0 ? ThreadLocalRandom.current().nextLong(jitter + 1) : 0;
+    }
+
+    private static void Sleep(long millis)
+    {
+        if (millis <= 0)
+            return;
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /*
+    One API call, whether it came on its own or inside a batch
+     */
+    private Response Call(String method, String rawPath, String rawQuery, String body) throws IOException
+    {
+        var response = Dispatch(method, rawPath, rawQuery, body);
+        var fields = ParseQuery(rawQuery).get("fields");
+        if (fields == null || response._Body == null || response._Status >= 300)
+            return response;
+        var json = JsonParser.parseString(response._Body);
+        Select(json, ParseFields(fields, new int[] { 0 }));
+        return new Response(response._Status, json.toString());
+    }
+
+    private Response Dispatch(String method, String rawPath, String rawQuery, String body) throws IOException
+    {
+        _Calls.incrementAndGet();
+        var roll = ThreadLocalRandom.current().nextDouble();
+        if (roll < _RateLimitRate) {
+            _InjectedRateLimits.incrementAndGet();
+            return Error(429, "rateLimitExceeded", "Rate Limit Exceeded");
+        }
+        if (roll < _RateLimitRate + _ErrorRate) {
+            _InjectedErrors.incrementAndGet();
+            return Error(503, "backendError", "Backend Error");
+        }
+
+        // calendars/{calendarId}/events[/{eventId}] or users/me/calendarList
+        var prefix = rawPath.indexOf("/calendar/v3/");
+        if (prefix < 0)
+            return Error(404, "notFound", "Not Found");
+        var path = rawPath.substring(prefix + "/calendar/v3/".length()).split("/");
+        for (int i = 0; i < path.length; i++) {
+            path[i] = URLDecoder.decode(path[i], StandardCharsets.UTF_8);
+        }
+        var query = ParseQuery(rawQuery);
+
+        if (path.length == 3 && path[0].equals("users") && path[2].equals("calendarList") && method.equals("GET"))
+            return ListCalendars();
+        if (path.length < 3 || !path[0].equals("calendars") || !path[2].equals("events"))
+            return Error(404, "notFound", "Not Found");
+
+        var calendarID = path[1];
+        if (path.length == 3) {
+            if (method.equals("GET"))
+                return ListEvents(calendarID, query);
+            if (method.equals("POST"))
+                return InsertEvent(calendarID, body);
+        } else if (path.length == 4) {
+            switch (method) {
+                case "GET": return GetEvent(calendarID, path[3]);
+                case "PUT": return UpdateEvent(calendarID, path[3], body);
+                case "DELETE": return DeleteEvent(calendarID, path[3]);
+            }
+        }
+        return Error(405, "methodNotAllowed", "Method Not Allowed");
+    }
+
+    private static Map<String, String> ParseQuery(String rawQuery)
+    {
+        var query = new HashMap<String, String>();
+        if (rawQuery == null)
+            return query;
+        for (var pair : rawQuery.split("&")) {
+            var equals = pair.indexOf('=');
+            if (equals > 0)
+                query.put(URLDecoder.decode(pair.substring(0, equals), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8));
+        }
+        return query;
+    }
+
+    // "a,b(c,d),e/f": fields separated by commas, with sub-fields in brackets or after a slash
+    private static FieldMask ParseFields(String fields, int[] position)
+    {
+        var mask = new FieldMask();
+        while (position[0] < fields.length() && fields.charAt(position[0]) != ')') {
+            var field = ParseField(fields, position);
+            for (var f : field.entrySet()) {
+                Merge(mask, f.getKey(), f.getValue());
+            }
+            if (position[0] < fields.length() && fields.charAt(position[0]) == ',')
+                position[0]++;
+        }
+        return mask;
+    }
+
+    private static FieldMask ParseField(String fields, int[] position)
+    {
+        var start = position[0];
+        while (position[0] < fields.length() && ",()/".indexOf(fields.charAt(position[0])) < 0) {
+            position[0]++;
+        }
+        var name = fields.substring(start, position[0]).trim();
+        FieldMask inner = null;
+        if (position[0] < fields.length() && fields.charAt(position[0]) == '/') {
+            position[0]++;
+            inner = ParseField(fields, position);
+        } else if (position[0] < fields.length() && fields.charAt(position[0]) == '(') {
+            position[0]++;
+            inner = ParseFields(fields, position);
+            position[0]++;
+        }
+        var field = new FieldMask();
+        field.put(name, inner);
+        return field;
+    }
+
+    private static void Merge(FieldMask mask, String name, FieldMask inner)
+    {
+        if (!mask.containsKey(name)) {
+            mask.put(name, inner);
+        } else if (mask.get(name) != null) {
+            if (inner == null) {
+                mask.put(name, null);
+            } else {
+                for (var f : inner.entrySet()) {
+                    Merge(mask.get(name), f.getKey(), f.getValue());
+                }
+            }
+        }
+    }
+
+    private static void Select(JsonElement json, FieldMask mask)
+    {
+        if (mask == null)
+            return;
+        if (json.isJsonArray()) {
+            for (var element : json.getAsJsonArray()) {
+                Select(element, mask);
+            }
+        } else if (json.isJsonObject()) {
+            var object = json.getAsJsonObject();
+            for (var name : new ArrayList<String>(object.keySet())) {
+                if (!mask.containsKey(name))
+                    object.remove(name);
+                else
+                    Select(object.get(name), mask.get(name));
+            }
+        }
+    }
+
+    private synchronized Response ListCalendars() throws IOException
+    {
+        var items = new ArrayList<CalendarListEntry>();
+        for (var calendarID : _Calendars.keySet()) {
+            items.add(new CalendarListEntry().setId(calendarID).setSummary(calendarID).setAccessRole("owner"));
+        }
+        return Ok(new CalendarList().setItems(items));
+    }
+
+    /*
+    The first page takes a snapshot of the whole listing; later pages are served from it.
+    With a sync token the listing holds every event changed since, cancelled ones included, in the order they changed.
+     */
+    private synchronized Response ListEvents(String calendarID, Map<String, String> query) throws IOException
+    {
+        var pageToken = query.get("pageToken");
+        Listing listing;
+        if (pageToken != null) {
+            listing = _Listings.remove(pageToken);
+            if (listing == null)
+                return Error(400, "invalid", "Invalid page token");
+        } else {
+            var syncToken = query.get("syncToken");
+            if (syncToken != null && (query.containsKey("timeMin") || query.containsKey("orderBy")))
+                return Error(400, "invalid", "Sync token cannot be combined with timeMin or orderBy");
+
+            long since = -1;
+            if (syncToken != null) {
+                var parts = syncToken.split(":");
+                if (parts.length != 2 || !parts[0].equals(_Epoch))
+                    return Error(410, "fullSyncRequired", "Sync token is no longer valid, a full sync is required.");
+                since = Long.parseLong(parts[1]);
+            }
+            var singleEvents = Boolean.parseBoolean(query.get("singleEvents"));
+            if ("startTime".equals(query.get("orderBy")) && !singleEvents)
+                return Error(400, "invalid", "The requested ordering is not available for the particular query.");
+            var minTime = query.containsKey("timeMin") ? DateTime.parseRfc3339(query.get("timeMin")).getValue() : Long.MIN_VALUE;
+            var showDeleted = since >= 0 || Boolean.parseBoolean(query.get("showDeleted"));
+
+            // Cancelled instances are listed without showDeleted as long as recurring events are listed whole
+            var changed = new ArrayList<StoredEvent>();
+            for (var s : GetCalendar(calendarID).values()) {
+                if (s._Version > since && (showDeleted || !s.IsCancelled() || (!singleEvents && s._Event.getRecurringEventId() != null))
+                        && (s.IsCancelled() || s._Event.getRecurrence() != null || EndMillis(s._Event) > minTime))
+                    changed.add(s);
+            }
+            changed.sort(Comparator.comparingLong(s -> s._Version));
+            var items = new ArrayList<Event>(changed.size());
+            for (var s : changed) {
+                if (singleEvents && s._Event.getRecurrence() != null && !s.IsCancelled())
+                    AddInstances(calendarID, s._Event, minTime, items);
+                else
+                    items.add(s._Event);
+            }
+            if ("startTime".equals(query.get("orderBy")))
+                items.sort(Comparator.comparingLong(FakeCalendarServer::StartMillis));
+            var maxResults = query.containsKey("maxResults") ? Integer.parseInt(query.get("maxResults")) : DEFAULT_PAGE_SIZE;
+            listing = new Listing(items, 0, Math.max(1, Math.min(maxResults, MAX_PAGE_SIZE)), _Epoch + ":" + _Version);
+        }
+
+        var end = Math.min(listing._Offset + listing._PageSize, listing._Items.size());
+        var events = new Events().setItems(new ArrayList<Event>(listing._Items.subList(listing._Offset, end)));
+        if (end < listing._Items.size()) {
+            var nextPageToken = Long.toString(ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE, 36);
+            _Listings.put(nextPageToken, new Listing(listing._Items, end, listing._PageSize, listing._NextSyncToken));
+            events.setNextPageToken(nextPageToken);
+        } else {
+            events.setNextSyncToken(listing._NextSyncToken);
+        }
+        return Ok(events);
+    }
+
+    // The instances of a recurring event that end after minTime, up to a year ahead, less those stored on their own
+    private void AddInstances(String calendarID, Event recurring, long minTime, List<Event> outItems)
+    {
+        var skip = new HashSet<Long>();
+        for (var s : GetCalendar(calendarID).values()) {
+            if (recurring.getId().equals(s._Event.getRecurringEventId()))
+                skip.add(StartMillis(s._Event.getOriginalStartTime()));
+        }
+        var from = Math.max(minTime, StartMillis(recurring));
+        var instances = Recurrence.Instances(new SimpleEvent(calendarID, recurring), from, System.currentTimeMillis() + INSTANCE_HORIZON_MILLIS, skip);
+        while (instances.hasNext()) {
+            var instance = instances.next();
+            var event = SimpleEvent.NewGoogleEvent(instance);
+            event.setId(instance.GetID());
+            event.setStatus("confirmed");
+            event.setRecurringEventId(recurring.getId());
+            event.setOriginalStartTime(new EventDateTime().setDateTime(new DateTime(instance.GetOriginalStartMillis())));
+            outItems.add(event);
+        }
+    }
+
+    /*
+    An instance of a stored recurring event by its instance ID, "abc_20261019T160000Z" or "abc_20261019",
+    with its recurring event and original start set, or null
+     */
+    private Event GetInstance(String calendarID, String eventID)
+    {
+        var separator = eventID.lastIndexOf('_');
+        if (separator <= 0)
+            return null;
+        var recurring = GetCalendar(calendarID).get(eventID.substring(0, separator));
+        if (recurring == null || recurring.IsCancelled() || recurring._Event.getRecurrence() == null)
+            return null;
+        var suffix = eventID.substring(separator + 1);
+        try {
+            var originalStart = suffix.length() == 8
+                    ? new EventDateTime().setDate(new DateTime(true, LocalDate.parse(suffix, DateTimeFormatter.BASIC_ISO_DATE).atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli(), 0))
+                    : new EventDateTime().setDateTime(new DateTime(LocalDateTime.parse(suffix, INSTANCE_TIME).toInstant(ZoneOffset.UTC).toEpochMilli()));
+            return new Event().setId(eventID).setRecurringEventId(recurring._Event.getId()).setOriginalStartTime(originalStart);
+        } catch (DateTimeParseException ex) {
+            return null;
+        }
+    }
+
+    private static long StartMillis(EventDateTime start)
+    {
+        if (start == null)
+            return Long.MIN_VALUE;
+        return start.getDateTime() != null ? start.getDateTime().getValue() : start.getDate().getValue();
+    }
+
+    private static long StartMillis(Event event)
+    {
+        return StartMillis(event.getStart());
+    }
+
+    private static long EndMillis(Event event)
+    {
+        var end = event.getEnd();
+        if (end == null)
+            return Long.MAX_VALUE;
+        return end.getDateTime() != null ? end.getDateTime().getValue() : end.getDate().getValue();
+    }
+
+    private synchronized Response GetEvent(String calendarID, String eventID) throws IOException
+    {
+        var existing = GetCalendar(calendarID).get(eventID);
+        if (existing == null)
+            return Error(404, "notFound", "Not Found");
+        return Ok(existing._Event);
+    }
+
+    private synchronized Response InsertEvent(String calendarID, String body) throws IOException
+    {
+        var event = JSON_FACTORY.fromString(body, Event.class);
+        if (event.getId() == null)
+            event.setId(NewID());
+        else if (GetCalendar(calendarID).containsKey(event.getId()))
+            return Error(409, "duplicate", "The requested identifier already exists.");
+        event.setStatus("confirmed");
+        Store(calendarID, event);
+        return Ok(event);
+    }
+
+    private synchronized Response UpdateEvent(String calendarID, String eventID, String body) throws IOException
+    {
+        var existing = GetCalendar(calendarID).get(eventID);
+        var instance = existing == null ? GetInstance(calendarID, eventID) : existing._Event;
+        if (instance == null || (existing != null && existing.IsCancelled()))
+            return Error(404, "notFound", "Not Found");
+        var event = JSON_FACTORY.fromString(body, Event.class);
+        event.setId(eventID);
+        event.setStatus("confirmed");
+        event.setRecurringEventId(instance.getRecurringEventId());
+        event.setOriginalStartTime(instance.getOriginalStartTime());
+        Store(calendarID, event);
+        return Ok(event);
+    }
+
+    private synchronized Response DeleteEvent(String calendarID, String eventID)
+    {
+        var existing = GetCalendar(calendarID).get(eventID);
+        var instance = existing == null ? GetInstance(calendarID, eventID) : existing._Event;
+        if (instance == null)
+            return Error(404, "notFound", "Not Found");
+        if (existing != null && existing.IsCancelled())
+            return Error(410, "deleted", "Resource has been deleted");
+
+        // Keep a cancelled tombstone so incremental listings report the removal, and a recurring event leaves out a cancelled instance
+        Store(calendarID, new Event().setId(eventID).setStatus(SimpleEvent.STATUS_CANCELLED)
+                .setRecurringEventId(instance.getRecurringEventId()).setOriginalStartTime(instance.getOriginalStartTime()));
+        return new Response(204, null);
+    }
+
+    private static Response Ok(Object model) throws IOException
+    {
+        return new Response(200, JSON_FACTORY.toString(model));
+    }
+
+    private static Response Error(int status, String reason, String message)
+    {
+        var info = new GoogleJsonError.ErrorInfo();
+        info.setDomain(status == 429 ? "usageLimits" : "global");
+        info.setReason(reason);
+        info.setMessage(message);
+        var error = new GoogleJsonError();
+        error.setCode(status);
+        error.setMessage(message);
+        error.setErrors(List.of(info));
+        var container = new GoogleJsonErrorContainer();
+        container.setError(error);
+        try {
+            return new Response(status, JSON_FACTORY.toString(container));
+        } catch (IOException ex) {
+            return new Response(status, null);
+        }
+    }
+
+    private static String StatusText(int status)
+    {
+        switch (status) {
+            case 200: return "OK";
+            case 204: return "No Content";
+            case 400: return "Bad Request";
+            case 404: return "Not Found";
+            case 405: return "Method Not Allowed";
+            case 409: return "Conflict";
+            case 410: return "Gone";
+            case 429: return "Too Many Requests";
+            case 503: return "Service Unavailable";
+            default: return "Status";
+        }
+    }
+}
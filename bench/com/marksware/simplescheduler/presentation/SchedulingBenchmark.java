@@ -0,0 +1,269 @@
+package com.marksware.simplescheduler.presentation;
+
+import com.google.api.client.json.gson.GsonFactory;
+import com.google.api.client.util.DateTime;
+import com.google.api.services.calendar.model.Event;
+import com.google.api.services.calendar.model.Events;
+import com.google.gson.stream.JsonReader;
+import com.marksware.simplescheduler.models.SimpleEvent;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/*
+JMH benchmarks of the scheduling engine over generated calendars, without any network.
+
+    gradle jmh -PjmhArgs='SchedulingBenchmark.Expand -p size=1000,10000 -prof gc'
+
+Every benchmark reports operations/s, and events/s through the events counter; -prof gc adds the bytes allocated
+per operation (gc.alloc.rate.norm). The engine benchmarks run over every mix of size, commands and generated; the
+copying, conversion and parsing ones only depend on size. Events the operation changes are copied before every
+invocation, outside the measurement. A million events need a bigger heap: -jvmArgsAppend -Xmx4g.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SchedulingBenchmark {
+
+    private static final int PAGE_SIZE = 250;
+
+    private static List<SimpleEvent> Copy(List<SimpleEvent> events)
+    {
+        var copies = new ArrayList<SimpleEvent>(events.size());
+        for (var e : events) {
+            copies.add(new SimpleEvent(e));
+        }
+        return copies;
+    }
+
+    /*
+    The events as events.list response pages. Full pages carry the fields Google sends when no mask is given;
+    masked pages only what GoogleUtil asks for.
+     */
+    private static List<byte[]> EncodePages(List<SimpleEvent> events, boolean full) throws IOException
+    {
+        var pages = new ArrayList<byte[]>();
+        var now = new DateTime(System.currentTimeMillis());
+        for (int first = 0; first < events.size(); first += PAGE_SIZE) {
+            var items = new ArrayList<Event>();
+            for (var e : events.subList(first, Math.min(first + PAGE_SIZE, events.size()))) {
+                var event = SimpleEvent.NewGoogleEvent(e).setId(e.GetID()).setStatus("confirmed");
+                if (full) {
+                    event.setKind("calendar#event").setEtag("\"3301234567890000\"")
+                            .setHtmlLink("https://www.google.com/calendar/event?eid=" + e.GetID())
+                            .setCreated(now).setUpdated(now).setICalUID(e.GetID() + "@google.com").setSequence(0)
+                            .setCreator(new Event.Creator().setEmail("someone@example.com").setSelf(true))
+                            .setOrganizer(new Event.Organizer().setEmail("someone@example.com").setSelf(true))
+                            .setReminders(new Event.Reminders().setUseDefault(true)).setEventType("default");
+                    event.getStart().setTimeZone("America/Los_Angeles");
+                    event.getEnd().setTimeZone("America/Los_Angeles");
+                }
+                items.add(event);
+            }
+            var page = new Events().setItems(items).setNextPageToken(first + PAGE_SIZE < events.size() ? "page" + first : null);
+            if (full)
+                page.setKind("calendar#events").setSummary("someone@example.com").setTimeZone("America/Los_Angeles");
+            pages.add(GsonFactory.getDefaultInstance().toByteArray(page));
+        }
+        return pages;
+    }
+
+    // A calendar with a mix of command and generated events, for the engine benchmarks
+    @State(Scope.Benchmark)
+    public static class Calendar {
+        @Param({ "1000", "10000", "100000", "1000000" })
+        public int size;
+
+        @Param({ "0.01", "0.1" })
+        public double commands;
+
+        @Param({ "0", "0.1" })
+        public double generated;
+
+        List<SimpleEvent> _Events;
+        EventStore _Store;
+
+        @Setup(Level.Trial)
+        public void Generate()
+        {
+            Log.SetLevel(Log.Level.Off);
+            _Events = CalendarGenerator.Generate(size, commands, generated, 42);
+            _Store = new EventStore(_Events);
+        }
+    }
+
+    // Plain events, for the benchmarks that do not depend on the command mix
+    @State(Scope.Benchmark)
+    public static class EventList {
+        @Param({ "1000", "10000", "100000", "1000000" })
+        public int size;
+
+        List<SimpleEvent> _Events;
+        List<byte[]> _FullPages;
+        List<byte[]> _MaskedPages;
+
+        @Setup(Level.Trial)
+        public void Generate() throws IOException
+        {
+            Log.SetLevel(Log.Level.Off);
+            _Events = CalendarGenerator.Generate(size, 0, 0, 42);
+            _FullPages = EncodePages(_Events, true);
+            _MaskedPages = EncodePages(_Events, false);
+        }
+    }
+
+    // Fresh copies of the calendar's events, for the operations that change them
+    @State(Scope.Thread)
+    public static class Copies {
+        List<SimpleEvent> _Events;
+
+        @Setup(Level.Invocation)
+        public void Copy(Calendar calendar)
+        {
+            _Events = SchedulingBenchmark.Copy(calendar._Events);
+        }
+    }
+
+    // A plan expanded from the calendar, for UpdatePlanner, which reads but does not change it
+    @State(Scope.Thread)
+    public static class Expanded {
+        EventPlan _Plan;
+
+        @Setup(Level.Trial)
+        public void Expand(Calendar calendar) throws Exception
+        {
+            _Plan = new EventPlan(SimpleEvent.CALENDARID_PRIMARY);
+            SchedulingUtil.ExpandEvents(SimpleEvent.CALENDARID_PRIMARY, Copy(calendar._Events).iterator(), _Plan);
+        }
+    }
+
+    // Reported by JMH as events/s next to the operations/s
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Counter {
+        public long events;
+
+        @Setup(Level.Iteration)
+        public void Reset() { events = 0; }
+    }
+
+    @Benchmark
+    public EventPlan ExpandEvents(Calendar calendar, Copies copies, Counter counter) throws Exception
+    {
+        var plan = new EventPlan(SimpleEvent.CALENDARID_PRIMARY);
+        SchedulingUtil.ExpandEvents(SimpleEvent.CALENDARID_PRIMARY, copies._Events.iterator(), plan);
+        counter.events += calendar.size;
+        return plan;
+    }
+
+    @Benchmark
+    public EventPlan ExpandEventStore(Calendar calendar, Counter counter)
+    {
+        var plan = new EventPlan(SimpleEvent.CALENDARID_PRIMARY);
+        SchedulingUtil.ExpandEvents(SimpleEvent.CALENDARID_PRIMARY, calendar._Store, plan);
+        counter.events += calendar.size;
+        return plan;
+    }
+
+    @Benchmark
+    public EventPlan RestoreEvent(Calendar calendar, Copies copies, Counter counter)
+    {
+        var plan = new EventPlan(SimpleEvent.CALENDARID_PRIMARY);
+        for (var e : copies._Events) {
+            SchedulingUtil.RestoreEvent(SimpleEvent.CALENDARID_PRIMARY, e, plan);
+        }
+        counter.events += calendar.size;
+        return plan;
+    }
+
+    @Benchmark
+    public EventPlan ApplySchedulingCommands(Calendar calendar, Counter counter)
+    {
+        var plan = new EventPlan(SimpleEvent.CALENDARID_PRIMARY);
+        for (var e : calendar._Events) {
+            SchedulingUtil.ApplySchedulingCommands(SimpleEvent.CALENDARID_PRIMARY, e,
+                    plan.GetAddEvents(), plan.GetDeleteEvents(), plan.GetUpdateEvents());
+        }
+        counter.events += calendar.size;
+        return plan;
+    }
+
+    @Benchmark
+    public Object UpdatePlanner(Calendar calendar, Expanded expanded, Counter counter)
+    {
+        counter.events += calendar.size;
+        return UpdatePlanner.Plan(expanded._Plan);
+    }
+
+    @Benchmark
+    public List<SimpleEvent> SimpleEventCopy(EventList events, Counter counter)
+    {
+        counter.events += events.size;
+        return Copy(events._Events);
+    }
+
+    // Allocation per op of building the store approximates the heap it keeps
+    @Benchmark
+    public EventStore EventStoreLoad(EventList events, Counter counter)
+    {
+        counter.events += events.size;
+        return new EventStore(events._Events);
+    }
+
+    @Benchmark
+    public List<SimpleEvent> SimpleEventConvert(EventList events, Counter counter)
+    {
+        var converted = new ArrayList<SimpleEvent>(events.size);
+        for (var e : events._Events) {
+            converted.add(new SimpleEvent(e.GetCalendarID(), SimpleEvent.NewGoogleEvent(e)));
+        }
+        counter.events += events.size;
+        return converted;
+    }
+
+    // Parsing events.list pages as before, with the fields mask, and streamed with the mask
+    @Benchmark
+    public List<SimpleEvent> ParseEventsFull(EventList events, Counter counter) throws IOException
+    {
+        counter.events += events.size;
+        return ParsePages(events._FullPages, false);
+    }
+
+    @Benchmark
+    public List<SimpleEvent> ParseEventsMasked(EventList events, Counter counter) throws IOException
+    {
+        counter.events += events.size;
+        return ParsePages(events._MaskedPages, false);
+    }
+
+    @Benchmark
+    public List<SimpleEvent> ParseEventsStreamed(EventList events, Counter counter) throws IOException
+    {
+        counter.events += events.size;
+        return ParsePages(events._MaskedPages, true);
+    }
+
+    private static List<SimpleEvent> ParsePages(List<byte[]> pages, boolean streamed) throws IOException
+    {
+        var converted = new ArrayList<SimpleEvent>();
+        for (var page : pages) {
+            var in = new ByteArrayInputStream(page);
+            if (streamed) {
+                var reader = new JsonReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+                converted.addAll(EventPage.Read(SimpleEvent.CALENDARID_PRIMARY, reader).GetItems());
+            } else {
+                var events = GsonFactory.getDefaultInstance().fromInputStream(in, StandardCharsets.UTF_8, Events.class);
+                converted.addAll(EventPage.FromEvents(SimpleEvent.CALENDARID_PRIMARY, events).GetItems());
+            }
+        }
+        return converted;
+    }
+}
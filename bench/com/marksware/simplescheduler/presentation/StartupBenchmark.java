@@ -0,0 +1,123 @@
+package com.marksware.simplescheduler.presentation;
+
+import com.marksware.simplescheduler.models.SimpleEvent;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+Cold start of the scheduler: how long a fresh JVM running Main takes to send its first request to the Calendar API,
+and to finish a dry run, against FakeCalendarServer. Every run starts a new process, the way cron does.
+
+    java -cp out:libs/* com.marksware.simplescheduler.presentation.StartupBenchmark
+        [--runs 5] [--events 1000] [--classpath out/simplescheduler.jar:libs/*] [--archive out/simplescheduler.jsa] [--java java]
+
+Each run is timed in three setups: without any class data sharing (-Xshare:off), with only the JDK's own archive
+(the JVM default), and with an AppCDS archive of the scheduler's classes as well. The archive is the one
+simplescheduler.sh archive made if there is one; otherwise a training run records one first, into a temporary file.
+Class data sharing only takes classes from jars, so --classpath must not hold directories of classes, and an archive
+only applies to the classpath it was made with. simplescheduler.sh build makes the default one.
+ */
+public class StartupBenchmark {
+
+    public static void main(String[] args) throws Exception
+    {
+        var runs = Integer.parseInt(GetOption(args, "--runs", "5"));
+        var eventCount = Integer.parseInt(GetOption(args, "--events", "1000"));
+        var classpath = GetOption(args, "--classpath", String.join(File.pathSeparator, "out/simplescheduler.jar", "libs/*"));
+        var java = GetOption(args, "--java", new File(System.getProperty("java.home"), "bin/java").getPath());
+        var archivePath = GetOption(args, "--archive", "out/simplescheduler.jsa");
+        for (var entry : classpath.split(File.pathSeparator)) {
+            if (new File(entry).isDirectory())
+                throw new IllegalArgumentException(String.format("Class data sharing can't use the classes in directory %s, put them in a jar", entry));
+        }
+        Log.SetLevel(Log.Level.Warn);
+
+        var server = new FakeCalendarServer(0);
+        var start = Instant.now().truncatedTo(ChronoUnit.DAYS).plus(9, ChronoUnit.HOURS);
+        for (var e : CalendarGenerator.Generate(eventCount, 0.1, 0, 42, start)) {
+            e.SetCalendarID(SimpleEvent.CALENDARID_PRIMARY);
+            server.PutEvent(e);
+        }
+        server.Start();
+
+        var main = List.of("Main", "--root-url", server.GetRootUrl(), "--dry-run", "--log-level", "warn");
+        var setups = new String[] { "no CDS", "JDK CDS", "AppCDS" };
+        var firstRequest = new long[setups.length][runs];
+        var exit = new long[setups.length][runs];
+        try {
+            var archive = new File(archivePath);
+            if (!archive.isFile()) {
+                archive = File.createTempFile("simplescheduler", ".jsa");
+                archive.delete();
+                archive.deleteOnExit();
+                var training = Launch(server, java, classpath, List.of("-XX:ArchiveClassesAtExit=" + archive.getPath()), main);
+                System.out.printf("Training run recorded %s in %.0f ms\n", archive.getName(), training[1] / 1e6);
+            }
+            var flags = List.of(List.of("-Xshare:off"), List.<String>of(), List.of("-XX:SharedArchiveFile=" + archive.getPath()));
+
+            // Interleaved, so a noisy moment on the machine is spread across every setup
+            for (int run = 0; run < runs; run++) {
+                for (int s = 0; s < setups.length; s++) {
+                    var timings = Launch(server, java, classpath, flags.get(s), main);
+                    firstRequest[s][run] = timings[0];
+                    exit[s][run] = timings[1];
+                }
+            }
+        } finally {
+            server.Stop();
+        }
+
+        System.out.printf("%-8s %20s %20s\n", "", "first request p50", "exit p50");
+        for (int s = 0; s < setups.length; s++) {
+            System.out.printf("%-8s %17.0f ms %17.0f ms\n", setups[s], Median(firstRequest[s]) / 1e6, Median(exit[s]) / 1e6);
+        }
+    }
+
+    // Nanoseconds from starting the process to the server's first request, and to the process exiting
+    private static long[] Launch(FakeCalendarServer server, String java, String classpath, List<String> flags, List<String> main)
+            throws IOException, InterruptedException
+    {
+        var command = new ArrayList<String>();
+        command.add(java);
+        command.addAll(flags);
+        command.add("-cp");
+        command.add(classpath);
+        command.addAll(main);
+
+        var builder = new ProcessBuilder(command)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD).redirectError(ProcessBuilder.Redirect.DISCARD);
+        server.ResetFirstRequest();
+        var started = System.nanoTime();
+        var process = builder.start();
+        var status = process.waitFor();
+        var exited = System.nanoTime();
+
+        var firstRequest = server.GetFirstRequestNanos();
+        if (status != 0 || firstRequest == 0)
+            throw new IOException(String.format("%s exited with %d after %d requests", String.join(" ", command), status, server.GetRequests()));
+        return new long[] { firstRequest - started, exited - started };
+    }
+
+    private static double Median(long[] values)
+    {
+        var sorted = values.clone();
+        Arrays.sort(sorted);
+        var middle = sorted.length / 2;
+        return sorted.length % 2 == 1 ? sorted[middle] : (sorted[middle - 1] + sorted[middle]) / 2.0;
+    }
+
+    private static String GetOption(String[] args, String name, String defaultValue)
+    {
+        for (int i = 0; i + 1 < args.length; i++) {
+            if (args[i].equals(name))
+                return args[i + 1];
+        }
+        return defaultValue;
+    }
+}
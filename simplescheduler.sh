@@ -0,0 +1,87 @@
+#!/usr/bin/env bash
+#
+# Builds and runs the scheduler, with an AppCDS archive of its classes so a cold start from cron skips most of the
+# class loading and verification.
+#
+#     ./simplescheduler.sh build             compile src into out/simplescheduler.jar, and bench into out/bench
+#     ./simplescheduler.sh archive [args]    record out/simplescheduler.jsa from a run of Main with args, or from a
+#                                            dry run against a local FakeCalendarServer when there are none
+#     ./simplescheduler.sh [args]            run Main, with the archive if there is one
+#
+# The archive is only used with the jar it was recorded from, so build removes it. tokens/ and sync/ stay relative to
+# the working directory, as when running Main directly. JAVA_OPTS is passed on to java.
+set -euo pipefail
+
+ROOT="$(cd "$(dirname "${BASH_SOURCE[0]}")" && pwd)"
+OUT="$ROOT/out"
+JAR="$OUT/simplescheduler.jar"
+ARCHIVE="$OUT/simplescheduler.jsa"
+# Class data sharing only archives classes from jars, never from directories
+CLASSPATH="$JAR:$ROOT/libs/*"
+MAIN=Main
+
+fail() {
+    echo "simplescheduler.sh: $*" >&2
+    exit 1
+}
+
+build() {
+    rm -rf "$OUT/classes" "$OUT/bench" "$JAR" "$ARCHIVE"
+    mkdir -p "$OUT/classes" "$OUT/bench"
+    find "$ROOT/src" -name '*.java' > "$OUT/sources.txt"
+    javac -encoding UTF-8 -d "$OUT/classes" -cp "$ROOT/libs/*" @"$OUT/sources.txt" \
+        || fail "compiling src failed, see the errors above"
+    (cd "$ROOT/src" && find . -type f ! -name '*.java' -exec cp --parents {} "$OUT/classes" \;)
+    jar --create --file "$JAR" -C "$OUT/classes" . || fail "packaging $JAR failed"
+    # The JMH benchmarks are left to gradle jmh, which has JMH on its classpath
+    find "$ROOT/bench" -name '*.java' -exec grep -L 'org.openjdk.jmh' {} + > "$OUT/sources.txt"
+    javac -encoding UTF-8 -d "$OUT/bench" -cp "$CLASSPATH" @"$OUT/sources.txt" \
+        || fail "compiling bench failed, see the errors above"
+    rm "$OUT/sources.txt"
+}
+
+archive() {
+    [ -f "$JAR" ] || build
+    rm -f "$ARCHIVE"
+    if [ $# -gt 0 ]; then
+        java -XX:ArchiveClassesAtExit="$ARCHIVE" -cp "$CLASSPATH" $MAIN "$@" || fail "the training run failed, no archive made"
+        [ -f "$ARCHIVE" ] || fail "the training run made no archive"
+        return
+    fi
+
+    local port=8095
+    java -cp "$OUT/bench:$CLASSPATH" com.marksware.simplescheduler.presentation.CalendarLoadTest \
+        --events 1000 --latency-millis 0 --jitter-millis 0 --serve $port > /dev/null &
+    local server=$!
+    trap "kill $server 2> /dev/null" EXIT
+    for _ in $(seq 100); do
+        (exec 3<> /dev/tcp/127.0.0.1/$port) 2> /dev/null && break
+        kill -0 "$server" 2> /dev/null || fail "FakeCalendarServer didn't start on port $port"
+        sleep 0.1
+    done
+    local training
+    training="$(mktemp -d)"
+    # A working directory of its own, so the training run doesn't touch sync/ here
+    (cd "$training" && java -XX:ArchiveClassesAtExit="$ARCHIVE" -cp "$CLASSPATH" $MAIN \
+        --root-url "http://127.0.0.1:$port/" --dry-run --log-level warn > /dev/null) \
+        || { rm -rf "$training"; fail "the training run failed, no archive made"; }
+    rm -rf "$training"
+    [ -f "$ARCHIVE" ] || fail "the training run made no archive"
+}
+
+case "${1:-}" in
+    build)
+        build
+        ;;
+    archive)
+        shift
+        archive "$@"
+        ;;
+    *)
+        [ -f "$JAR" ] || build
+        share=()
+        [ -f "$ARCHIVE" ] && share=(-XX:SharedArchiveFile="$ARCHIVE")
+        # shellcheck disable=SC2086
+        exec java ${JAVA_OPTS:-} ${share[@]+"${share[@]}"} -cp "$CLASSPATH" $MAIN "$@"
+        ;;
+esac
@@ -1,23 +1,175 @@
+import com.marksware.simplescheduler.models.EventMutation;
 import com.marksware.simplescheduler.models.SimpleEvent;
+import com.marksware.simplescheduler.presentation.CalendarRunReport;
+import com.marksware.simplescheduler.presentation.FileCalendarBackend;
+import com.marksware.simplescheduler.presentation.FreeSlotFinder;
 import com.marksware.simplescheduler.presentation.GoogleUtil;
+import com.marksware.simplescheduler.presentation.Log;
+import com.marksware.simplescheduler.presentation.Metrics;
+import com.marksware.simplescheduler.presentation.NotificationServer;
+import com.marksware.simplescheduler.presentation.OpenCensusMetricsExporter;
+import com.marksware.simplescheduler.presentation.PlanFile;
+import com.marksware.simplescheduler.presentation.SchedulerDaemon;
 import com.marksware.simplescheduler.presentation.SchedulingUtil;
+import com.marksware.simplescheduler.presentation.TextMetricsExporter;
 
-import javax.swing.*;
-import java.util.LinkedHashSet;
-import java.util.Random;
-import java.util.Set;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 public class Main {
     public static void main(final String[] args) throws Exception {
         System.out.printf("************************\n");
         System.out.printf("*** Simple Scheduler ***\n");
         System.out.printf("************************\n\n");
+        FileCalendarBackend fileBackend = null;
         try {
-            var events = GoogleUtil.GetEvents(null, 100);
+            var options = Arrays.asList(args);
+            var logLevel = GetOption(args, "--log-level");
+            if (logLevel != null)
+                Log.SetLevel(Log.ParseLevel(logLevel));
+            var logFormat = GetOption(args, "--log-format");
+            if (logFormat != null)
+                Log.SetFormat(Log.ParseFormat(logFormat));
+            var logFile = GetOption(args, "--log-file");
+            if (logFile != null)
+                Log.SetFile(new File(logFile));
+            var rootUrl = GetOption(args, "--root-url");
+            if (rootUrl != null)
+                GoogleUtil.SetRootUrl(rootUrl);
+            if (options.contains("--no-streaming-parse"))
+                GoogleUtil.SetStreamingParse(false);
+            var incremental = options.contains("--incremental");
+            var eventsFile = GetOption(args, "--events-file");
+            if (eventsFile != null) {
+                fileBackend = new FileCalendarBackend(new File(eventsFile));
+                SchedulingUtil.SetBackend(fileBackend);
+            }
+            var maxInFlight = GetOption(args, "--max-in-flight");
+            if (maxInFlight != null)
+                SchedulingUtil.GetPipeline().SetMaxInFlight(Integer.parseInt(maxInFlight));
+            var workingHours = GetOption(args, "--working-hours");
+            if (workingHours != null)
+                SchedulingUtil.SetWorkingHours(FreeSlotFinder.WorkingHours.Parse(workingHours));
+            var busyCalendars = GetOption(args, "--busy-calendars");
+            if (busyCalendars != null)
+                SchedulingUtil.SetBusyCalendarIDs(Arrays.asList(busyCalendars.split(",")));
+            var metricsFile = GetOption(args, "--metrics");
+            if (metricsFile != null)
+                Metrics.AddExporter(TextMetricsExporter.ForFile(new File(metricsFile)));
+            if (options.contains("--opencensus"))
+                Metrics.AddExporter(new OpenCensusMetricsExporter());
+            var expandParallelism = GetOption(args, "--expand-parallelism");
+            if (expandParallelism != null)
+                SchedulingUtil.SetExpandParallelism(Integer.parseInt(expandParallelism));
+            if (options.contains("--expand-recurrence")) {
+                if (incremental || options.contains("--daemon"))
+                    throw new IllegalArgumentException("--expand-recurrence only applies to full runs, not --incremental or --daemon");
+                SchedulingUtil.SetExpandRecurrence(true);
+            }
+            var recurrenceHorizon = GetOption(args, "--recurrence-horizon-days");
+            if (recurrenceHorizon != null)
+                SchedulingUtil.SetRecurrenceHorizonMillis(Long.parseLong(recurrenceHorizon) * 24 * 60 * 60 * 1000L);
 
-            SchedulingUtil.ProcessEvents(SimpleEvent.CALENDARID_PRIMARY, events);
+            var calendars = GetOption(args, "--calendars");
+            var applyPlan = GetOption(args, "--apply-plan");
+            if (applyPlan != null) {
+                var mutations = PlanFile.Read(new File(applyPlan));
+                var report = new CalendarRunReport(applyPlan);
+                report.AddResults(SchedulingUtil.ApplyMutations(mutations));
+                CalendarRunReport.PrintReports(List.of(report));
+            } else if (options.contains("--daemon")) {
+                var calendarIDs = calendars != null ? Arrays.asList(calendars.split(","))
+                        : options.contains("--all-calendars") ? SchedulingUtil.GetBackend().GetCalendarIDs() : List.of(SimpleEvent.CALENDARID_PRIMARY);
+                var daemon = new SchedulerDaemon(calendarIDs, 250, GetOption(args, "--notify-address"));
+                var port = GetOption(args, "--notify-port");
+                daemon.SetPort(port != null ? Integer.parseInt(port) : NotificationServer.DEFAULT_PORT);
+                var debounce = GetOption(args, "--debounce-millis");
+                if (debounce != null)
+                    daemon.SetDebounceMillis(Long.parseLong(debounce));
+                var poll = GetOption(args, "--poll-minutes");
+                if (poll != null)
+                    daemon.SetPollMillis(Long.parseLong(poll) * 60 * 1000);
+                var parallel = GetOption(args, "--parallel");
+                if (parallel != null)
+                    daemon.SetParallelism(Integer.parseInt(parallel));
+                // Stopping is the end of the daemon's run, and nothing waits for main once the hook is done
+                var daemonFileBackend = fileBackend;
+                Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                    try {
+                        daemon.Stop();
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    }
+                    SaveEvents(daemonFileBackend);
+                }));
+                daemon.Start();
+                daemon.Await();
+            } else if (options.contains("--dry-run")) {
+                if (incremental)
+                    throw new IllegalArgumentException("--dry-run cannot be combined with --incremental");
+                var calendarIDs = calendars != null ? Arrays.asList(calendars.split(","))
+                        : options.contains("--all-calendars") ? SchedulingUtil.GetBackend().GetCalendarIDs() : List.of(SimpleEvent.CALENDARID_PRIMARY);
+                var mutations = new ArrayList<EventMutation>();
+                for (var calendarID : calendarIDs) {
+                    mutations.addAll(SchedulingUtil.PlanEvents(calendarID, SchedulingUtil.GetEvents(calendarID, 250)));
+                }
+                var planFile = GetOption(args, "--plan");
+                if (planFile != null) {
+                    PlanFile.Write(new File(planFile), mutations);
+                    Log.Info("Wrote %d planned writes to %s", mutations.size(), planFile);
+                } else {
+                    Log.Flush();
+                    var out = new BufferedWriter(new OutputStreamWriter(System.out));
+                    PlanFile.Write(out, mutations);
+                    out.flush();
+                }
+            } else if (calendars != null || options.contains("--all-calendars")) {
+                var calendarIDs = calendars != null ? Arrays.asList(calendars.split(",")) : SchedulingUtil.GetBackend().GetCalendarIDs();
+                var parallel = GetOption(args, "--parallel");
+                var reports = SchedulingUtil.ProcessCalendars(calendarIDs, 250,
+                        parallel != null ? Integer.parseInt(parallel) : 4, incremental);
+                CalendarRunReport.PrintReports(reports);
+            } else if (incremental) {
+                CalendarRunReport.PrintReports(List.of(
+                        SchedulingUtil.ProcessEventsIncremental(SimpleEvent.CALENDARID_PRIMARY, 250)));
+            } else {
+                var events = SchedulingUtil.GetEvents(SimpleEvent.CALENDARID_PRIMARY, 250);
+
+                CalendarRunReport.PrintReports(List.of(
+                        SchedulingUtil.ProcessEvents(SimpleEvent.CALENDARID_PRIMARY, events)));
+            }
+            Metrics.Export();
         } catch (Exception ex) {
-            System.out.printf(ex.getMessage());
+            Log.Error("%s", ex.getMessage());
+        } finally {
+            // Whatever was written, even by a run that failed part way
+            SaveEvents(fileBackend);
+            Log.Flush();
+        }
+    }
+
+    private static void SaveEvents(FileCalendarBackend fileBackend)
+    {
+        if (fileBackend == null)
+            return;
+        try {
+            fileBackend.Save();
+        } catch (IOException ex) {
+            Log.Error("Could not save %s: %s", fileBackend.GetFile(), ex.getMessage());
+        }
+    }
+
+    private static String GetOption(String[] args, String name)
+    {
+        for (int i = 0; i + 1 < args.length; i++) {
+            if (args[i].equals(name))
+                return args[i + 1];
         }
+        return null;
     }
 }
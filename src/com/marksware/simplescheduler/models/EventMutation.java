@@ -0,0 +1,51 @@
+package com.marksware.simplescheduler.models;
+
+import java.math.BigInteger;
+import java.security.SecureRandom;
+
+/*
+A single write to a calendar
+ */
+public class EventMutation {
+
+    public enum Operation { Delete, Update, Add };
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final Operation _Operation;
+    public Operation GetOperation() { return _Operation; }
+
+    private final SimpleEvent _Event;
+    public SimpleEvent GetEvent() { return _Event; }
+
+    // ID an Add asks the calendar to give the new event, the same on every retry, so an insert that went through
+    // but whose response was lost is refused as a duplicate rather than added twice
+    private final String _InsertID;
+    public String GetInsertID() { return _InsertID; }
+
+    public EventMutation(Operation operation, SimpleEvent event)
+    {
+        this(operation, event, operation == Operation.Add ? NewEventID() : null);
+    }
+
+    // A mutation planned before, such as one read back from a plan file, keeping the ID its add was given
+    public EventMutation(Operation operation, SimpleEvent event, String insertID)
+    {
+        _Operation = operation;
+        _Event = event;
+        _InsertID = insertID;
+    }
+
+    /*
+    A random event ID in the form Google accepts from clients: 5 to 1024 characters of base32hex (0-9 and a-v).
+    Random rather than derived from the event, since Google keeps the IDs of deleted events and a later run
+    generating the same event again would be refused.
+     */
+    public static String NewEventID()
+    {
+        var bytes = new byte[16];
+        RANDOM.nextBytes(bytes);
+        var id = new BigInteger(1, bytes).toString(32);
+        return "0".repeat(26 - id.length()) + id;
+    }
+}
@@ -0,0 +1,85 @@
+package com.marksware.simplescheduler.models;
+
+/*
+Outcome of a single EventMutation
+ */
+public class MutationResult {
+
+    private final EventMutation _Mutation;
+    public EventMutation GetMutation() { return _Mutation; }
+
+    private final boolean _Success;
+    public boolean IsSuccess() { return _Success; }
+
+    private final int _StatusCode;
+    public int GetStatusCode() { return _StatusCode; }
+
+    private final String _Reason;
+    public String GetReason() { return _Reason != null ? _Reason : ""; }
+
+    private final String _Message;
+    public String GetMessage() { return _Message != null ? _Message : ""; }
+
+    // ID of the event on the calendar, which for an add is the newly assigned one
+    private final String _ResultID;
+    public String GetResultID() { return _ResultID; }
+
+    // Number of times the mutation was sent, including retries
+    private final int _Attempts;
+    public int GetAttempts() { return _Attempts; }
+
+    private MutationResult(EventMutation mutation, boolean success, int statusCode, String reason, String message, String resultID, int attempts)
+    {
+        _Mutation = mutation;
+        _Success = success;
+        _StatusCode = statusCode;
+        _Reason = reason;
+        _Message = message;
+        _ResultID = resultID;
+        _Attempts = attempts;
+    }
+
+    public MutationResult WithAttempts(int attempts)
+    {
+        return new MutationResult(_Mutation, _Success, _StatusCode, _Reason, _Message, _ResultID, attempts);
+    }
+
+    /*
+    Rate limiting (429, or 403 with a rate limit reason), server errors and lost responses are worth retrying
+     */
+    public boolean IsRetryable()
+    {
+        if (_Success)
+            return false;
+        if (_StatusCode == 429 || _StatusCode == 0 || _StatusCode >= 500)
+            return true;
+        return _StatusCode == 403 && (GetReason().equals("rateLimitExceeded") || GetReason().equals("userRateLimitExceeded"));
+    }
+
+    // An insert refused because its client chosen ID is already taken, which on a retry means the first attempt went through
+    public boolean IsDuplicateInsert()
+    {
+        return !_Success && _StatusCode == 409 && _Mutation.GetOperation() == EventMutation.Operation.Add;
+    }
+
+    // A delete of an event that is gone (404) or already deleted (410), which on a retry means the first attempt went through
+    public boolean IsAlreadyDeleted()
+    {
+        return !_Success && (_StatusCode == 404 || _StatusCode == 410) && _Mutation.GetOperation() == EventMutation.Operation.Delete;
+    }
+
+    public boolean IsRateLimited()
+    {
+        return _StatusCode == 429 || (IsRetryable() && _StatusCode == 403);
+    }
+
+    public static MutationResult Succeeded(EventMutation mutation, String resultID)
+    {
+        return new MutationResult(mutation, true, 200, null, null, resultID, 1);
+    }
+
+    public static MutationResult Failed(EventMutation mutation, int statusCode, String reason, String message)
+    {
+        return new MutationResult(mutation, false, statusCode, reason, message, null, 1);
+    }
+}
@@ -0,0 +1,508 @@
+package com.marksware.simplescheduler.models;
+
+import java.time.*;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
+import java.util.*;
+
+/*
+When a recurring event happens, worked out from the RRULE, RDATE and EXDATE lines Google keeps in its recurrence field.
+Occurrences are found one period at a time in the event's own time zone, so a weekly 9am meeting stays at 9am across
+daylight saving changes, and nothing past the point a caller stops reading is ever computed.
+Understands FREQ DAILY, WEEKLY, MONTHLY and YEARLY with INTERVAL, COUNT, UNTIL, WKST, BYMONTH, BYMONTHDAY and BYDAY,
+ordinals included ("2MO", "-1FR"). Anything else, such as BYSETPOS or FREQ=HOURLY, is an IllegalArgumentException.
+ */
+public class Recurrence {
+
+    private static final DateTimeFormatter INSTANCE_TIME = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss'Z'").withZone(ZoneOffset.UTC);
+    private static final DateTimeFormatter INSTANCE_DATE = DateTimeFormatter.ofPattern("yyyyMMdd").withZone(ZoneOffset.UTC);
+    private static final DateTimeFormatter LOCAL_TIME = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss");
+    private static final DateTimeFormatter LOCAL_DATE = DateTimeFormatter.BASIC_ISO_DATE;
+    private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+
+    // Rules that can never match again, such as the 30th of February, give up here
+    private static final int LAST_YEAR = 9999;
+
+    private enum Frequency { DAILY, WEEKLY, MONTHLY, YEARLY }
+
+    private static class Rule {
+        Frequency _Frequency = null;
+        int _Interval = 1;
+        int _Count = 0;
+        long _UntilMillis = Long.MAX_VALUE;
+        DayOfWeek _WeekStart = DayOfWeek.MONDAY;
+        final ArrayList<Integer> _Months = new ArrayList<Integer>();
+        final ArrayList<Integer> _MonthDays = new ArrayList<Integer>();
+        final ArrayList<DayOfWeek> _Days = new ArrayList<DayOfWeek>();
+        // 0 for every such weekday in the month or year, otherwise counted from the start, or from the end if negative
+        final ArrayList<Integer> _DayOrdinals = new ArrayList<Integer>();
+    }
+
+    private final ZoneId _Zone;
+    private final LocalDateTime _Start;
+    private final long _StartMillis;
+    private final ArrayList<Rule> _Rules = new ArrayList<Rule>();
+    private final TreeSet<Long> _Dates = new TreeSet<Long>();
+    private final HashSet<Long> _Excluded = new HashSet<Long>();
+
+    public Recurrence(List<String> lines, long startMillis, ZoneId zone)
+    {
+        _Zone = zone;
+        _StartMillis = startMillis;
+        _Start = LocalDateTime.ofInstant(Instant.ofEpochMilli(startMillis), zone);
+        for (var line : lines) {
+            ParseLine(line);
+        }
+    }
+
+    /*
+    The recurrence of a recurring event, repeating in its time zone, or at its UTC offset when it has none
+     */
+    public static Recurrence Of(SimpleEvent recurring)
+    {
+        return new Recurrence(recurring.GetRecurrence(), recurring.GetStartMillis(), recurring.GetZone());
+    }
+
+    /*
+    The ID Google gives one instance of a recurring event: the recurring event's ID and the instance's original start
+    in UTC, "abc_20261019T160000Z", or only the date for an all-day event, "abc_20261019"
+     */
+    public static String InstanceID(String recurringEventID, long originalStartMillis, boolean allDay)
+    {
+        var time = Instant.ofEpochMilli(originalStartMillis);
+        return recurringEventID + "_" + (allDay ? INSTANCE_DATE.format(time) : INSTANCE_TIME.format(time));
+    }
+
+    // All-day events come back from Google as midnight UTC to midnight UTC, with no time zone
+    public static boolean IsAllDay(SimpleEvent e)
+    {
+        return e.GetTimeZone() == null && e.GetStartTimeZoneShift() == 0
+                && Math.floorMod(e.GetStartMillis(), DAY_MILLIS) == 0 && Math.floorMod(e.GetEndMillis(), DAY_MILLIS) == 0;
+    }
+
+    /*
+    Starts of the occurrences from from onwards, in order. The iterator never ends for a rule without COUNT or UNTIL,
+    so stop reading at the end of the window.
+     */
+    public PrimitiveIterator.OfLong Starts(long from)
+    {
+        return new Occurrences(from);
+    }
+
+    /*
+    The instances of a recurring event that overlap from to to, as Google would list them: copies of the recurring
+    event moved to their own start, with the instance ID and original start set. Original starts in skip, those
+    changed or cancelled on their own, are left out.
+     */
+    public static Iterator<SimpleEvent> Instances(SimpleEvent recurring, long from, long to, Set<Long> skip)
+    {
+        var recurrence = Of(recurring);
+        var duration = recurring.GetEndMillis() - recurring.GetStartMillis();
+        var allDay = IsAllDay(recurring);
+        var starts = recurrence.Starts(from - Math.max(duration, 0) + 1);
+
+        return new Iterator<SimpleEvent>() {
+            private long _Next = Find();
+
+            private long Find()
+            {
+                while (starts.hasNext()) {
+                    var start = starts.nextLong();
+                    if (start >= to)
+                        return Long.MAX_VALUE;
+                    if (skip == null || !skip.contains(start))
+                        return start;
+                }
+                return Long.MAX_VALUE;
+            }
+
+            @Override
+            public boolean hasNext() { return _Next != Long.MAX_VALUE; }
+
+            @Override
+            public SimpleEvent next()
+            {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                var start = _Next;
+                _Next = Find();
+
+                var shift = recurrence._Zone.getRules().getOffset(Instant.ofEpochMilli(start)).getTotalSeconds() / 60;
+                var instance = new SimpleEvent(recurring);
+                instance.SetID(InstanceID(recurring.GetID(), start, allDay));
+                instance.SetRecurrence(null);
+                instance.SetRecurringEventID(recurring.GetID());
+                instance.SetOriginalStartMillis(start);
+                instance.SetStartMillis(start, allDay ? 0 : shift);
+                instance.SetEndMillis(start + duration, allDay ? 0 : shift);
+                return instance;
+            }
+        };
+    }
+
+    // "RRULE:FREQ=WEEKLY;BYDAY=MO", "EXDATE;TZID=Europe/Paris:20261019T090000", "RDATE;VALUE=DATE:20261019,20261020"
+    private void ParseLine(String line)
+    {
+        var colon = line.indexOf(':');
+        if (colon < 0)
+            throw new IllegalArgumentException(String.format("Unreadable recurrence '%s'", line));
+        var head = line.substring(0, colon).split(";");
+        var value = line.substring(colon + 1);
+        var params = new HashMap<String, String>();
+        for (int i = 1; i < head.length; i++) {
+            var eq = head[i].indexOf('=');
+            if (eq > 0)
+                params.put(head[i].substring(0, eq).toUpperCase(), head[i].substring(eq + 1));
+        }
+
+        switch (head[0].toUpperCase()) {
+            case "RRULE": _Rules.add(ParseRule(value)); break;
+            case "RDATE":
+                if ("PERIOD".equalsIgnoreCase(params.get("VALUE")))
+                    throw new IllegalArgumentException(String.format("Unsupported recurrence '%s'", line));
+                for (var v : value.split(",")) {
+                    _Dates.add(ParseTime(v, params.get("TZID"), false));
+                }
+                break;
+            case "EXDATE":
+                for (var v : value.split(",")) {
+                    _Excluded.add(ParseTime(v, params.get("TZID"), false));
+                }
+                break;
+            default: throw new IllegalArgumentException(String.format("Unsupported recurrence '%s'", line));
+        }
+    }
+
+    private Rule ParseRule(String value)
+    {
+        var rule = new Rule();
+        for (var part : value.split(";")) {
+            var eq = part.indexOf('=');
+            if (eq <= 0)
+                throw new IllegalArgumentException(String.format("Unreadable RRULE part '%s'", part));
+            var name = part.substring(0, eq).toUpperCase();
+            var v = part.substring(eq + 1);
+            try {
+                switch (name) {
+                    case "FREQ": rule._Frequency = Frequency.valueOf(v.toUpperCase()); break;
+                    case "INTERVAL": rule._Interval = Integer.parseInt(v); break;
+                    case "COUNT": rule._Count = Integer.parseInt(v); break;
+                    case "UNTIL": rule._UntilMillis = ParseTime(v, null, true); break;
+                    case "WKST": rule._WeekStart = ParseDay(v); break;
+                    case "BYMONTH":
+                        for (var m : v.split(",")) {
+                            rule._Months.add(Integer.parseInt(m));
+                        }
+                        break;
+                    case "BYMONTHDAY":
+                        for (var d : v.split(",")) {
+                            rule._MonthDays.add(Integer.parseInt(d));
+                        }
+                        break;
+                    case "BYDAY":
+                        for (var d : v.split(",")) {
+                            var ordinal = d.length() > 2 ? d.substring(0, d.length() - 2) : "0";
+                            rule._DayOrdinals.add(Integer.parseInt(ordinal.startsWith("+") ? ordinal.substring(1) : ordinal));
+                            rule._Days.add(ParseDay(d.substring(d.length() - 2)));
+                        }
+                        break;
+                    default: throw new IllegalArgumentException(String.format("Unsupported RRULE part '%s'", part));
+                }
+            } catch (NumberFormatException ex) {
+                throw new IllegalArgumentException(String.format("Unreadable RRULE part '%s'", part), ex);
+            }
+        }
+        if (rule._Frequency == null)
+            throw new IllegalArgumentException(String.format("RRULE without a supported FREQ '%s'", value));
+        if (rule._Interval < 1 || rule._Count < 0)
+            throw new IllegalArgumentException(String.format("Unreadable RRULE '%s'", value));
+        return rule;
+    }
+
+    private static DayOfWeek ParseDay(String day)
+    {
+        switch (day.toUpperCase()) {
+            case "MO": return DayOfWeek.MONDAY;
+            case "TU": return DayOfWeek.TUESDAY;
+            case "WE": return DayOfWeek.WEDNESDAY;
+            case "TH": return DayOfWeek.THURSDAY;
+            case "FR": return DayOfWeek.FRIDAY;
+            case "SA": return DayOfWeek.SATURDAY;
+            case "SU": return DayOfWeek.SUNDAY;
+            default: throw new IllegalArgumentException(String.format("Unknown weekday '%s'", day));
+        }
+    }
+
+    /*
+    "20261019T160000Z" in UTC, "20261019T090000" in tzid or the event's zone, or a date "20261019" at the event's own
+    time of day. A date that ends an UNTIL is taken as the whole day.
+     */
+    private long ParseTime(String value, String tzid, boolean until)
+    {
+        try {
+            var zone = tzid != null ? ZoneId.of(tzid) : _Zone;
+            if (value.endsWith("Z"))
+                return LocalDateTime.parse(value.substring(0, value.length() - 1), LOCAL_TIME).toInstant(ZoneOffset.UTC).toEpochMilli();
+            if (value.length() == 8) {
+                var date = LocalDate.parse(value, LOCAL_DATE);
+                if (until)
+                    return date.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli() - 1;
+                return ZonedDateTime.of(date, _Start.toLocalTime(), zone).toInstant().toEpochMilli();
+            }
+            return ZonedDateTime.of(LocalDateTime.parse(value, LOCAL_TIME), zone).toInstant().toEpochMilli();
+        } catch (DateTimeException ex) {
+            throw new IllegalArgumentException(String.format("Unreadable recurrence time '%s'", value), ex);
+        }
+    }
+
+    // Rule occurrences and RDATEs merged in order, less EXDATEs
+    private class Occurrences implements PrimitiveIterator.OfLong {
+        private final ArrayList<RuleOccurrences> _RuleOccurrences = new ArrayList<RuleOccurrences>();
+        private final Iterator<Long> _DateIterator;
+        private long _NextDate;
+        private long _Next;
+
+        Occurrences(long from)
+        {
+            for (var rule : _Rules) {
+                _RuleOccurrences.add(new RuleOccurrences(rule, from));
+            }
+            _DateIterator = _Dates.tailSet(Math.max(from, _StartMillis), true).iterator();
+            _NextDate = _DateIterator.hasNext() ? _DateIterator.next() : Long.MAX_VALUE;
+            _Next = Find();
+        }
+
+        private long Find()
+        {
+            while (true) {
+                var next = _NextDate;
+                for (var r : _RuleOccurrences) {
+                    next = Math.min(next, r.Peek());
+                }
+                if (next == Long.MAX_VALUE)
+                    return next;
+
+                if (_NextDate == next)
+                    _NextDate = _DateIterator.hasNext() ? _DateIterator.next() : Long.MAX_VALUE;
+                for (var r : _RuleOccurrences) {
+                    if (r.Peek() == next)
+                        r.Advance();
+                }
+                if (!_Excluded.contains(next))
+                    return next;
+            }
+        }
+
+        @Override
+        public boolean hasNext() { return _Next != Long.MAX_VALUE; }
+
+        @Override
+        public long nextLong()
+        {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            var next = _Next;
+            _Next = Find();
+            return next;
+        }
+    }
+
+    // One RRULE's occurrences from from onwards, worked out a period (day, week, month or year) at a time
+    private class RuleOccurrences {
+        private final Rule _Rule;
+        private final long _From;
+        private LocalDate _Period;
+        private long[] _Buffer = new long[0];
+        private int _Position = 0;
+        private int _Counted = 0;
+        private boolean _Last = false;
+        private boolean _Done = false;
+
+        RuleOccurrences(Rule rule, long from)
+        {
+            _Rule = rule;
+            _From = from;
+            var date = _Start.toLocalDate();
+            switch (rule._Frequency) {
+                case WEEKLY: _Period = date.with(TemporalAdjusters.previousOrSame(rule._WeekStart)); break;
+                case MONTHLY: _Period = date.withDayOfMonth(1); break;
+                case YEARLY: _Period = date.withDayOfYear(1); break;
+                default: _Period = date; break;
+            }
+            // COUNT has to be counted from the first occurrence, anything else can skip straight to the window
+            if (rule._Count == 0 && from > _StartMillis)
+                SkipTo(LocalDateTime.ofInstant(Instant.ofEpochMilli(from), _Zone).toLocalDate());
+            Fill();
+        }
+
+        long Peek() { return _Done ? Long.MAX_VALUE : _Buffer[_Position]; }
+
+        void Advance()
+        {
+            _Position++;
+            Fill();
+        }
+
+        private ChronoUnit Unit()
+        {
+            switch (_Rule._Frequency) {
+                case WEEKLY: return ChronoUnit.WEEKS;
+                case MONTHLY: return ChronoUnit.MONTHS;
+                case YEARLY: return ChronoUnit.YEARS;
+                default: return ChronoUnit.DAYS;
+            }
+        }
+
+        // Jump whole intervals forward, stopping a period short of date
+        private void SkipTo(LocalDate date)
+        {
+            var periods = Unit().between(_Period, date);
+            var skip = (periods / _Rule._Interval - 1) * _Rule._Interval;
+            if (skip > 0)
+                _Period = _Period.plus(skip, Unit());
+        }
+
+        private void Fill()
+        {
+            while (true) {
+                while (_Position < _Buffer.length && _Buffer[_Position] < _From) {
+                    _Position++;
+                }
+                if (_Position < _Buffer.length)
+                    return;
+                if (_Last) {
+                    _Done = true;
+                    return;
+                }
+                NextPeriod();
+            }
+        }
+
+        private void NextPeriod()
+        {
+            _Position = 0;
+            if (_Period.getYear() > LAST_YEAR) {
+                _Buffer = new long[0];
+                _Last = true;
+                return;
+            }
+            var dates = Dates(_Rule, _Period);
+            var starts = new long[dates.size()];
+            int n = 0;
+            for (var date : dates) {
+                var start = ZonedDateTime.of(date, _Start.toLocalTime(), _Zone).toInstant().toEpochMilli();
+                if (start < _StartMillis)
+                    continue;
+                if (start > _Rule._UntilMillis || (_Rule._Count > 0 && _Counted >= _Rule._Count)) {
+                    _Last = true;
+                    break;
+                }
+                starts[n++] = start;
+                _Counted++;
+            }
+            _Buffer = n == starts.length ? starts : Arrays.copyOf(starts, n);
+            _Period = _Period.plus(_Rule._Interval, Unit());
+        }
+    }
+
+    // The dates the rule picks in the period starting on period, in order
+    private List<LocalDate> Dates(Rule rule, LocalDate period)
+    {
+        var dates = new ArrayList<LocalDate>();
+        switch (rule._Frequency) {
+            case DAILY:
+                if (MonthMatches(rule, period) && MonthDayMatches(rule, period) && (rule._Days.isEmpty() || rule._Days.contains(period.getDayOfWeek())))
+                    dates.add(period);
+                break;
+            case WEEKLY:
+                for (int i = 0; i < 7; i++) {
+                    var date = period.plusDays(i);
+                    var day = date.getDayOfWeek();
+                    if ((rule._Days.isEmpty() ? day == _Start.getDayOfWeek() : rule._Days.contains(day)) && MonthMatches(rule, date))
+                        dates.add(date);
+                }
+                break;
+            case MONTHLY:
+                if (MonthMatches(rule, period))
+                    AddMonthDates(rule, period, dates);
+                break;
+            case YEARLY:
+                if (!rule._Months.isEmpty() || !rule._MonthDays.isEmpty()) {
+                    for (int month = 1; month <= 12; month++) {
+                        var first = period.withMonth(month);
+                        if (MonthMatches(rule, first))
+                            AddMonthDates(rule, first, dates);
+                    }
+                } else if (!rule._Days.isEmpty()) {
+                    AddWeekdays(rule, period, period.plusYears(1), dates);
+                } else if (MonthDay.from(_Start).isValidYear(period.getYear())) {
+                    dates.add(MonthDay.from(_Start).atYear(period.getYear()));
+                }
+                break;
+        }
+        return dates;
+    }
+
+    private void AddMonthDates(Rule rule, LocalDate first, List<LocalDate> dates)
+    {
+        var length = first.lengthOfMonth();
+        if (!rule._MonthDays.isEmpty()) {
+            var days = new TreeSet<Integer>();
+            for (var d : rule._MonthDays) {
+                var day = d > 0 ? d : length + d + 1;
+                if (day >= 1 && day <= length && (rule._Days.isEmpty() || rule._Days.contains(first.withDayOfMonth(day).getDayOfWeek())))
+                    days.add(day);
+            }
+            for (var day : days) {
+                dates.add(first.withDayOfMonth(day));
+            }
+        } else if (!rule._Days.isEmpty()) {
+            AddWeekdays(rule, first, first.plusMonths(1), dates);
+        } else if (_Start.getDayOfMonth() <= length) {
+            dates.add(first.withDayOfMonth(_Start.getDayOfMonth()));
+        }
+    }
+
+    // BYDAY between from and to, with "2MO" meaning the second Monday and "-1FR" the last Friday
+    private static void AddWeekdays(Rule rule, LocalDate from, LocalDate to, List<LocalDate> dates)
+    {
+        var days = new TreeSet<LocalDate>();
+        for (int i = 0; i < rule._Days.size(); i++) {
+            var day = rule._Days.get(i);
+            var ordinal = rule._DayOrdinals.get(i);
+            var first = from.with(TemporalAdjusters.nextOrSame(day));
+            if (ordinal == 0) {
+                for (var date = first; date.isBefore(to); date = date.plusWeeks(1)) {
+                    days.add(date);
+                }
+            } else if (ordinal > 0) {
+                var date = first.plusWeeks(ordinal - 1);
+                if (date.isBefore(to))
+                    days.add(date);
+            } else {
+                var date = to.minusDays(1).with(TemporalAdjusters.previousOrSame(day)).plusWeeks(ordinal + 1);
+                if (!date.isBefore(from))
+                    days.add(date);
+            }
+        }
+        dates.addAll(days);
+    }
+
+    private static boolean MonthMatches(Rule rule, LocalDate date)
+    {
+        return rule._Months.isEmpty() || rule._Months.contains(date.getMonthValue());
+    }
+
+    private static boolean MonthDayMatches(Rule rule, LocalDate date)
+    {
+        if (rule._MonthDays.isEmpty())
+            return true;
+        var length = date.lengthOfMonth();
+        for (var d : rule._MonthDays) {
+            if ((d > 0 ? d : length + d + 1) == date.getDayOfMonth())
+                return true;
+        }
+        return false;
+    }
+}
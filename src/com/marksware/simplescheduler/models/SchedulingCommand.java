@@ -0,0 +1,51 @@
+package com.marksware.simplescheduler.models;
+
+import java.util.Collections;
+import java.util.List;
+
+/*
+A scheduling command found in an event's description, such as _SimpleSchedule_Split(3)
+ */
+public class SchedulingCommand {
+
+    private final String _Name;
+    public String GetName() { return _Name; }
+
+    // Arguments given in parentheses after the command, if any
+    private final List<String> _Arguments;
+    public List<String> GetArguments() { return _Arguments; }
+    public int GetArgumentCount() { return _Arguments.size(); }
+    public String GetArgument(int index) { return index < _Arguments.size() ? _Arguments.get(index) : null; }
+
+    // Position of the command in the description
+    private final int _Offset;
+    public int GetOffset() { return _Offset; }
+
+    public SchedulingCommand(String name, List<String> arguments, int offset)
+    {
+        _Name = name;
+        _Arguments = arguments != null ? Collections.unmodifiableList(arguments) : Collections.emptyList();
+        _Offset = offset;
+    }
+
+    /*
+    Integer argument, or the default if it is missing. Throws IllegalArgumentException if it is not a number.
+     */
+    public int GetIntArgument(int index, int defaultValue)
+    {
+        var value = GetArgument(index);
+        if (value == null || value.isEmpty())
+            return defaultValue;
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException(String.format("%s expects a number, got '%s'", _Name, value));
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return _Arguments.isEmpty() ? _Name : _Name + "(" + String.join(",", _Arguments) + ")";
+    }
+}
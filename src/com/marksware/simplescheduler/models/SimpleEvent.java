@@ -3,12 +3,13 @@ package com.marksware.simplescheduler.models;
 import com.google.api.client.util.DateTime;
 import com.google.api.services.calendar.model.*;
 
+import java.time.DateTimeException;
 import java.time.Instant;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
-import java.util.Date;
-import java.util.Hashtable;
+import java.time.ZoneOffset;
+import java.util.*;
 
 public class SimpleEvent {
 
@@ -20,6 +21,14 @@ public class SimpleEvent {
 
     private String _ID = null;
     public String GetID() { return _ID; }
+    public void SetID(String value) { _ID = value; }
+
+    public static final String  STATUS_CANCELLED = "cancelled";
+
+    private String _Status = null;
+    public String GetStatus() { return _Status; }
+    public void SetStatus(String value) { _Status = value; }
+    public boolean IsCancelled() { return STATUS_CANCELLED.equals(_Status); }
 
     private String _Summary = "";
     public String GetSummary() { return _Summary != null ? _Summary : ""; }
@@ -33,77 +42,231 @@ public class SimpleEvent {
     public String GetDescription() { return _Description != null ? _Description : ""; }
     public void SetDescription(String value) { _Description = value; }
 
-    private Instant _StartDateTime = Instant.now();
-    public Instant GetStartDateTime() { return _StartDateTime; }
-    public DateTime GetGoogleStartDateTime() { return InstantToGoogleDateTime(_StartDateTime); }
-    public void SetStartDateTime(Instant value) { _StartDateTime = value; }
-    public void SetStartDateTime(DateTime value) { _StartDateTime = DateTimeToInstant(value); }
-    public void SetStartDateTime(EventDateTime value) { _StartDateTime = EventDateTimeToInstant(value); }
-    public void SetStartDateTimeString(String value) { _StartDateTime = StringToInstant(value); } //"2022-02-05T19:00:00.000-08:00"
-
-    private Instant _EndDateTime = Instant.now();
-    public Instant GetEndDateTime() { return _EndDateTime; }
-    public DateTime GetGoogleEndDateTime() { return InstantToGoogleDateTime(_EndDateTime); }
-    public void SetEndDateTime(Instant value) { _EndDateTime = value; }
-    public void SetEndDateTime(DateTime value) { _EndDateTime = DateTimeToInstant(value); }
-    public void SetEndDateTime(EventDateTime value) { _EndDateTime = EventDateTimeToInstant(value); }
-    public void SetEndDateTimeString(String value) { _EndDateTime = StringToInstant(value); } //"2022-02-05T19:00:00.000-08:00"
-
-    private Hashtable<String,String> _ExtendedProperties = new Hashtable<String,String>();
-    public Hashtable<String, String> GetExtendedProperties() { return _ExtendedProperties; }
+    // Times are kept as epoch milliseconds with the UTC offset they were given in, so converting to and from
+    // Google's DateTime never goes through a string. NO_TIME stands in for a missing time.
+    public static final long NO_TIME = Long.MIN_VALUE;
 
-    public static DateTime InstantToGoogleDateTime(Instant instant)
+    private long _StartMillis = System.currentTimeMillis();
+    private int _StartTimeZoneShift = 0;
+    private String _StartRfc3339 = null;
+    public long GetStartMillis() { return _StartMillis; }
+    public int GetStartTimeZoneShift() { return _StartTimeZoneShift; }
+    public Instant GetStartDateTime() { return MillisToInstant(_StartMillis); }
+    public DateTime GetGoogleStartDateTime() { return MillisToGoogleDateTime(_StartMillis, _StartTimeZoneShift); }
+    public String GetStartRfc3339() { return _StartRfc3339 != null || _StartMillis == NO_TIME ? _StartRfc3339 : (_StartRfc3339 = FormatRfc3339(_StartMillis)); }
+    public void SetStartMillis(long value) { SetStart(value, 0); }
+    public void SetStartMillis(long value, int timeZoneShift) { SetStart(value, timeZoneShift); }
+    public void SetStartDateTime(Instant value) { SetStart(InstantToMillis(value), 0); }
+    public void SetStartDateTime(DateTime value) { SetStart(DateTimeToMillis(value), TimeZoneShift(value)); }
+    public void SetStartDateTime(EventDateTime value) { SetStartDateTime(EventDateTimeToGoogleDateTime(value)); }
+    public void SetStartDateTimeString(String value) { SetStart(StringToMillis(value), 0); } //"2022-02-05T19:00:00.000-08:00"
+
+    private long _EndMillis = System.currentTimeMillis();
+    private int _EndTimeZoneShift = 0;
+    private String _EndRfc3339 = null;
+    public long GetEndMillis() { return _EndMillis; }
+    public int GetEndTimeZoneShift() { return _EndTimeZoneShift; }
+    public Instant GetEndDateTime() { return MillisToInstant(_EndMillis); }
+    public DateTime GetGoogleEndDateTime() { return MillisToGoogleDateTime(_EndMillis, _EndTimeZoneShift); }
+    public String GetEndRfc3339() { return _EndRfc3339 != null || _EndMillis == NO_TIME ? _EndRfc3339 : (_EndRfc3339 = FormatRfc3339(_EndMillis)); }
+    public void SetEndMillis(long value) { SetEnd(value, 0); }
+    public void SetEndMillis(long value, int timeZoneShift) { SetEnd(value, timeZoneShift); }
+    public void SetEndDateTime(Instant value) { SetEnd(InstantToMillis(value), 0); }
+    public void SetEndDateTime(DateTime value) { SetEnd(DateTimeToMillis(value), TimeZoneShift(value)); }
+    public void SetEndDateTime(EventDateTime value) { SetEndDateTime(EventDateTimeToGoogleDateTime(value)); }
+    public void SetEndDateTimeString(String value) { SetEnd(StringToMillis(value), 0); } //"2022-02-05T19:00:00.000-08:00"
+
+    private void SetStart(long millis, int timeZoneShift)
     {
-        if (instant != null) {
-            var date = DateTime.parseRfc3339(instant.toString());
-            return date;
-        }
-        return null;
+        _StartMillis = millis;
+        _StartTimeZoneShift = timeZoneShift;
+        _StartRfc3339 = null;
+    }
+
+    private void SetEnd(long millis, int timeZoneShift)
+    {
+        _EndMillis = millis;
+        _EndTimeZoneShift = timeZoneShift;
+        _EndRfc3339 = null;
     }
 
-    private Instant DateTimeToInstant(DateTime dateTime)
+    // Property keys are interned, they repeat on nearly every event
+    private HashMap<String,String> _ExtendedProperties = new HashMap<String,String>();
+    public Map<String, String> GetExtendedProperties() { return _ExtendedProperties; }
+
+    // The IANA time zone the start was given in, which a recurring event repeats in
+    private String _TimeZone = null;
+    public String GetTimeZone() { return _TimeZone; }
+    public void SetTimeZone(String value) { _TimeZone = value; }
+
+    /*
+    The zone the event happens in, for working out its local date and time: its time zone, or the offset its start
+    was given with when it has none. Throws IllegalArgumentException for a time zone Java does not know.
+     */
+    public ZoneId GetZone()
     {
-        if (dateTime != null) {
-            var date = dateTime.toStringRfc3339();
-            var instant = Instant.parse(date);
-            return instant;
+        if (_TimeZone == null)
+            return ZoneOffset.ofTotalSeconds(_StartTimeZoneShift * 60);
+        try {
+            return ZoneId.of(_TimeZone);
+        } catch (DateTimeException ex) {
+            throw new IllegalArgumentException(String.format("Unknown time zone '%s'", _TimeZone), ex);
         }
-        return null;
     }
 
-    private Instant EventDateTimeToInstant(EventDateTime eventDateTime)
+    // RRULE, EXDATE and RDATE lines of a recurring event, null for a single event or an instance
+    private List<String> _Recurrence = null;
+    public List<String> GetRecurrence() { return _Recurrence; }
+    public void SetRecurrence(List<String> value) { _Recurrence = value; }
+    public boolean IsRecurring() { return _Recurrence != null && !_Recurrence.isEmpty(); }
+
+    // For one instance of a recurring event, the recurring event's ID and the time the instance was first due to start
+    private String _RecurringEventID = null;
+    public String GetRecurringEventID() { return _RecurringEventID; }
+    public void SetRecurringEventID(String value) { _RecurringEventID = value; }
+
+    private long _OriginalStartMillis = NO_TIME;
+    public long GetOriginalStartMillis() { return _OriginalStartMillis; }
+    public void SetOriginalStartMillis(long value) { _OriginalStartMillis = value; }
+
+    public static DateTime InstantToGoogleDateTime(Instant instant)
+    {
+        return MillisToGoogleDateTime(InstantToMillis(instant), 0);
+    }
+
+    public static DateTime MillisToGoogleDateTime(long millis, int timeZoneShift)
+    {
+        return millis != NO_TIME ? new DateTime(false, millis, timeZoneShift) : null;
+    }
+
+    private static Instant MillisToInstant(long millis)
+    {
+        return millis != NO_TIME ? Instant.ofEpochMilli(millis) : null;
+    }
+
+    private static long InstantToMillis(Instant instant)
+    {
+        return instant != null ? instant.toEpochMilli() : NO_TIME;
+    }
+
+    private static long DateTimeToMillis(DateTime dateTime)
+    {
+        return dateTime != null ? dateTime.getValue() : NO_TIME;
+    }
+
+    // All-day dates are taken as midnight UTC
+    private static int TimeZoneShift(DateTime dateTime)
+    {
+        return dateTime != null && !dateTime.isDateOnly() ? dateTime.getTimeZoneShift() : 0;
+    }
+
+    private static DateTime EventDateTimeToGoogleDateTime(EventDateTime eventDateTime)
     {
         if (eventDateTime != null) {
             var dateTime = eventDateTime.getDateTime();
-            if (dateTime == null)
-                dateTime = eventDateTime.getDate();
-            if (dateTime != null) {
-                var date = dateTime.toStringRfc3339();
-                if (dateTime.isDateOnly())
-                    date += "T00:00:00+00:00";
-                var instant = Instant.parse(date);
-                return instant;
-            }
+            return dateTime != null ? dateTime : eventDateTime.getDate();
         }
         return null;
     }
 
     public static Instant StringToInstant(String dateTime)
     {
-        if (dateTime != null) {
-            var instant = Instant.parse(dateTime);
-            return instant;
+        return MillisToInstant(StringToMillis(dateTime));
+    }
+
+    /*
+    Parse an RFC3339 time. Our own UTC form ("2022-02-06T03:00:00.000Z") is read directly, anything else
+    falls back to Instant.parse.
+     */
+    public static long StringToMillis(String dateTime)
+    {
+        if (dateTime == null)
+            return NO_TIME;
+        if (dateTime.length() == 24 && dateTime.charAt(4) == '-' && dateTime.charAt(7) == '-' && dateTime.charAt(10) == 'T'
+                && dateTime.charAt(13) == ':' && dateTime.charAt(16) == ':' && dateTime.charAt(19) == '.' && dateTime.charAt(23) == 'Z') {
+            int year = Digits(dateTime, 0, 4);
+            int month = Digits(dateTime, 5, 2);
+            int day = Digits(dateTime, 8, 2);
+            int hour = Digits(dateTime, 11, 2);
+            int minute = Digits(dateTime, 14, 2);
+            int second = Digits(dateTime, 17, 2);
+            int millis = Digits(dateTime, 20, 3);
+            if (year >= 0 && month >= 1 && month <= 12 && day >= 1 && day <= 31
+                    && hour >= 0 && hour < 24 && minute >= 0 && minute < 60 && second >= 0 && second < 60 && millis >= 0)
+                return (DaysFromCivil(year, month, day) * 86400L + hour * 3600L + minute * 60L + second) * 1000L + millis;
         }
-        return null;
+        return Instant.parse(dateTime).toEpochMilli();
+    }
+
+    /*
+    Format as RFC3339 in UTC with milliseconds, the same text DateTime.toStringRfc3339() gives for a zero offset
+     */
+    public static String FormatRfc3339(long millis)
+    {
+        long days = Math.floorDiv(millis, 86400000L);
+        int millisOfDay = (int) Math.floorMod(millis, 86400000L);
+
+        // Civil date from days since 1970-01-01
+        long z = days + 719468;
+        long era = Math.floorDiv(z, 146097);
+        long dayOfEra = z - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long mp = (5 * dayOfYear + 2) / 153;
+        int day = (int) (dayOfYear - (153 * mp + 2) / 5 + 1);
+        int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+        if (year < 0 || year > 9999)
+            return new DateTime(false, millis, 0).toStringRfc3339();
+
+        var chars = new char[24];
+        PutDigits(chars, 0, (int) year, 4);
+        chars[4] = '-';
+        PutDigits(chars, 5, month, 2);
+        chars[7] = '-';
+        PutDigits(chars, 8, day, 2);
+        chars[10] = 'T';
+        PutDigits(chars, 11, millisOfDay / 3600000, 2);
+        chars[13] = ':';
+        PutDigits(chars, 14, millisOfDay / 60000 % 60, 2);
+        chars[16] = ':';
+        PutDigits(chars, 17, millisOfDay / 1000 % 60, 2);
+        chars[19] = '.';
+        PutDigits(chars, 20, millisOfDay % 1000, 3);
+        chars[23] = 'Z';
+        return new String(chars);
+    }
+
+    // Days since 1970-01-01 for a civil date
+    private static long DaysFromCivil(long year, int month, int day)
+    {
+        year -= month <= 2 ? 1 : 0;
+        long era = Math.floorDiv(year, 400);
+        long yearOfEra = year - era * 400;
+        long dayOfYear = (153L * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
     }
 
-    private DateTime StringToGoogleDateTime(String dateTime)
+    // Returns -1 if any character is not a digit
+    private static int Digits(String s, int offset, int count)
     {
-        if (dateTime != null) {
-            var date = DateTime.parseRfc3339(dateTime);
-            return date;
+        int value = 0;
+        for (int i = offset; i < offset + count; i++) {
+            int digit = s.charAt(i) - '0';
+            if (digit < 0 || digit > 9)
+                return -1;
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    private static void PutDigits(char[] chars, int offset, int value, int count)
+    {
+        for (int i = offset + count - 1; i >= offset; i--) {
+            chars[i] = (char) ('0' + value % 10);
+            value /= 10;
         }
-        return null;
     }
 
     public SimpleEvent()
@@ -114,11 +277,16 @@ public class SimpleEvent {
     {
         SetCalendarID(calenderID);
         _ID = ev.getId();
+        SetStatus(ev.getStatus());
         SetDescription(ev.getDescription());
         SetSummary(ev.getSummary());
         SetLocation(ev.getLocation());
         SetStartDateTime(ev.getStart());
         SetEndDateTime(ev.getEnd());
+        _TimeZone = ev.getStart() != null ? ev.getStart().getTimeZone() : null;
+        _Recurrence = ev.getRecurrence();
+        _RecurringEventID = ev.getRecurringEventId();
+        _OriginalStartMillis = DateTimeToMillis(EventDateTimeToGoogleDateTime(ev.getOriginalStartTime()));
 
         var googleProps = ev.getExtendedProperties();
         if (googleProps != null) {
@@ -126,7 +294,7 @@ public class SimpleEvent {
             if (shared != null) {
                 var simpleProps = GetExtendedProperties();
                 for (var m : shared.entrySet()) {
-                    simpleProps.put(m.getKey(), m.getValue());
+                    simpleProps.put(m.getKey().intern(), m.getValue());
                 }
             }
         }
@@ -136,17 +304,22 @@ public class SimpleEvent {
     {
         SetCalendarID(ev.GetCalendarID());
         _ID = ev.GetID();
+        SetStatus(ev.GetStatus());
         SetDescription(ev.GetDescription());
         SetSummary(ev.GetSummary());
         SetLocation(ev.GetLocation());
-        SetStartDateTime(ev.GetStartDateTime());
-        SetEndDateTime(ev.GetEndDateTime());
+        _StartMillis = ev._StartMillis;
+        _StartTimeZoneShift = ev._StartTimeZoneShift;
+        _StartRfc3339 = ev._StartRfc3339;
+        _EndMillis = ev._EndMillis;
+        _EndTimeZoneShift = ev._EndTimeZoneShift;
+        _EndRfc3339 = ev._EndRfc3339;
+        _TimeZone = ev._TimeZone;
+        _Recurrence = ev._Recurrence;
+        _RecurringEventID = ev._RecurringEventID;
+        _OriginalStartMillis = ev._OriginalStartMillis;
 
-        var props = GetExtendedProperties();
-        var simpleProps = ev.GetExtendedProperties();
-        for (var m : simpleProps.entrySet()) {
-            props.put(m.getKey(), (String) m.getValue());
-        }
+        _ExtendedProperties = new HashMap<String,String>(ev._ExtendedProperties);
     }
 
     public static Event NewGoogleEvent(SimpleEvent simple)
@@ -157,12 +330,16 @@ public class SimpleEvent {
         event.setDescription(simple.GetDescription());
         EventDateTime appStart = new EventDateTime();
         appStart.setDateTime(simple.GetGoogleStartDateTime());
+        appStart.setTimeZone(simple.GetTimeZone());
         event.setStart(appStart);
         EventDateTime appEnd = new EventDateTime();
         appEnd.setDateTime(simple.GetGoogleEndDateTime());
+        appEnd.setTimeZone(simple.GetTimeZone());
         event.setEnd(appEnd);
 
-        //Recurrence = new String[] { "RRULE:FREQ=WEEKLY;BYDAY=MO" },
+        // Google needs the time zone as well to repeat an event, e.g. "RRULE:FREQ=WEEKLY;BYDAY=MO"
+        if (simple.IsRecurring())
+            event.setRecurrence(simple.GetRecurrence());
 
         var simpleProps = simple.GetExtendedProperties();
         var appProps = new Event.ExtendedProperties();
@@ -172,13 +349,39 @@ public class SimpleEvent {
         return event;
     }
 
+    /*
+    True if both events would look the same on the calendar, ignoring IDs and status
+     */
+    public boolean ContentEquals(SimpleEvent other)
+    {
+        return other != null
+                && GetSummary().equals(other.GetSummary())
+                && GetLocation().equals(other.GetLocation())
+                && GetDescription().equals(other.GetDescription())
+                && _StartMillis == other._StartMillis
+                && _EndMillis == other._EndMillis
+                && Objects.equals(_TimeZone, other._TimeZone)
+                && Objects.equals(_Recurrence, other._Recurrence)
+                && GetExtendedProperties().equals(other.GetExtendedProperties());
+    }
+
     public void PrintEvent()
     {
-        System.out.printf("[%s]\n", GetSummary());
+        System.out.print(FormatEvent());
+    }
+
+    // What PrintEvent prints, as one string so events printed from several threads don't interleave
+    public String FormatEvent()
+    {
         //System.out.printf("%s\n", GetLocation());
         //System.out.printf("%s\n", GetDescription());
-        var start = LocalDateTime.ofInstant(GetStartDateTime(), ZoneId.systemDefault()).toString().replace("T", " ");
-        var end = LocalDateTime.ofInstant(GetEndDateTime(), ZoneId.systemDefault()).toString().replace("T", " ");
-        System.out.printf("(%s) To (%s)\n", start.toString(), end.toString());
+        return FormatEvent(GetSummary(), GetStartMillis(), GetEndMillis());
+    }
+
+    public static String FormatEvent(String summary, long startMillis, long endMillis)
+    {
+        var start = LocalDateTime.ofInstant(Instant.ofEpochMilli(startMillis), ZoneId.systemDefault()).toString().replace("T", " ");
+        var end = LocalDateTime.ofInstant(Instant.ofEpochMilli(endMillis), ZoneId.systemDefault()).toString().replace("T", " ");
+        return String.format("[%s]\n(%s) To (%s)\n", summary, start, end);
     }
 }
@@ -0,0 +1,133 @@
+package com.marksware.simplescheduler.models;
+
+import com.google.api.client.util.Data;
+import com.google.api.client.util.DateTime;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+/*
+Streaming JSON form of a SimpleEvent, used wherever events are kept on disk
+ */
+public class SimpleEventJson {
+
+    public static void Write(JsonWriter writer, SimpleEvent simple) throws IOException
+    {
+        writer.beginObject();
+        writer.name("calendarId").value(simple.GetCalendarID());
+        if (simple.GetID() != null)
+            writer.name("id").value(simple.GetID());
+        if (simple.GetStatus() != null)
+            writer.name("status").value(simple.GetStatus());
+        writer.name("summary").value(simple.GetSummary());
+        writer.name("location").value(simple.GetLocation());
+        writer.name("description").value(simple.GetDescription());
+        if (simple.GetStartMillis() != SimpleEvent.NO_TIME)
+            writer.name("start").value(FormatTime(simple.GetStartRfc3339(), simple.GetGoogleStartDateTime(), simple.GetStartTimeZoneShift()));
+        if (simple.GetEndMillis() != SimpleEvent.NO_TIME)
+            writer.name("end").value(FormatTime(simple.GetEndRfc3339(), simple.GetGoogleEndDateTime(), simple.GetEndTimeZoneShift()));
+        if (simple.GetTimeZone() != null)
+            writer.name("timeZone").value(simple.GetTimeZone());
+        if (simple.IsRecurring()) {
+            writer.name("recurrence").beginArray();
+            for (var line : simple.GetRecurrence()) {
+                writer.value(line);
+            }
+            writer.endArray();
+        }
+        if (simple.GetRecurringEventID() != null)
+            writer.name("recurringEventId").value(simple.GetRecurringEventID());
+        if (simple.GetOriginalStartMillis() != SimpleEvent.NO_TIME)
+            writer.name("originalStart").value(SimpleEvent.FormatRfc3339(simple.GetOriginalStartMillis()));
+
+        writer.name("extendedProperties").beginObject();
+        for (var p : simple.GetExtendedProperties().entrySet()) {
+            writer.name(p.getKey()).value(Data.isNull(p.getValue()) ? null : p.getValue());
+        }
+        writer.endObject();
+        writer.endObject();
+    }
+
+    public static SimpleEvent Read(JsonReader reader) throws IOException
+    {
+        var simple = new SimpleEvent();
+        simple.SetStartMillis(SimpleEvent.NO_TIME);
+        simple.SetEndMillis(SimpleEvent.NO_TIME);
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            var name = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                continue;
+            }
+            switch (name) {
+                case "calendarId": simple.SetCalendarID(reader.nextString()); break;
+                case "id": simple.SetID(reader.nextString()); break;
+                case "status": simple.SetStatus(reader.nextString()); break;
+                case "summary": simple.SetSummary(reader.nextString()); break;
+                case "location": simple.SetLocation(reader.nextString()); break;
+                case "description": simple.SetDescription(reader.nextString()); break;
+                case "start":
+                    var start = reader.nextString();
+                    if (IsUtc(start))
+                        simple.SetStartDateTimeString(start);
+                    else
+                        simple.SetStartDateTime(DateTime.parseRfc3339(start));
+                    break;
+                case "end":
+                    var end = reader.nextString();
+                    if (IsUtc(end))
+                        simple.SetEndDateTimeString(end);
+                    else
+                        simple.SetEndDateTime(DateTime.parseRfc3339(end));
+                    break;
+                case "timeZone": simple.SetTimeZone(reader.nextString()); break;
+                case "recurrence":
+                    var lines = new ArrayList<String>();
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        lines.add(reader.nextString());
+                    }
+                    reader.endArray();
+                    simple.SetRecurrence(lines);
+                    break;
+                case "recurringEventId": simple.SetRecurringEventID(reader.nextString()); break;
+                case "originalStart": simple.SetOriginalStartMillis(SimpleEvent.StringToMillis(reader.nextString())); break;
+                case "extendedProperties":
+                    var props = simple.GetExtendedProperties();
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        var key = reader.nextName().intern();
+                        // Google may send a property without a value, and Write keeps it as null
+                        if (reader.peek() == JsonToken.NULL) {
+                            reader.nextNull();
+                            props.put(key, null);
+                        } else {
+                            props.put(key, reader.nextString());
+                        }
+                    }
+                    reader.endObject();
+                    break;
+                default: reader.skipValue(); break;
+            }
+        }
+        reader.endObject();
+        return simple;
+    }
+
+    // Times keep the offset they were given at, so commands that count days where the event happens still can.
+    // Our own UTC form is the common case and is written and read without going through DateTime.
+    private static String FormatTime(String utc, DateTime dateTime, int timeZoneShift)
+    {
+        return timeZoneShift == 0 ? utc : dateTime.toStringRfc3339();
+    }
+
+    private static boolean IsUtc(String time)
+    {
+        return time.endsWith("Z") || time.endsWith("z");
+    }
+}
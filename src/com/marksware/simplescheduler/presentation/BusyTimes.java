@@ -0,0 +1,46 @@
+package com.marksware.simplescheduler.presentation;
+
+import com.marksware.simplescheduler.models.SimpleEvent;
+
+import java.util.Arrays;
+
+/*
+Busy time ranges as epoch millis, [start, end). Ranges may overlap and are kept in the order they were added.
+ */
+public class BusyTimes {
+
+    private long[] _Starts = new long[64];
+    private long[] _Ends = new long[64];
+    private int _Size = 0;
+
+    public int Size() { return _Size; }
+    public long GetStart(int index) { return _Starts[index]; }
+    public long GetEnd(int index) { return _Ends[index]; }
+
+    // Empty or missing ranges are ignored
+    public void Add(long start, long end)
+    {
+        if (start == SimpleEvent.NO_TIME || end == SimpleEvent.NO_TIME || end <= start)
+            return;
+        if (_Size == _Starts.length) {
+            _Starts = Arrays.copyOf(_Starts, _Size * 2);
+            _Ends = Arrays.copyOf(_Ends, _Size * 2);
+        }
+        _Starts[_Size] = start;
+        _Ends[_Size] = end;
+        _Size++;
+    }
+
+    public void Add(SimpleEvent e)
+    {
+        if (!e.IsCancelled())
+            Add(e.GetStartMillis(), e.GetEndMillis());
+    }
+
+    public void AddAll(BusyTimes other)
+    {
+        for (int i = 0; i < other._Size; i++) {
+            Add(other._Starts[i], other._Ends[i]);
+        }
+    }
+}
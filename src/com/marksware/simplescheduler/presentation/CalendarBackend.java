@@ -0,0 +1,47 @@
+package com.marksware.simplescheduler.presentation;
+
+import com.marksware.simplescheduler.models.EventMutation;
+import com.marksware.simplescheduler.models.MutationResult;
+import com.marksware.simplescheduler.models.SimpleEvent;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.util.Iterator;
+import java.util.List;
+
+/*
+Where SchedulingUtil reads and writes calendars
+ */
+public interface CalendarBackend {
+
+    List<String> GetCalendarIDs() throws IOException, GeneralSecurityException;
+
+    // Events from a year ago onwards, in start time order
+    Iterator<SimpleEvent> GetEvents(String calendarID, int pageSize) throws IOException, GeneralSecurityException;
+
+    // Events from a year ago onwards, in no particular order, with each recurring event once, as its recurrence,
+    // and only its changed and cancelled instances on their own
+    Iterator<SimpleEvent> GetRecurringEvents(String calendarID, int pageSize) throws IOException, GeneralSecurityException;
+
+    // Events changed since syncToken, or every event when it is null; removed events come back cancelled
+    SyncIterator GetEventChanges(String calendarID, String syncToken, int pageSize) throws IOException, GeneralSecurityException;
+
+    boolean IsSyncTokenExpired(Exception ex);
+
+    // Busy time on the given calendars between from and to, in epoch millis
+    BusyTimes GetBusyTimes(List<String> calendarIDs, long from, long to) throws IOException, GeneralSecurityException;
+
+    // Ask for notifications of changes to the calendar to be posted to address, until the channel expires or is stopped
+    WatchChannel Watch(String calendarID, String channelID, String token, String address) throws IOException, GeneralSecurityException;
+
+    void StopWatch(WatchChannel channel) throws IOException, GeneralSecurityException;
+
+    MutationResult AddEvent(SimpleEvent simple) throws IOException, GeneralSecurityException;
+
+    MutationResult UpdateEvent(SimpleEvent simple) throws IOException, GeneralSecurityException;
+
+    MutationResult DeleteEvent(SimpleEvent simple) throws IOException, GeneralSecurityException;
+
+    // One result per mutation, in the same order
+    List<MutationResult> ExecuteBatch(List<EventMutation> mutations) throws IOException, GeneralSecurityException;
+}
@@ -0,0 +1,79 @@
+package com.marksware.simplescheduler.presentation;
+
+import com.marksware.simplescheduler.models.MutationResult;
+
+import java.util.List;
+
+/*
+Timings and counts for processing one calendar
+ */
+public class CalendarRunReport {
+
+    private final String _CalendarID;
+    public String GetCalendarID() { return _CalendarID; }
+
+    private int _FetchedEvents = 0;
+    public int GetFetchedEvents() { return _FetchedEvents; }
+    public void SetFetchedEvents(int value) { _FetchedEvents = value; }
+
+    private int _Deleted = 0;
+    public int GetDeleted() { return _Deleted; }
+
+    private int _Updated = 0;
+    public int GetUpdated() { return _Updated; }
+
+    private int _Added = 0;
+    public int GetAdded() { return _Added; }
+
+    private int _Failed = 0;
+    public int GetFailed() { return _Failed; }
+
+    // Fetching and expanding overlap because events are expanded as pages arrive
+    private long _FetchMillis = 0;
+    public long GetFetchMillis() { return _FetchMillis; }
+    public void SetFetchMillis(long value) { _FetchMillis = value; }
+
+    private long _ApplyMillis = 0;
+    public long GetApplyMillis() { return _ApplyMillis; }
+    public void SetApplyMillis(long value) { _ApplyMillis = value; }
+
+    private String _Error = null;
+    public String GetError() { return _Error; }
+    public void SetError(String value) { _Error = value; }
+
+    public CalendarRunReport(String calendarID)
+    {
+        _CalendarID = calendarID;
+    }
+
+    public void AddResults(List<MutationResult> results)
+    {
+        for (var r : results) {
+            if (!r.IsSuccess()) {
+                _Failed++;
+                continue;
+            }
+            switch (r.GetMutation().GetOperation()) {
+                case Delete: _Deleted++; break;
+                case Update: _Updated++; break;
+                case Add: _Added++; break;
+            }
+        }
+    }
+
+    public static void PrintReports(List<CalendarRunReport> reports)
+    {
+        // One message, so the table stays together however much else is being logged
+        var table = new StringBuilder();
+        table.append("--- Summary ---\n");
+        table.append(String.format("%-40s %8s %8s %8s %8s %8s %10s %10s\n",
+                "Calendar", "Fetched", "Deleted", "Updated", "Added", "Failed", "Fetch ms", "Apply ms"));
+        for (var r : reports) {
+            table.append(String.format("%-40s %8d %8d %8d %8d %8d %10d %10d\n", r.GetCalendarID(), r.GetFetchedEvents(),
+                    r.GetDeleted(), r.GetUpdated(), r.GetAdded(), r.GetFailed(), r.GetFetchMillis(), r.GetApplyMillis()));
+            if (r.GetError() != null)
+                table.append(String.format("    Error: %s\n", r.GetError()));
+        }
+        Log.Info("%s", table.toString());
+    }
+}
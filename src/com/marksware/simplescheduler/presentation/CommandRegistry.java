@@ -0,0 +1,198 @@
+package com.marksware.simplescheduler.presentation;
+
+import com.marksware.simplescheduler.models.SchedulingCommand;
+import com.marksware.simplescheduler.models.SimpleEvent;
+
+import java.util.*;
+
+/*
+Scheduling commands by name, with a parser that finds every registered command in a description in one pass.
+The names are compiled into an Aho-Corasick automaton, so parsing costs the same however many commands are registered.
+
+A command is its name, optionally followed by arguments in parentheses: _SimpleSchedule_Split(3)
+ */
+public class CommandRegistry {
+
+    public interface CommandHandler {
+        void Apply(String calendarID, SimpleEvent e, SchedulingCommand command, EventPlan outPlan);
+    }
+
+    /*
+    A registered command: its handler, and the counter and timer it is recorded under, looked up once when it is
+    registered instead of for every event it runs on
+     */
+    public static class Entry {
+        private final CommandHandler _Handler;
+        public CommandHandler GetHandler() { return _Handler; }
+
+        private final Metrics.Counter _Counter;
+        public Metrics.Counter GetCounter() { return _Counter; }
+
+        private final Metrics.Timer _Timer;
+        public Metrics.Timer GetTimer() { return _Timer; }
+
+        private Entry(String name, CommandHandler handler)
+        {
+            _Handler = handler;
+            _Counter = Metrics.GetCounter("commands:" + name);
+            _Timer = Metrics.GetTimer("command:" + name);
+        }
+    }
+
+    private final LinkedHashMap<String, Entry> _Entries = new LinkedHashMap<String, Entry>();
+
+    // Rebuilt whenever a command is registered, and read without locking while events are expanded in parallel
+    private volatile Map<String, Entry> _EntrySnapshot = Map.of();
+    private volatile Matcher _Matcher = new Matcher(Collections.emptyList());
+
+    public synchronized void Register(String name, CommandHandler handler)
+    {
+        if (name == null || name.isEmpty())
+            throw new IllegalArgumentException("Command name is empty");
+        if (handler == null)
+            throw new IllegalArgumentException(String.format("Command '%s' has no handler", name));
+        for (int i = 0; i < name.length(); i++) {
+            if (!IsNameChar(name.charAt(i)))
+                throw new IllegalArgumentException(String.format("Command name '%s' may only use ASCII letters, digits and '_'", name));
+        }
+        _Entries.put(name, new Entry(name, handler));
+        _EntrySnapshot = Map.copyOf(_Entries);
+        _Matcher = new Matcher(new ArrayList<String>(_Entries.keySet()));
+    }
+
+    public Entry GetEntry(String name) { return _EntrySnapshot.get(name); }
+
+    public synchronized List<String> GetNames() { return new ArrayList<String>(_Entries.keySet()); }
+
+    /*
+    The registered commands in the description, in the order they appear
+     */
+    public List<SchedulingCommand> Parse(String description)
+    {
+        if (description == null || description.isEmpty())
+            return Collections.emptyList();
+        return _Matcher.Parse(description);
+    }
+
+    private static boolean IsNameChar(char c)
+    {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+    }
+
+    /*
+    Aho-Corasick automaton over the command names, flattened into a table of transitions.
+    Characters that appear in no name share one column, so the table stays small.
+     */
+    private static class Matcher {
+        private final String[] _Names;
+        private final int[] _Columns = new int[128];
+        private final int _Width;
+        private final int[] _Next;
+        // Index of the longest name ending at each state, or -1
+        private final int[] _Output;
+
+        Matcher(List<String> names)
+        {
+            _Names = names.toArray(new String[0]);
+
+            int width = 1;
+            for (var name : _Names) {
+                for (int i = 0; i < name.length(); i++) {
+                    var c = name.charAt(i);
+                    if (_Columns[c] == 0)
+                        _Columns[c] = width++;
+                }
+            }
+            _Width = width;
+
+            // Build the trie
+            var next = new ArrayList<int[]>();
+            var output = new ArrayList<Integer>();
+            next.add(new int[width]);
+            output.add(-1);
+            for (int n = 0; n < _Names.length; n++) {
+                int state = 0;
+                for (int i = 0; i < _Names[n].length(); i++) {
+                    int column = _Columns[_Names[n].charAt(i)];
+                    if (next.get(state)[column] == 0) {
+                        next.get(state)[column] = next.size();
+                        next.add(new int[width]);
+                        output.add(-1);
+                    }
+                    state = next.get(state)[column];
+                }
+                output.set(state, n);
+            }
+
+            // Fill in the failure transitions breadth first, so the automaton never has to backtrack
+            var fail = new int[next.size()];
+            var queue = new ArrayDeque<Integer>();
+            for (int column = 0; column < width; column++) {
+                int child = next.get(0)[column];
+                if (child != 0)
+                    queue.add(child);
+            }
+            while (!queue.isEmpty()) {
+                int state = queue.poll();
+                if (output.get(state) < 0)
+                    output.set(state, output.get(fail[state]));
+                for (int column = 0; column < width; column++) {
+                    int child = next.get(state)[column];
+                    if (child != 0) {
+                        fail[child] = next.get(fail[state])[column];
+                        queue.add(child);
+                    } else {
+                        next.get(state)[column] = next.get(fail[state])[column];
+                    }
+                }
+            }
+
+            _Next = new int[next.size() * width];
+            _Output = new int[next.size()];
+            for (int state = 0; state < next.size(); state++) {
+                System.arraycopy(next.get(state), 0, _Next, state * width, width);
+                _Output[state] = output.get(state);
+            }
+        }
+
+        List<SchedulingCommand> Parse(String description)
+        {
+            List<SchedulingCommand> commands = null;
+            int state = 0;
+            int length = description.length();
+            for (int i = 0; i < length; i++) {
+                var c = description.charAt(i);
+                state = _Next[state * _Width + (c < 128 ? _Columns[c] : 0)];
+                int match = _Output[state];
+                if (match < 0)
+                    continue;
+
+                // A name with more name characters before or after it is part of a longer word, not this command.
+                // Any shorter name ending here starts inside this one, so it is part of the same word.
+                var name = _Names[match];
+                int end = i + 1;
+                int start = end - name.length();
+                if ((start > 0 && IsNameChar(description.charAt(start - 1))) || (end < length && IsNameChar(description.charAt(end))))
+                    continue;
+
+                List<String> arguments = null;
+                if (end < length && description.charAt(end) == '(') {
+                    int close = description.indexOf(')', end + 1);
+                    if (close > 0) {
+                        arguments = new ArrayList<String>();
+                        for (var argument : description.substring(end + 1, close).split(",")) {
+                            if (!argument.isBlank())
+                                arguments.add(argument.trim());
+                        }
+                        i = close;
+                    }
+                }
+                if (commands == null)
+                    commands = new ArrayList<SchedulingCommand>(2);
+                commands.add(new SchedulingCommand(name, arguments, start));
+                state = 0;
+            }
+            return commands != null ? commands : Collections.emptyList();
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package com.marksware.simplescheduler.presentation;
+
+import com.google.api.client.util.Data;
+import com.google.api.client.util.DateTime;
+import com.google.api.services.calendar.model.Events;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.marksware.simplescheduler.models.SimpleEvent;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+One page of an events.list response, already converted to SimpleEvents
+ */
+public class EventPage {
+
+    private final List<SimpleEvent> _Items;
+    public List<SimpleEvent> GetItems() { return _Items; }
+
+    private final String _NextPageToken;
+    public String GetNextPageToken() { return _NextPageToken; }
+
+    private final String _NextSyncToken;
+    public String GetNextSyncToken() { return _NextSyncToken; }
+
+    public EventPage(List<SimpleEvent> items, String nextPageToken, String nextSyncToken)
+    {
+        _Items = items;
+        _NextPageToken = nextPageToken;
+        _NextSyncToken = nextSyncToken;
+    }
+
+    public static EventPage FromEvents(String calendarID, Events events)
+    {
+        var items = new ArrayList<SimpleEvent>();
+        if (events.getItems() != null) {
+            for (var e : events.getItems()) {
+                items.add(new SimpleEvent(calendarID, e));
+            }
+        }
+        return new EventPage(items, events.getNextPageToken(), events.getNextSyncToken());
+    }
+
+    /*
+    Read the response JSON straight into SimpleEvents, reading the same fields as SimpleEvent(String, Event) and
+    skipping the rest, so no Event, EventDateTime or map of unknown keys is built along the way.
+     */
+    public static EventPage Read(String calendarID, JsonReader reader) throws IOException
+    {
+        var items = new ArrayList<SimpleEvent>();
+        String nextPageToken = null;
+        String nextSyncToken = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            var name = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                continue;
+            }
+            switch (name) {
+                case "nextPageToken": nextPageToken = reader.nextString(); break;
+                case "nextSyncToken": nextSyncToken = reader.nextString(); break;
+                case "items":
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        items.add(ReadEvent(calendarID, reader));
+                    }
+                    reader.endArray();
+                    break;
+                default: reader.skipValue(); break;
+            }
+        }
+        reader.endObject();
+        return new EventPage(items, nextPageToken, nextSyncToken);
+    }
+
+    private static SimpleEvent ReadEvent(String calendarID, JsonReader reader) throws IOException
+    {
+        var simple = new SimpleEvent();
+        simple.SetCalendarID(calendarID);
+        simple.SetSummary(null);
+        simple.SetLocation(null);
+        simple.SetDescription(null);
+        simple.SetStartDateTime((DateTime) null);
+        simple.SetEndDateTime((DateTime) null);
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            var name = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                continue;
+            }
+            switch (name) {
+                case "id": simple.SetID(reader.nextString()); break;
+                case "status": simple.SetStatus(reader.nextString()); break;
+                case "summary": simple.SetSummary(reader.nextString()); break;
+                case "location": simple.SetLocation(reader.nextString()); break;
+                case "description": simple.SetDescription(reader.nextString()); break;
+                case "start":
+                    var start = ReadDateTime(reader);
+                    simple.SetStartDateTime(start._DateTime);
+                    simple.SetTimeZone(start._TimeZone);
+                    break;
+                case "end": simple.SetEndDateTime(ReadDateTime(reader)._DateTime); break;
+                case "extendedProperties": ReadSharedProperties(reader, simple); break;
+                case "recurrence":
+                    var lines = new ArrayList<String>();
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        lines.add(reader.nextString());
+                    }
+                    reader.endArray();
+                    simple.SetRecurrence(lines);
+                    break;
+                case "recurringEventId": simple.SetRecurringEventID(reader.nextString()); break;
+                case "originalStartTime":
+                    var original = ReadDateTime(reader)._DateTime;
+                    simple.SetOriginalStartMillis(original != null ? original.getValue() : SimpleEvent.NO_TIME);
+                    break;
+                default: reader.skipValue(); break;
+            }
+        }
+        reader.endObject();
+        return simple;
+    }
+
+    private static class DateTimeField {
+        DateTime _DateTime;
+        String _TimeZone;
+    }
+
+    // {"dateTime": "...", "timeZone": "..."} or {"date": "..."} for an all-day event; dateTime wins if both are there, as it does for EventDateTime
+    private static DateTimeField ReadDateTime(JsonReader reader) throws IOException
+    {
+        var field = new DateTimeField();
+        String date = null;
+        String dateTime = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            var name = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+            } else if (name.equals("dateTime")) {
+                dateTime = reader.nextString();
+            } else if (name.equals("date")) {
+                date = reader.nextString();
+            } else if (name.equals("timeZone")) {
+                field._TimeZone = reader.nextString();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        if (dateTime != null)
+            field._DateTime = DateTime.parseRfc3339(dateTime);
+        else if (date != null)
+            field._DateTime = DateTime.parseRfc3339(date);
+        return field;
+    }
+
+    private static void ReadSharedProperties(JsonReader reader, SimpleEvent simple) throws IOException
+    {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            var name = reader.nextName();
+            if (!name.equals("shared") || reader.peek() == JsonToken.NULL) {
+                reader.skipValue();
+                continue;
+            }
+            var props = simple.GetExtendedProperties();
+            reader.beginObject();
+            while (reader.hasNext()) {
+                var key = reader.nextName().intern();
+                if (reader.peek() == JsonToken.NULL) {
+                    // The same null marker the Event model parses to, so an update still sends the key as null
+                    reader.nextNull();
+                    props.put(key, Data.nullOf(String.class));
+                } else {
+                    props.put(key, reader.nextString());
+                }
+            }
+            reader.endObject();
+        }
+        reader.endObject();
+    }
+}
@@ -0,0 +1,105 @@
+package com.marksware.simplescheduler.presentation;
+
+import com.marksware.simplescheduler.models.SimpleEvent;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.security.GeneralSecurityException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/*
+Streams the events of a calendar one page at a time, following nextPageToken.
+The next page is requested as soon as the current one arrives, so at most two pages are held in memory.
+Pages are converted to SimpleEvents by the fetcher, on the prefetch thread.
+ */
+public class EventPageIterator implements SyncIterator {
+
+    public interface PageFetcher {
+        EventPage Fetch(String pageToken) throws IOException, GeneralSecurityException;
+    }
+
+    private final PageFetcher _Fetcher;
+    private final Executor _Executor;
+
+    private Iterator<SimpleEvent> _Page = Collections.emptyIterator();
+    private CompletableFuture<EventPage> _NextPage;
+
+    private String _NextSyncToken = null;
+    @Override
+    public String GetNextSyncToken() { return _NextSyncToken; }
+
+    private static final Metrics.Counter PAGES = Metrics.GetCounter("pages");
+    private static final Metrics.Counter EVENTS = Metrics.GetCounter("events:fetched");
+
+    private int _PageCount = 0;
+    public int GetPageCount() { return _PageCount; }
+
+    public EventPageIterator(PageFetcher fetcher, Executor executor)
+    {
+        _Fetcher = fetcher;
+        _Executor = executor;
+        _NextPage = Prefetch(null);
+    }
+
+    private CompletableFuture<EventPage> Prefetch(String pageToken)
+    {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return _Fetcher.Fetch(pageToken);
+            } catch (IOException ex) {
+                throw new CompletionException(ex);
+            } catch (GeneralSecurityException ex) {
+                throw new CompletionException(new IOException(ex));
+            }
+        }, _Executor);
+    }
+
+    private static EventPage Await(CompletableFuture<EventPage> page)
+    {
+        try {
+            return page.join();
+        } catch (CompletionException ex) {
+            var cause = ex.getCause();
+            if (cause instanceof IOException)
+                throw new UncheckedIOException((IOException) cause);
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            throw ex;
+        }
+    }
+
+    @Override
+    public boolean hasNext()
+    {
+        while (!_Page.hasNext()) {
+            if (_NextPage == null)
+                return false;
+
+            var page = Await(_NextPage);
+            _PageCount++;
+
+            var pageToken = page.GetNextPageToken();
+            _NextPage = pageToken != null ? Prefetch(pageToken) : null;
+            if (pageToken == null)
+                _NextSyncToken = page.GetNextSyncToken();
+
+            _Page = page.GetItems().iterator();
+            PAGES.Increment();
+            EVENTS.Add(page.GetItems().size());
+        }
+        return true;
+    }
+
+    @Override
+    public SimpleEvent next()
+    {
+        if (!hasNext())
+            throw new NoSuchElementException();
+        return _Page.next();
+    }
+}
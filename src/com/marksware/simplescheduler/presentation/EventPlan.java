@@ -0,0 +1,76 @@
+package com.marksware.simplescheduler.presentation;
+
+import com.marksware.simplescheduler.models.SimpleEvent;
+
+import java.util.*;
+
+/*
+The events that expanding a calendar wants added, deleted and updated,
+along with the fetched state of every event it wants to update
+ */
+public class EventPlan {
+
+    private final String _CalendarID;
+    public String GetCalendarID() { return _CalendarID; }
+
+    private final List<SimpleEvent> _AddEvents;
+    public List<SimpleEvent> GetAddEvents() { return _AddEvents; }
+
+    private final List<SimpleEvent> _DeleteEvents;
+    public List<SimpleEvent> GetDeleteEvents() { return _DeleteEvents; }
+
+    private final List<SimpleEvent> _UpdateEvents;
+    public List<SimpleEvent> GetUpdateEvents() { return _UpdateEvents; }
+
+    private final HashMap<String, SimpleEvent> _FetchedEvents = new HashMap<String, SimpleEvent>();
+    public SimpleEvent GetFetchedEvent(String id) { return _FetchedEvents.get(id); }
+    public void PutFetchedEvent(SimpleEvent value) { _FetchedEvents.put(value.GetID(), value); }
+
+    // Added events that should move to the earliest free slot at or after their start before they are written
+    private final List<SimpleEvent> _FloatingEvents = new ArrayList<SimpleEvent>();
+    public List<SimpleEvent> GetFloatingEvents() { return _FloatingEvents; }
+
+    // Time taken by the events we did not generate, which floating events must not overlap
+    private final BusyTimes _BusyTimes = new BusyTimes();
+    public BusyTimes GetBusyTimes() { return _BusyTimes; }
+
+    // Recurring events without commands, whose instances are only worked out where placement looks for a free slot
+    private final List<SimpleEvent> _RecurringEvents = new ArrayList<SimpleEvent>();
+    public List<SimpleEvent> GetRecurringEvents() { return _RecurringEvents; }
+
+    // Original starts of instances changed or cancelled on their own, by recurring event ID, to leave out when expanding
+    private final HashMap<String, HashSet<Long>> _Exceptions = new HashMap<String, HashSet<Long>>();
+    public Set<Long> GetExceptions(String recurringEventID) { return _Exceptions.getOrDefault(recurringEventID, new HashSet<Long>()); }
+    public void AddException(SimpleEvent instance) { AddException(instance.GetRecurringEventID(), instance.GetOriginalStartMillis()); }
+    public void AddException(String recurringEventID, long originalStartMillis) { _Exceptions.computeIfAbsent(recurringEventID, k -> new HashSet<Long>()).add(originalStartMillis); }
+
+    /*
+    Append everything in another plan to this one, keeping its order
+     */
+    public void AddAll(EventPlan other)
+    {
+        _AddEvents.addAll(other._AddEvents);
+        _DeleteEvents.addAll(other._DeleteEvents);
+        _UpdateEvents.addAll(other._UpdateEvents);
+        _FloatingEvents.addAll(other._FloatingEvents);
+        _FetchedEvents.putAll(other._FetchedEvents);
+        _BusyTimes.AddAll(other._BusyTimes);
+        _RecurringEvents.addAll(other._RecurringEvents);
+        for (var e : other._Exceptions.entrySet()) {
+            _Exceptions.computeIfAbsent(e.getKey(), k -> new HashSet<Long>()).addAll(e.getValue());
+        }
+    }
+
+    public EventPlan(String calendarID)
+    {
+        this(calendarID, new ArrayList<SimpleEvent>(), new ArrayList<SimpleEvent>(), new ArrayList<SimpleEvent>());
+    }
+
+    public EventPlan(String calendarID, List<SimpleEvent> addEvents, List<SimpleEvent> deleteEvents, List<SimpleEvent> updateEvents)
+    {
+        _CalendarID = calendarID;
+        _AddEvents = addEvents;
+        _DeleteEvents = deleteEvents;
+        _UpdateEvents = updateEvents;
+    }
+}
@@ -0,0 +1,431 @@
+package com.marksware.simplescheduler.presentation;
+
+import com.marksware.simplescheduler.models.SimpleEvent;
+import com.marksware.simplescheduler.presentation.SchedulingUtil.ScheduledIdentifiers;
+
+import java.util.*;
+
+/*
+Events held column by column in primitive arrays, for keeping large, multi-calendar working sets in memory.
+Calendar IDs, statuses, time zones and property keys are interned, and the _SimpleSchedule_ markers are stored as flags
+and millis instead of strings. Events are read through a View, a flyweight that points at one row at a time,
+and only turned back into SimpleEvents when one is needed.
+Rows are indexed by ID and generated events by source, and whether a row is generated or carries a command is worked out
+once when it is put, so restoring and applying commands only turn the rows that need it into SimpleEvents.
+ */
+public class EventStore implements Iterable<SimpleEvent> {
+
+    private static final byte GENERATED = 1;
+    private static final byte WITH_COMMAND = 2;
+
+    // Restore markers, stored as millis whenever their text is exactly what SimpleEvent.FormatRfc3339 gives back
+    private static final String[] MARKER_KEYS = {
+            ScheduledIdentifiers._SimpleSchedule_OriginalStartDateTime.toString(),
+            ScheduledIdentifiers._SimpleSchedule_OriginalEndDateTime.toString(),
+            ScheduledIdentifiers._SimpleSchedule_UpdatedStartDateTime.toString(),
+            ScheduledIdentifiers._SimpleSchedule_UpdatedEndDateTime.toString()
+    };
+    private static final String GENERATED_KEY = ScheduledIdentifiers._SimpleSchedule_Generated.toString();
+    private static final String SOURCEID_KEY = ScheduledIdentifiers._SimpleSchedule_SourceID.toString();
+    private static final String[] NO_PROPERTIES = new String[0];
+    private static final String[] NO_RECURRENCE = new String[0];
+
+    private final HashMap<String, String> _Interned = new HashMap<String, String>();
+    private final ArrayList<String> _CalendarIDs = new ArrayList<String>();
+    private final HashMap<String, Integer> _CalendarIndexes = new HashMap<String, Integer>();
+    private final HashMap<String, Integer> _IndexByID = new HashMap<String, Integer>();
+    private final HashMap<String, ArrayList<String>> _GeneratedBySource = new HashMap<String, ArrayList<String>>();
+
+    private int _Size = 0;
+    private String[] _IDs;
+    private int[] _Calendars;
+    private String[] _Statuses;
+    private String[] _Summaries;
+    private String[] _Locations;
+    private String[] _Descriptions;
+    private long[] _Starts;
+    private long[] _Ends;
+    private short[] _StartShifts;
+    private short[] _EndShifts;
+    private String[] _TimeZones;
+    private String[][] _Recurrences;
+    private String[] _RecurringEventIDs;
+    private long[] _OriginalStarts;
+    private byte[] _Flags;
+    private long[] _Markers;
+    private String[] _SourceIDs;
+    private String[][] _Properties;
+
+    public EventStore()
+    {
+        this(16);
+    }
+
+    public EventStore(int capacity)
+    {
+        Allocate(Math.max(capacity, 1));
+    }
+
+    public EventStore(Iterable<SimpleEvent> events)
+    {
+        this();
+        for (var e : events) {
+            Put(e);
+        }
+    }
+
+    public int Size() { return _Size; }
+
+    public boolean Contains(String id) { return _IndexByID.containsKey(id); }
+
+    public SimpleEvent Get(String id)
+    {
+        var index = _IndexByID.get(id);
+        return index != null ? ToSimpleEvent(index) : null;
+    }
+
+    /*
+    Add an event, replacing any event with the same ID. The event is copied into the columns and not kept.
+     */
+    public void Put(SimpleEvent e)
+    {
+        Integer index = e.GetID() != null ? _IndexByID.get(e.GetID()) : null;
+        if (index != null) {
+            Unindex(index);
+        } else {
+            if (_Size == _IDs.length)
+                Allocate(_Size * 2);
+            index = _Size++;
+            if (e.GetID() != null)
+                _IndexByID.put(e.GetID(), index);
+        }
+        Write(index, e);
+    }
+
+    public SimpleEvent Remove(String id)
+    {
+        var index = _IndexByID.remove(id);
+        if (index == null)
+            return null;
+        var old = ToSimpleEvent(index);
+        Unindex(index);
+
+        // Move the last row into the hole so the columns stay dense
+        int last = --_Size;
+        if (index != last) {
+            Move(last, index);
+            if (_IDs[index] != null)
+                _IndexByID.put(_IDs[index], index);
+        }
+        Clear(last);
+        return old;
+    }
+
+    public void Clear()
+    {
+        for (int i = 0; i < _Size; i++) {
+            Clear(i);
+        }
+        _IndexByID.clear();
+        _GeneratedBySource.clear();
+        _Size = 0;
+    }
+
+    // Events we generated from the given source event
+    public List<SimpleEvent> GetGenerated(String sourceID)
+    {
+        var generated = new ArrayList<SimpleEvent>();
+        var ids = _GeneratedBySource.get(sourceID);
+        if (ids != null) {
+            for (var id : ids) {
+                generated.add(Get(id));
+            }
+        }
+        return generated;
+    }
+
+    // Busy time of every event we did not generate
+    public void AddBusyTimes(BusyTimes outBusy)
+    {
+        for (int i = 0; i < _Size; i++) {
+            if ((_Flags[i] & GENERATED) == 0 && !SimpleEvent.STATUS_CANCELLED.equals(_Statuses[i]))
+                outBusy.Add(_Starts[i], _Ends[i]);
+        }
+    }
+
+    private String Intern(String value)
+    {
+        if (value == null)
+            return null;
+        var interned = _Interned.putIfAbsent(value, value);
+        return interned != null ? interned : value;
+    }
+
+    private int CalendarIndex(String calendarID)
+    {
+        var index = _CalendarIndexes.get(calendarID);
+        if (index == null) {
+            index = _CalendarIDs.size();
+            _CalendarIDs.add(calendarID);
+            _CalendarIndexes.put(calendarID, index);
+        }
+        return index;
+    }
+
+    private void Allocate(int capacity)
+    {
+        _IDs = _IDs == null ? new String[capacity] : Arrays.copyOf(_IDs, capacity);
+        _Calendars = _Calendars == null ? new int[capacity] : Arrays.copyOf(_Calendars, capacity);
+        _Statuses = _Statuses == null ? new String[capacity] : Arrays.copyOf(_Statuses, capacity);
+        _Summaries = _Summaries == null ? new String[capacity] : Arrays.copyOf(_Summaries, capacity);
+        _Locations = _Locations == null ? new String[capacity] : Arrays.copyOf(_Locations, capacity);
+        _Descriptions = _Descriptions == null ? new String[capacity] : Arrays.copyOf(_Descriptions, capacity);
+        _Starts = _Starts == null ? new long[capacity] : Arrays.copyOf(_Starts, capacity);
+        _Ends = _Ends == null ? new long[capacity] : Arrays.copyOf(_Ends, capacity);
+        _StartShifts = _StartShifts == null ? new short[capacity] : Arrays.copyOf(_StartShifts, capacity);
+        _EndShifts = _EndShifts == null ? new short[capacity] : Arrays.copyOf(_EndShifts, capacity);
+        _TimeZones = _TimeZones == null ? new String[capacity] : Arrays.copyOf(_TimeZones, capacity);
+        _Recurrences = _Recurrences == null ? new String[capacity][] : Arrays.copyOf(_Recurrences, capacity);
+        _RecurringEventIDs = _RecurringEventIDs == null ? new String[capacity] : Arrays.copyOf(_RecurringEventIDs, capacity);
+        _OriginalStarts = _OriginalStarts == null ? new long[capacity] : Arrays.copyOf(_OriginalStarts, capacity);
+        _Flags = _Flags == null ? new byte[capacity] : Arrays.copyOf(_Flags, capacity);
+        _Markers = _Markers == null ? new long[capacity * MARKER_KEYS.length] : Arrays.copyOf(_Markers, capacity * MARKER_KEYS.length);
+        _SourceIDs = _SourceIDs == null ? new String[capacity] : Arrays.copyOf(_SourceIDs, capacity);
+        _Properties = _Properties == null ? new String[capacity][] : Arrays.copyOf(_Properties, capacity);
+    }
+
+    private void Write(int index, SimpleEvent e)
+    {
+        _IDs[index] = e.GetID();
+        _Calendars[index] = CalendarIndex(e.GetCalendarID());
+        _Statuses[index] = Intern(e.GetStatus());
+        _Summaries[index] = e.GetSummary();
+        _Locations[index] = e.GetLocation();
+        _Descriptions[index] = e.GetDescription();
+        _Starts[index] = e.GetStartMillis();
+        _Ends[index] = e.GetEndMillis();
+        _StartShifts[index] = (short) e.GetStartTimeZoneShift();
+        _EndShifts[index] = (short) e.GetEndTimeZoneShift();
+        _TimeZones[index] = Intern(e.GetTimeZone());
+        var recurrence = e.GetRecurrence();
+        _Recurrences[index] = recurrence == null ? null : recurrence.isEmpty() ? NO_RECURRENCE : recurrence.toArray(NO_RECURRENCE);
+        _RecurringEventIDs[index] = e.GetRecurringEventID();
+        _OriginalStarts[index] = e.GetOriginalStartMillis();
+
+        byte flags = 0;
+        if (SchedulingUtil.IsGenerated(e))
+            flags |= GENERATED;
+        else if (SchedulingUtil.HasCommand(e))
+            flags |= WITH_COMMAND;
+        _Flags[index] = flags;
+
+        // Split the properties into markers we can encode and everything else
+        var props = e.GetExtendedProperties();
+        int remaining = props.size();
+        for (int m = 0; m < MARKER_KEYS.length; m++) {
+            var value = props.get(MARKER_KEYS[m]);
+            var millis = EncodeMarker(value);
+            _Markers[index * MARKER_KEYS.length + m] = millis;
+            if (value != null && millis != SimpleEvent.NO_TIME)
+                remaining--;
+        }
+        if ("".equals(props.get(GENERATED_KEY)))
+            remaining--;
+        var sourceID = props.get(SOURCEID_KEY);
+        _SourceIDs[index] = sourceID;
+        if (sourceID != null)
+            remaining--;
+
+        var others = remaining > 0 ? new String[remaining * 2] : NO_PROPERTIES;
+        int next = 0;
+        for (var p : props.entrySet()) {
+            if (!IsEncoded(p.getKey(), p.getValue(), index)) {
+                others[next++] = Intern(p.getKey());
+                others[next++] = p.getValue();
+            }
+        }
+        _Properties[index] = others;
+
+        if ((flags & GENERATED) != 0 && sourceID != null && e.GetID() != null)
+            _GeneratedBySource.computeIfAbsent(sourceID, k -> new ArrayList<String>(1)).add(e.GetID());
+    }
+
+    private static long EncodeMarker(String value)
+    {
+        if (value == null)
+            return SimpleEvent.NO_TIME;
+        try {
+            var millis = SimpleEvent.StringToMillis(value);
+            return SimpleEvent.FormatRfc3339(millis).equals(value) ? millis : SimpleEvent.NO_TIME;
+        } catch (RuntimeException ex) {
+            return SimpleEvent.NO_TIME;
+        }
+    }
+
+    private boolean IsEncoded(String key, String value, int index)
+    {
+        if (key.equals(SOURCEID_KEY))
+            return value != null;
+        if (key.equals(GENERATED_KEY))
+            return "".equals(value);
+        for (int m = 0; m < MARKER_KEYS.length; m++) {
+            if (key.equals(MARKER_KEYS[m]))
+                return _Markers[index * MARKER_KEYS.length + m] != SimpleEvent.NO_TIME;
+        }
+        return false;
+    }
+
+    private void Unindex(int index)
+    {
+        var sourceID = _SourceIDs[index];
+        var generated = sourceID != null ? _GeneratedBySource.get(sourceID) : null;
+        if (generated != null) {
+            generated.remove(_IDs[index]);
+            if (generated.isEmpty())
+                _GeneratedBySource.remove(sourceID);
+        }
+    }
+
+    private void Move(int from, int to)
+    {
+        _IDs[to] = _IDs[from];
+        _Calendars[to] = _Calendars[from];
+        _Statuses[to] = _Statuses[from];
+        _Summaries[to] = _Summaries[from];
+        _Locations[to] = _Locations[from];
+        _Descriptions[to] = _Descriptions[from];
+        _Starts[to] = _Starts[from];
+        _Ends[to] = _Ends[from];
+        _StartShifts[to] = _StartShifts[from];
+        _EndShifts[to] = _EndShifts[from];
+        _TimeZones[to] = _TimeZones[from];
+        _Recurrences[to] = _Recurrences[from];
+        _RecurringEventIDs[to] = _RecurringEventIDs[from];
+        _OriginalStarts[to] = _OriginalStarts[from];
+        _Flags[to] = _Flags[from];
+        System.arraycopy(_Markers, from * MARKER_KEYS.length, _Markers, to * MARKER_KEYS.length, MARKER_KEYS.length);
+        _SourceIDs[to] = _SourceIDs[from];
+        _Properties[to] = _Properties[from];
+    }
+
+    // Drop references held by an unused row
+    private void Clear(int index)
+    {
+        _IDs[index] = null;
+        _Statuses[index] = null;
+        _Summaries[index] = null;
+        _Locations[index] = null;
+        _Descriptions[index] = null;
+        _TimeZones[index] = null;
+        _Recurrences[index] = null;
+        _RecurringEventIDs[index] = null;
+        _SourceIDs[index] = null;
+        _Properties[index] = null;
+    }
+
+    private SimpleEvent ToSimpleEvent(int index)
+    {
+        var e = new SimpleEvent();
+        e.SetCalendarID(_CalendarIDs.get(_Calendars[index]));
+        e.SetID(_IDs[index]);
+        e.SetStatus(_Statuses[index]);
+        e.SetSummary(_Summaries[index]);
+        e.SetLocation(_Locations[index]);
+        e.SetDescription(_Descriptions[index]);
+        e.SetStartMillis(_Starts[index], _StartShifts[index]);
+        e.SetEndMillis(_Ends[index], _EndShifts[index]);
+        e.SetTimeZone(_TimeZones[index]);
+        if (_Recurrences[index] != null)
+            e.SetRecurrence(new ArrayList<String>(Arrays.asList(_Recurrences[index])));
+        e.SetRecurringEventID(_RecurringEventIDs[index]);
+        e.SetOriginalStartMillis(_OriginalStarts[index]);
+
+        var props = e.GetExtendedProperties();
+        for (int m = 0; m < MARKER_KEYS.length; m++) {
+            var millis = _Markers[index * MARKER_KEYS.length + m];
+            if (millis != SimpleEvent.NO_TIME)
+                props.put(MARKER_KEYS[m], SimpleEvent.FormatRfc3339(millis));
+        }
+        if ((_Flags[index] & GENERATED) != 0 && !props.containsKey(GENERATED_KEY))
+            props.put(GENERATED_KEY, "");
+        if (_SourceIDs[index] != null)
+            props.put(SOURCEID_KEY, _SourceIDs[index]);
+        var others = _Properties[index];
+        for (int i = 0; i < others.length; i += 2) {
+            props.put(others[i], others[i + 1]);
+        }
+        return e;
+    }
+
+    /*
+    A flyweight over one row of the store. Moving it to another row allocates nothing.
+     */
+    public class View {
+        private int _Index = -1;
+
+        public int GetIndex() { return _Index; }
+        public View At(int index)
+        {
+            Objects.checkIndex(index, _Size);
+            _Index = index;
+            return this;
+        }
+
+        public String GetID() { return _IDs[_Index]; }
+        public String GetCalendarID() { return _CalendarIDs.get(_Calendars[_Index]); }
+        public String GetStatus() { return _Statuses[_Index]; }
+        public boolean IsCancelled() { return SimpleEvent.STATUS_CANCELLED.equals(_Statuses[_Index]); }
+        public String GetSummary() { return _Summaries[_Index]; }
+        public String GetDescription() { return _Descriptions[_Index]; }
+        public long GetStartMillis() { return _Starts[_Index]; }
+        public long GetEndMillis() { return _Ends[_Index]; }
+        public boolean IsGenerated() { return (_Flags[_Index] & GENERATED) != 0; }
+        public boolean HasCommand() { return (_Flags[_Index] & WITH_COMMAND) != 0; }
+        public String GetSourceID() { return _SourceIDs[_Index]; }
+        public boolean IsRecurring() { return _Recurrences[_Index] != null && _Recurrences[_Index].length > 0; }
+        public String GetRecurringEventID() { return _RecurringEventIDs[_Index]; }
+        public long GetOriginalStartMillis() { return _OriginalStarts[_Index]; }
+
+        // A new SimpleEvent with the contents of this row
+        public SimpleEvent ToSimpleEvent() { return EventStore.this.ToSimpleEvent(_Index); }
+    }
+
+    // A View of its own for each thread reading the store
+    public View NewView() { return new View(); }
+
+    /*
+    Iterate over the rows with a single View, which is moved along rather than copied.
+    Don't keep the View past the next call to next().
+     */
+    public Iterable<View> Views()
+    {
+        return () -> new Iterator<View>() {
+            private final View _View = new View();
+            private int _Next = 0;
+
+            @Override
+            public boolean hasNext() { return _Next < _Size; }
+
+            @Override
+            public View next()
+            {
+                if (_Next >= _Size)
+                    throw new NoSuchElementException();
+                return _View.At(_Next++);
+            }
+        };
+    }
+
+    @Override
+    public Iterator<SimpleEvent> iterator()
+    {
+        var views = Views().iterator();
+        return new Iterator<SimpleEvent>() {
+            @Override
+            public boolean hasNext() { return views.hasNext(); }
+
+            @Override
+            public SimpleEvent next() { return views.next().ToSimpleEvent(); }
+        };
+    }
+}
@@ -0,0 +1,109 @@
+package com.marksware.simplescheduler.presentation;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.marksware.simplescheduler.models.EventMutation;
+import com.marksware.simplescheduler.models.MutationResult;
+import com.marksware.simplescheduler.models.SimpleEvent;
+import com.marksware.simplescheduler.models.SimpleEventJson;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+
+/*
+Calendars kept in a local file of SimpleEvents, one JSON object per line.
+The file is read once, and writes stay in memory until Save, which the caller runs once at the end of a run;
+rewriting the whole file after every write would make a run over a large calendar quadratic.
+ */
+public class FileCalendarBackend extends InMemoryCalendarBackend {
+
+    private final File _File;
+    public File GetFile() { return _File; }
+
+    // Set by every write that went through, and cleared once the file has it
+    private boolean _Dirty = false;
+    public synchronized boolean IsDirty() { return _Dirty; }
+
+    public FileCalendarBackend(File file) throws IOException
+    {
+        _File = file;
+        if (file.exists())
+            Load();
+        _Dirty = false;
+    }
+
+    private void Load() throws IOException
+    {
+        try (var reader = new JsonReader(new BufferedReader(new InputStreamReader(new FileInputStream(_File), StandardCharsets.UTF_8)))) {
+            reader.setLenient(true);
+            while (reader.peek() != JsonToken.END_DOCUMENT) {
+                PutEvent(SimpleEventJson.Read(reader));
+            }
+        }
+    }
+
+    /*
+    Rewrite the file with every event, if anything was written since it was loaded or last saved
+     */
+    public synchronized void Save() throws IOException
+    {
+        if (!_Dirty)
+            return;
+        var temp = new File(_File.getPath() + ".tmp");
+        try (var out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8))) {
+            for (var e : GetAllEvents()) {
+                var writer = new JsonWriter(out);
+                SimpleEventJson.Write(writer, e);
+                writer.flush();
+                out.write('\n');
+            }
+        }
+        Files.move(temp.toPath(), _File.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        _Dirty = false;
+    }
+
+    @Override
+    public synchronized SimpleEvent PutEvent(SimpleEvent simple)
+    {
+        _Dirty = true;
+        return super.PutEvent(simple);
+    }
+
+    @Override
+    public synchronized MutationResult AddEvent(SimpleEvent simple)
+    {
+        return Written(super.AddEvent(simple));
+    }
+
+    @Override
+    public synchronized MutationResult UpdateEvent(SimpleEvent simple)
+    {
+        return Written(super.UpdateEvent(simple));
+    }
+
+    @Override
+    public synchronized MutationResult DeleteEvent(SimpleEvent simple)
+    {
+        return Written(super.DeleteEvent(simple));
+    }
+
+    @Override
+    public synchronized List<MutationResult> ExecuteBatch(List<EventMutation> mutations)
+    {
+        var results = super.ExecuteBatch(mutations);
+        for (var r : results) {
+            Written(r);
+        }
+        return results;
+    }
+
+    private MutationResult Written(MutationResult result)
+    {
+        _Dirty |= result.IsSuccess();
+        return result;
+    }
+}
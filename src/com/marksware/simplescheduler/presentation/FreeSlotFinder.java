@@ -0,0 +1,338 @@
+package com.marksware.simplescheduler.presentation;
+
+import com.marksware.simplescheduler.models.SimpleEvent;
+
+import java.time.*;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/*
+Finds free time between busy ranges.
+The free gaps are kept in a balanced search tree (a treap) ordered by start time, where every node also records the
+longest gap beneath it. "The earliest free slot of at least D after T" follows a single path down the tree,
+and reserving a slot only touches the gaps it overlaps, so placing thousands of events never rescans the calendar.
+Time outside working hours, when given, counts as busy.
+ */
+public class FreeSlotFinder {
+
+    /*
+    Hours in the day that events may be placed in, on Monday to Friday
+     */
+    public static class WorkingHours {
+
+        private final LocalTime _Start;
+        public LocalTime GetStart() { return _Start; }
+
+        private final LocalTime _End;
+        public LocalTime GetEnd() { return _End; }
+
+        private final ZoneId _Zone;
+        public ZoneId GetZone() { return _Zone; }
+
+        public WorkingHours(LocalTime start, LocalTime end, ZoneId zone)
+        {
+            if (!start.isBefore(end))
+                throw new IllegalArgumentException(String.format("Working hours must start before they end: %s-%s", start, end));
+            _Start = start;
+            _End = end;
+            _Zone = zone;
+        }
+
+        // "09:00-17:00", in the local time zone
+        public static WorkingHours Parse(String value)
+        {
+            var parts = value.split("-");
+            if (parts.length != 2)
+                throw new IllegalArgumentException(String.format("Working hours should look like 09:00-17:00, not '%s'", value));
+            try {
+                return new WorkingHours(LocalTime.parse(parts[0].trim()), LocalTime.parse(parts[1].trim()), ZoneId.systemDefault());
+            } catch (DateTimeException ex) {
+                throw new IllegalArgumentException(String.format("Working hours should look like 09:00-17:00, not '%s'", value), ex);
+            }
+        }
+
+        public boolean IsWorkingDay(DayOfWeek day) { return day != DayOfWeek.SATURDAY && day != DayOfWeek.SUNDAY; }
+
+        @Override
+        public String toString() { return _Start + "-" + _End; }
+    }
+
+    private static class Gap {
+        long _Start;
+        long _End;
+        long _MaxLength;
+        int _Priority;
+        Gap _Left;
+        Gap _Right;
+
+        Gap(long start, long end, int priority)
+        {
+            _Start = start;
+            _End = end;
+            _MaxLength = end - start;
+            _Priority = priority;
+        }
+    }
+
+    private final long _From;
+    private final long _To;
+    private final SplittableRandom _Random = new SplittableRandom(17);
+    private Gap _Root;
+    private int _GapCount = 0;
+
+    // Both halves of the last Split
+    private Gap _SplitLeft;
+    private Gap _SplitRight;
+
+    public long GetFrom() { return _From; }
+    public long GetTo() { return _To; }
+    public int GetGapCount() { return _GapCount; }
+
+    /*
+    Free time in [from, to) outside the busy ranges, and inside working hours if they are given
+     */
+    public FreeSlotFinder(BusyTimes busy, long from, long to, WorkingHours hours)
+    {
+        _From = from;
+        _To = to;
+
+        // Busy ranges and the time outside working hours, clipped to [from, to)
+        var offHours = new BusyTimes();
+        if (hours != null)
+            AddOffHours(offHours, from, to, hours);
+        int count = 0;
+        var starts = new long[busy.Size() + offHours.Size()];
+        var ends = new long[starts.length];
+        for (var times : new BusyTimes[] { busy, offHours }) {
+            for (int i = 0; i < times.Size(); i++) {
+                var start = Math.max(times.GetStart(i), from);
+                var end = Math.min(times.GetEnd(i), to);
+                if (start < end) {
+                    starts[count] = start;
+                    ends[count] = end;
+                    count++;
+                }
+            }
+        }
+
+        // The union of the busy ranges only needs the starts and ends in order, not which start goes with which end
+        Arrays.sort(starts, 0, count);
+        Arrays.sort(ends, 0, count);
+        var gaps = new ArrayDeque<Gap>();
+        long free = from;
+        int depth = 0;
+        for (int i = 0, j = 0; j < count; ) {
+            if (i < count && starts[i] <= ends[j]) {
+                if (depth++ == 0 && starts[i] > free)
+                    gaps.add(new Gap(free, starts[i], _Random.nextInt()));
+                i++;
+            } else {
+                if (--depth == 0)
+                    free = ends[j];
+                j++;
+            }
+        }
+        if (free < to)
+            gaps.add(new Gap(free, to, _Random.nextInt()));
+
+        _GapCount = gaps.size();
+        _Root = Build(gaps);
+    }
+
+    private static void AddOffHours(BusyTimes outBusy, long from, long to, WorkingHours hours)
+    {
+        var zone = hours.GetZone();
+        var day = Instant.ofEpochMilli(from).atZone(zone).toLocalDate();
+        var lastDay = Instant.ofEpochMilli(to).atZone(zone).toLocalDate();
+        for (; !day.isAfter(lastDay); day = day.plusDays(1)) {
+            var dayStart = day.atStartOfDay(zone).toInstant().toEpochMilli();
+            var nextDayStart = day.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli();
+            if (!hours.IsWorkingDay(day.getDayOfWeek())) {
+                outBusy.Add(dayStart, nextDayStart);
+            } else {
+                outBusy.Add(dayStart, day.atTime(hours.GetStart()).atZone(zone).toInstant().toEpochMilli());
+                outBusy.Add(day.atTime(hours.GetEnd()).atZone(zone).toInstant().toEpochMilli(), nextDayStart);
+            }
+        }
+    }
+
+    // Gaps arrive in order, so the tree is built in one pass along its right spine
+    private static Gap Build(ArrayDeque<Gap> gaps)
+    {
+        var spine = new ArrayDeque<Gap>();
+        for (var gap : gaps) {
+            Gap last = null;
+            while (!spine.isEmpty() && spine.peek()._Priority < gap._Priority) {
+                last = spine.pop();
+                Update(last);
+            }
+            gap._Left = last;
+            if (!spine.isEmpty())
+                spine.peek()._Right = gap;
+            spine.push(gap);
+        }
+        Gap root = null;
+        while (!spine.isEmpty()) {
+            root = spine.pop();
+            Update(root);
+        }
+        return root;
+    }
+
+    private static void Update(Gap gap)
+    {
+        long max = gap._End - gap._Start;
+        if (gap._Left != null)
+            max = Math.max(max, gap._Left._MaxLength);
+        if (gap._Right != null)
+            max = Math.max(max, gap._Right._MaxLength);
+        gap._MaxLength = max;
+    }
+
+    /*
+    Start of the earliest free slot of the given length that starts at or after the given time,
+    or SimpleEvent.NO_TIME if there is none before the end of the search range
+     */
+    public long FindEarliest(long after, long duration)
+    {
+        var containing = Floor(after);
+        if (containing != null && containing._End - Math.max(after, containing._Start) >= duration)
+            return Math.max(after, containing._Start);
+        var next = FirstFit(_Root, after, duration);
+        return next != null ? next._Start : SimpleEvent.NO_TIME;
+    }
+
+    /*
+    Find the earliest free slot as FindEarliest does, and mark it busy
+     */
+    public long Place(long after, long duration)
+    {
+        var start = FindEarliest(after, duration);
+        if (start != SimpleEvent.NO_TIME)
+            Reserve(start, start + duration);
+        return start;
+    }
+
+    /*
+    Mark a range busy, trimming or splitting the gaps it overlaps
+     */
+    public void Reserve(long start, long end)
+    {
+        if (end <= start)
+            return;
+        var gap = Floor(start);
+        if (gap == null || gap._End <= start)
+            gap = Ceiling(start);
+        while (gap != null && gap._Start < end) {
+            var gapStart = gap._Start;
+            var gapEnd = gap._End;
+            Remove(gapStart);
+            if (gapStart < start)
+                Insert(gapStart, start);
+            if (gapEnd > end)
+                Insert(end, gapEnd);
+            gap = Ceiling(gapEnd);
+        }
+    }
+
+    // The first gap starting after the given time that is long enough, following only subtrees that can hold it
+    private static Gap FirstFit(Gap gap, long after, long duration)
+    {
+        if (gap == null || gap._MaxLength < duration)
+            return null;
+        if (gap._Start > after) {
+            var found = FirstFit(gap._Left, after, duration);
+            if (found != null)
+                return found;
+            if (gap._End - gap._Start >= duration)
+                return gap;
+        }
+        return FirstFit(gap._Right, after, duration);
+    }
+
+    // The last gap starting at or before the given time
+    private Gap Floor(long time)
+    {
+        Gap found = null;
+        for (var gap = _Root; gap != null; ) {
+            if (gap._Start <= time) {
+                found = gap;
+                gap = gap._Right;
+            } else {
+                gap = gap._Left;
+            }
+        }
+        return found;
+    }
+
+    // The first gap starting at or after the given time
+    private Gap Ceiling(long time)
+    {
+        Gap found = null;
+        for (var gap = _Root; gap != null; ) {
+            if (gap._Start >= time) {
+                found = gap;
+                gap = gap._Left;
+            } else {
+                gap = gap._Right;
+            }
+        }
+        return found;
+    }
+
+    private void Insert(long start, long end)
+    {
+        Split(_Root, start);
+        var left = _SplitLeft;
+        var right = _SplitRight;
+        _Root = Merge(Merge(left, new Gap(start, end, _Random.nextInt())), right);
+        _GapCount++;
+    }
+
+    private void Remove(long start)
+    {
+        Split(_Root, start);
+        var left = _SplitLeft;
+        Split(_SplitRight, start + 1);
+        var right = _SplitRight;
+        _Root = Merge(left, right);
+        _GapCount--;
+    }
+
+    // Split into the gaps starting before key and the rest
+    private void Split(Gap gap, long key)
+    {
+        if (gap == null) {
+            _SplitLeft = null;
+            _SplitRight = null;
+        } else if (gap._Start < key) {
+            Split(gap._Right, key);
+            gap._Right = _SplitLeft;
+            Update(gap);
+            _SplitLeft = gap;
+        } else {
+            Split(gap._Left, key);
+            gap._Left = _SplitRight;
+            Update(gap);
+            _SplitRight = gap;
+        }
+    }
+
+    // Join two trees where every gap in the first comes before every gap in the second
+    private static Gap Merge(Gap first, Gap second)
+    {
+        if (first == null)
+            return second;
+        if (second == null)
+            return first;
+        if (first._Priority > second._Priority) {
+            first._Right = Merge(first._Right, second);
+            Update(first);
+            return first;
+        }
+        second._Left = Merge(first, second._Left);
+        Update(second);
+        return second;
+    }
+}
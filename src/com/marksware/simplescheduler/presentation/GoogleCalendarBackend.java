@@ -0,0 +1,88 @@
+package com.marksware.simplescheduler.presentation;
+
+import com.marksware.simplescheduler.models.EventMutation;
+import com.marksware.simplescheduler.models.MutationResult;
+import com.marksware.simplescheduler.models.SimpleEvent;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.util.Iterator;
+import java.util.List;
+
+/*
+The live Google Calendar API through GoogleUtil
+ */
+public class GoogleCalendarBackend implements CalendarBackend {
+
+    @Override
+    public List<String> GetCalendarIDs() throws IOException, GeneralSecurityException
+    {
+        return GoogleUtil.GetCalendarIDs();
+    }
+
+    @Override
+    public Iterator<SimpleEvent> GetEvents(String calendarID, int pageSize) throws IOException, GeneralSecurityException
+    {
+        return GoogleUtil.GetEvents(calendarID, pageSize);
+    }
+
+    @Override
+    public Iterator<SimpleEvent> GetRecurringEvents(String calendarID, int pageSize) throws IOException, GeneralSecurityException
+    {
+        return GoogleUtil.GetRecurringEvents(calendarID, pageSize);
+    }
+
+    @Override
+    public SyncIterator GetEventChanges(String calendarID, String syncToken, int pageSize) throws IOException, GeneralSecurityException
+    {
+        return GoogleUtil.GetEventChanges(calendarID, syncToken, pageSize);
+    }
+
+    @Override
+    public boolean IsSyncTokenExpired(Exception ex)
+    {
+        return GoogleUtil.IsSyncTokenExpired(ex);
+    }
+
+    @Override
+    public BusyTimes GetBusyTimes(List<String> calendarIDs, long from, long to) throws IOException, GeneralSecurityException
+    {
+        return GoogleUtil.GetBusyTimes(calendarIDs, from, to);
+    }
+
+    @Override
+    public WatchChannel Watch(String calendarID, String channelID, String token, String address) throws IOException, GeneralSecurityException
+    {
+        return GoogleUtil.WatchEvents(calendarID, channelID, token, address);
+    }
+
+    @Override
+    public void StopWatch(WatchChannel channel) throws IOException, GeneralSecurityException
+    {
+        GoogleUtil.StopWatch(channel);
+    }
+
+    @Override
+    public MutationResult AddEvent(SimpleEvent simple) throws IOException, GeneralSecurityException
+    {
+        return GoogleUtil.AddEvent(simple);
+    }
+
+    @Override
+    public MutationResult UpdateEvent(SimpleEvent simple) throws IOException, GeneralSecurityException
+    {
+        return GoogleUtil.UpdateEvent(simple);
+    }
+
+    @Override
+    public MutationResult DeleteEvent(SimpleEvent simple) throws IOException, GeneralSecurityException
+    {
+        return GoogleUtil.DeleteEvent(simple);
+    }
+
+    @Override
+    public List<MutationResult> ExecuteBatch(List<EventMutation> mutations) throws IOException, GeneralSecurityException
+    {
+        return GoogleUtil.ExecuteBatch(mutations);
+    }
+}
@@ -5,41 +5,124 @@ import com.google.api.client.extensions.java6.auth.oauth2.AuthorizationCodeInsta
 import com.google.api.client.extensions.jetty.auth.oauth2.LocalServerReceiver;
 import com.google.api.client.googleapis.auth.oauth2.GoogleAuthorizationCodeFlow;
 import com.google.api.client.googleapis.auth.oauth2.GoogleClientSecrets;
+import com.google.api.client.googleapis.batch.BatchRequest;
+import com.google.api.client.googleapis.batch.json.JsonBatchCallback;
 import com.google.api.client.googleapis.javanet.GoogleNetHttpTransport;
-import com.google.api.client.http.javanet.NetHttpTransport;
+import com.google.api.client.googleapis.json.GoogleJsonError;
+import com.google.api.client.googleapis.json.GoogleJsonResponseException;
+import com.google.api.client.http.HttpBackOffIOExceptionHandler;
+import com.google.api.client.http.HttpBackOffUnsuccessfulResponseHandler;
+import com.google.api.client.http.HttpExecuteInterceptor;
+import com.google.api.client.http.HttpHeaders;
+import com.google.api.client.http.HttpRequest;
+import com.google.api.client.http.HttpRequestInitializer;
+import com.google.api.client.http.HttpTransport;
 import com.google.api.client.json.JsonFactory;
 import com.google.api.client.json.gson.GsonFactory;
 import com.google.api.client.util.DateTime;
+import com.google.api.client.util.ExponentialBackOff;
 import com.google.api.client.util.store.FileDataStoreFactory;
 import com.google.api.services.calendar.Calendar;
 import com.google.api.services.calendar.CalendarScopes;
+import com.google.api.services.calendar.model.Channel;
 import com.google.api.services.calendar.model.Event;
 import com.google.api.services.calendar.model.EventDateTime;
-import com.google.api.services.calendar.model.Events;
+import com.google.api.services.calendar.model.FreeBusyRequest;
+import com.google.api.services.calendar.model.FreeBusyRequestItem;
+import com.google.gson.stream.JsonReader;
 
 import java.io.*;
 import java.security.GeneralSecurityException;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPInputStream;
 
 import com.marksware.simplescheduler.models.*;
 
 public class GoogleUtil {
-    private static NetHttpTransport _HTTP_TRANSPORT = null;
-    private static Credential _Credentials = null;
-    private static Calendar _CalendarService = null;
+    // Shared by every calendar processed in parallel, so they are created once under the class lock.
+    // Nothing is built until the first API call, so a run that fails early, or never calls Google, starts quickly.
+    private static volatile HttpTransport _HTTP_TRANSPORT = null;
+    private static volatile Credential _Credentials = null;
+    private static volatile Calendar _CalendarService = null;
+    private static volatile ExecutorService _PrefetchExecutor = null;
 
     private static final String APPLICATION_NAME = "SimpleScheduler";
     private static final JsonFactory JSON_FACTORY = GsonFactory.getDefaultInstance();
     private static final String TOKENS_DIRECTORY_PATH = "tokens";
+    private static final String USER_ID = "user";
     private static final List<String> SCOPES = Collections.singletonList(CalendarScopes.CALENDAR);
     private static final String CREDENTIALS_FILE_PATH = "credentials.json";
+    // Calendar API limit on calls per batch request
+    public static final int MAX_BATCH_SIZE = 50;
+    // Calendar API limits on a freeBusy query
+    private static final int FREEBUSY_MAX_CALENDARS = 50;
+    private static final int FREEBUSY_MAX_DAYS = 60;
+    // How long a read keeps being retried before its error is given up to the caller
+    private static final int READ_RETRY_MILLIS = 60000;
+    // Only what SimpleEvent reads is asked for; Google leaves out everything else, attendees and conference data included
+    private static final String EVENT_FIELDS = "id,status,summary,location,description,start(date,dateTime,timeZone),end(date,dateTime,timeZone),"
+            + "extendedProperties/shared,recurrence,recurringEventId,originalStartTime(date,dateTime)";
+    private static final String LIST_FIELDS = "nextPageToken,nextSyncToken,items(" + EVENT_FIELDS + ")";
+    // Writes only need the ID back
+    private static final String MUTATION_FIELDS = "id";
 
-    private static NetHttpTransport GetTransport() throws IOException, GeneralSecurityException
+    private static final Metrics.Counter BYTES_SENT = Metrics.GetCounter("bytes:sent");
+    private static final Metrics.Counter BYTES_RECEIVED = Metrics.GetCounter("bytes:received");
+    private static final Metrics.Counter READ_RETRIES = Metrics.GetCounter("retries:read");
+
+    // API call behind each kind of write. A write sent in a batch is counted, timed as google:<call> from sending the
+    // batch until its own response has been read, and counted again by outcome as status:<call>:<code>.
+    private static final String[] MUTATION_CALLS = new String[EventMutation.Operation.values().length];
+    private static final Metrics.Counter[] MUTATION_COUNTS = new Metrics.Counter[MUTATION_CALLS.length];
+    private static final Metrics.Timer[] MUTATION_TIMES = new Metrics.Timer[MUTATION_CALLS.length];
+    private static final Metrics.Counter[] MUTATION_SUCCESSES = new Metrics.Counter[MUTATION_CALLS.length];
+    static {
+        MUTATION_CALLS[EventMutation.Operation.Delete.ordinal()] = "events.delete";
+        MUTATION_CALLS[EventMutation.Operation.Update.ordinal()] = "events.update";
+        MUTATION_CALLS[EventMutation.Operation.Add.ordinal()] = "events.insert";
+        for (int i = 0; i < MUTATION_CALLS.length; i++) {
+            MUTATION_COUNTS[i] = Metrics.GetCounter("calls:" + MUTATION_CALLS[i]);
+            MUTATION_TIMES[i] = Metrics.GetTimer("google:" + MUTATION_CALLS[i]);
+            MUTATION_SUCCESSES[i] = Metrics.GetCounter("status:" + MUTATION_CALLS[i] + ":ok");
+        }
+    }
+
+    // Read event pages straight into SimpleEvents rather than through the Event model
+    private static volatile boolean _StreamingParse = true;
+    public static boolean GetStreamingParse() { return _StreamingParse; }
+    public static void SetStreamingParse(boolean value) { _StreamingParse = value; }
+
+    // Another endpoint to call instead of Google, such as a local fake server. No OAuth is done against it.
+    private static volatile String _RootUrl = null;
+    public static String GetRootUrl() { return _RootUrl; }
+
+    /*
+    Call the Calendar API at rootUrl, which ends with a slash, or at Google again when null.
+    Requests still go through the client library, so paging, batching and errors behave as they do against Google.
+     */
+    public static synchronized void SetRootUrl(String value)
+    {
+        _RootUrl = value;
+        _CalendarService = null;
+    }
+
+    /*
+    Send requests through this transport rather than the default trusted NetHttpTransport
+     */
+    public static synchronized void SetTransport(HttpTransport value)
+    {
+        _HTTP_TRANSPORT = value;
+        _CalendarService = null;
+    }
+
+    private static synchronized HttpTransport GetTransport() throws IOException, GeneralSecurityException
     {
         if (_HTTP_TRANSPORT == null) {
             _HTTP_TRANSPORT = GoogleNetHttpTransport.newTrustedTransport();
@@ -47,11 +130,14 @@ public class GoogleUtil {
         return _HTTP_TRANSPORT;
     }
 
-    private static Credential GetCredentials() throws IOException, GeneralSecurityException {
+    /*
+    OAuth credentials for the user. A token stored by an earlier run is used as is, and the access token is refreshed
+    on the first request if it has expired, so only a first run, or one whose refresh token was revoked, asks the user
+    to sign in. Scheduled runs never start the local receiver or load the Jetty classes behind it.
+     */
+    private static synchronized Credential GetCredentials() throws IOException, GeneralSecurityException {
         if (_Credentials == null) {
             var transport = GetTransport();
-            File file = new File(CREDENTIALS_FILE_PATH);
-            //System.out.printf("Full path to credentials is %s\n", file.getAbsolutePath());
 
             InputStream in = GoogleUtil.class.getResourceAsStream(CREDENTIALS_FILE_PATH);
             if (in == null) {
@@ -64,78 +150,445 @@ public class GoogleUtil {
                     .setDataStoreFactory(new FileDataStoreFactory(new java.io.File(TOKENS_DIRECTORY_PATH)))
                     .setAccessType("offline")
                     .build();
-            LocalServerReceiver receiver = new LocalServerReceiver.Builder().setPort(8888).build();
-            _Credentials = new AuthorizationCodeInstalledApp(flow, receiver).authorize("user");
+            // The same test AuthorizationCodeInstalledApp makes before it asks the user
+            var stored = flow.loadCredential(USER_ID);
+            if (stored != null && (stored.getRefreshToken() != null || stored.getExpiresInSeconds() == null || stored.getExpiresInSeconds() > 60))
+                _Credentials = stored;
+            else
+                _Credentials = Authorize(flow);
         }
         return _Credentials;
     }
 
+    // Sign in through the browser, with the redirect caught by a local receiver on port 8888
+    private static Credential Authorize(GoogleAuthorizationCodeFlow flow) throws IOException
+    {
+        Log.Info("No stored credentials in %s, opening the browser to sign in", TOKENS_DIRECTORY_PATH);
+        LocalServerReceiver receiver = new LocalServerReceiver.Builder().setPort(8888).build();
+        return new AuthorizationCodeInstalledApp(flow, receiver).authorize(USER_ID);
+    }
+
     private static Calendar GetCalendar() throws IOException, GeneralSecurityException
     {
-        if (_CalendarService == null) {
-            _CalendarService = new Calendar.Builder(GetTransport(), JSON_FACTORY, GetCredentials())
-                    .setApplicationName(APPLICATION_NAME)
-                    .build();
+        var calendar = _CalendarService;
+        if (calendar == null) {
+            synchronized (GoogleUtil.class) {
+                if (_CalendarService == null) {
+                    var rootUrl = _RootUrl;
+                    HttpRequestInitializer credentials = rootUrl != null ? request -> { } : GetCredentials();
+                    var builder = new Calendar.Builder(GetTransport(), JSON_FACTORY, credentials)
+                            .setHttpRequestInitializer(request -> {
+                                credentials.initialize(request);
+                                CountBytes(request);
+                                RetryReads(request);
+                            })
+                            .setApplicationName(APPLICATION_NAME);
+                    if (rootUrl != null)
+                        builder.setRootUrl(rootUrl);
+                    _CalendarService = builder.build();
+                }
+                calendar = _CalendarService;
+            }
         }
-        return _CalendarService;
+        return calendar;
     }
 
-    public static List<SimpleEvent> GetEvents(String calendarID, int maxEvents) throws IOException, GeneralSecurityException {
+    // Request bodies are only known once the request is sent. Responses without a Content-Length are only counted
+    // when streamed by FetchPage.
+    private static void CountBytes(HttpRequest request)
+    {
+        HttpExecuteInterceptor inner = request.getInterceptor();
+        request.setInterceptor(r -> {
+            if (inner != null)
+                inner.intercept(r);
+            if (r.getContent() != null && r.getContent().getLength() > 0)
+                BYTES_SENT.Add(r.getContent().getLength());
+        });
+        request.setResponseInterceptor(response -> {
+            var length = response.getHeaders().getContentLength();
+            if (length != null)
+                BYTES_RECEIVED.Add(length);
+        });
+    }
+
+    /*
+    Reads can safely be repeated, so the client library retries them on rate limiting, server errors and dropped
+    connections. Writes are left to MutationPipeline, which knows which calls in a batch failed.
+     */
+    private static void RetryReads(HttpRequest request)
+    {
+        var inner = request.getUnsuccessfulResponseHandler();
+        var backOff = new HttpBackOffUnsuccessfulResponseHandler(new ExponentialBackOff.Builder()
+                .setMaxElapsedTimeMillis(READ_RETRY_MILLIS).build())
+                .setBackOffRequired(response -> response.getStatusCode() == 429 || response.getStatusCode() >= 500);
+        request.setUnsuccessfulResponseHandler((r, response, supportsRetry) -> {
+            // The credential refreshes its token on a 401
+            if (inner != null && inner.handleResponse(r, response, supportsRetry))
+                return true;
+            if (!r.getRequestMethod().equals("GET") || !backOff.handleResponse(r, response, supportsRetry))
+                return false;
+            READ_RETRIES.Increment();
+            return true;
+        });
+
+        var ioBackOff = new HttpBackOffIOExceptionHandler(new ExponentialBackOff.Builder()
+                .setMaxElapsedTimeMillis(READ_RETRY_MILLIS).build());
+        request.setIOExceptionHandler((r, supportsRetry) -> {
+            if (!r.getRequestMethod().equals("GET") || !ioBackOff.handleIOException(r, supportsRetry))
+                return false;
+            READ_RETRIES.Increment();
+            return true;
+        });
+    }
 
-        var simples = new ArrayList<SimpleEvent>();
+    private interface ApiCall<T> {
+        T Execute() throws IOException;
+    }
 
+    /*
+    Make one API call, counting it and timing it as google:<operation>
+     */
+    private static <T> T Call(String operation, ApiCall<T> call) throws IOException
+    {
+        Metrics.Count("calls:" + operation);
+        var started = System.nanoTime();
         try {
-            Instant instant = Instant.now();
-            instant = instant.minus(365, ChronoUnit.DAYS);
-            DateTime minTime = SimpleEvent.InstantToGoogleDateTime(instant);
-            var calID = calendarID == null ? SimpleEvent.CALENDARID_PRIMARY : calendarID;
-            Events events = GetCalendar().events().list(calID)
-                    .setMaxResults(maxEvents)
-                    .setTimeMin(minTime)
-                    .setOrderBy("startTime")
-                    .setSingleEvents(true)
-                    .execute();
-            List<Event> items = events.getItems();
-
-            for (var i = items.iterator(); i.hasNext();) {
-                Event item = i.next();
-                simples.add(new SimpleEvent(calID, item));
+            return call.Execute();
+        } catch (GoogleJsonResponseException ex) {
+            Metrics.Count("errors:" + ex.getStatusCode());
+            throw ex;
+        } catch (IOException ex) {
+            Metrics.Count("errors:io");
+            throw ex;
+        } finally {
+            Metrics.Time("google:" + operation, System.nanoTime() - started);
+        }
+    }
+
+    /*
+    IDs of every calendar in the user's calendar list that we are allowed to change
+     */
+    public static List<String> GetCalendarIDs() throws IOException, GeneralSecurityException {
+
+        var ids = new ArrayList<String>();
+        String pageToken = null;
+        do {
+            var request = GetCalendar().calendarList().list()
+                    .setMinAccessRole("writer")
+                    .setPageToken(pageToken);
+            var calendars = Call("calendarList.list", request::execute);
+            for (var entry : calendars.getItems()) {
+                ids.add(entry.getId());
             }
-        } catch (Exception ex) {
-            System.out.printf("Exception: %s", ex.getMessage());
+            pageToken = calendars.getNextPageToken();
+        } while (pageToken != null);
+        return ids;
+    }
+
+    private static synchronized ExecutorService GetPrefetchExecutor()
+    {
+        if (_PrefetchExecutor == null) {
+            _PrefetchExecutor = Executors.newCachedThreadPool(r -> {
+                var thread = new Thread(r, "SimpleScheduler-prefetch");
+                thread.setDaemon(true);
+                return thread;
+            });
         }
-        return simples;
+        return _PrefetchExecutor;
     }
 
-    public static void AddEvent(SimpleEvent simple) throws IOException, GeneralSecurityException {
+    /*
+    Stream all events from a year ago onwards, requesting pageSize events per page.
+    Paging errors surface from the iterator as UncheckedIOException so a partial calendar is never processed.
+     */
+    public static EventPageIterator GetEvents(String calendarID, int pageSize) throws IOException, GeneralSecurityException {
 
-        try {
-            var event = SimpleEvent.NewGoogleEvent(simple);
-            var ev = GetCalendar().events().insert(simple.GetCalendarID(), event);
-            ev.execute();
-        } catch (Exception ex) {
-            System.out.printf("Exception: %s", ex.getMessage());
+        Instant instant = Instant.now();
+        instant = instant.minus(365, ChronoUnit.DAYS);
+        DateTime minTime = SimpleEvent.InstantToGoogleDateTime(instant);
+        var calID = calendarID == null ? SimpleEvent.CALENDARID_PRIMARY : calendarID;
+        var calendar = GetCalendar();
+
+        return new EventPageIterator(pageToken -> FetchPage(calID, calendar.events().list(calID)
+                .setMaxResults(pageSize)
+                .setTimeMin(minTime)
+                .setOrderBy("startTime")
+                .setSingleEvents(true)
+                .setFields(LIST_FIELDS)
+                .setPageToken(pageToken)), GetPrefetchExecutor());
+    }
+
+    /*
+    Stream events from a year ago onwards as they are stored: a recurring event comes once, with its recurrence, and
+    only the instances that were changed or cancelled come on their own; Google includes cancelled instances even
+    without showDeleted, as long as singleEvents is off. It can't order these by start time.
+     */
+    public static EventPageIterator GetRecurringEvents(String calendarID, int pageSize) throws IOException, GeneralSecurityException {
+
+        DateTime minTime = SimpleEvent.InstantToGoogleDateTime(Instant.now().minus(365, ChronoUnit.DAYS));
+        var calID = calendarID == null ? SimpleEvent.CALENDARID_PRIMARY : calendarID;
+        var calendar = GetCalendar();
+
+        return new EventPageIterator(pageToken -> FetchPage(calID, calendar.events().list(calID)
+                .setMaxResults(pageSize)
+                .setTimeMin(minTime)
+                .setSingleEvents(false)
+                .setFields(LIST_FIELDS)
+                .setPageToken(pageToken)), GetPrefetchExecutor());
+    }
+
+    /*
+    Stream the events changed since syncToken was issued, or every event when syncToken is null.
+    Sync tokens cannot be combined with timeMin or orderBy, so a full listing here covers the whole calendar.
+    A token that has expired surfaces as a 410 from the iterator.
+     */
+    public static EventPageIterator GetEventChanges(String calendarID, String syncToken, int pageSize) throws IOException, GeneralSecurityException {
+
+        var calID = calendarID == null ? SimpleEvent.CALENDARID_PRIMARY : calendarID;
+        var calendar = GetCalendar();
+
+        return new EventPageIterator(pageToken -> FetchPage(calID, calendar.events().list(calID)
+                .setMaxResults(pageSize)
+                .setSingleEvents(true)
+                .setSyncToken(syncToken)
+                .setFields(LIST_FIELDS)
+                .setPageToken(pageToken)), GetPrefetchExecutor());
+    }
+
+    /*
+    One page of events. Streamed, the raw response is read with a JsonReader as it arrives; its bytes are counted
+    here when there was no Content-Length for CountBytes to go by, as with chunked gzip responses.
+     */
+    private static EventPage FetchPage(String calendarID, Calendar.Events.List request) throws IOException
+    {
+        if (!_StreamingParse)
+            return EventPage.FromEvents(calendarID, Call("events.list", request::execute));
+
+        return Call("events.list", () -> {
+            var response = request.setReturnRawInputStream(true).executeUnparsed();
+            try {
+                InputStream in = response.getContent();
+                if (response.getHeaders().getContentLength() == null)
+                    in = new CountingInputStream(in, BYTES_RECEIVED);
+                if ("gzip".equalsIgnoreCase(response.getContentEncoding()))
+                    in = new GZIPInputStream(in);
+                try (var reader = new JsonReader(new InputStreamReader(new BufferedInputStream(in), response.getContentCharset()))) {
+                    return EventPage.Read(calendarID, reader);
+                }
+            } finally {
+                response.disconnect();
+            }
+        });
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+        private final Metrics.Counter _Counter;
+
+        CountingInputStream(InputStream in, Metrics.Counter counter)
+        {
+            super(in);
+            _Counter = counter;
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            var b = super.read();
+            if (b >= 0)
+                _Counter.Increment();
+            return b;
         }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException
+        {
+            var count = super.read(buffer, offset, length);
+            if (count > 0)
+                _Counter.Add(count);
+            return count;
+        }
+    }
+
+    public static boolean IsSyncTokenExpired(Exception ex)
+    {
+        var cause = ex instanceof UncheckedIOException ? ex.getCause() : ex;
+        return cause instanceof GoogleJsonResponseException
+                && ((GoogleJsonResponseException) cause).getStatusCode() == 410;
     }
 
-    public static void UpdateEvent(SimpleEvent simple) throws IOException, GeneralSecurityException {
+    /*
+    Busy time on the given calendars from the freeBusy API, without fetching their events.
+    Calendars are queried up to FREEBUSY_MAX_CALENDARS at a time, over windows of FREEBUSY_MAX_DAYS.
+     */
+    public static BusyTimes GetBusyTimes(List<String> calendarIDs, long from, long to) throws IOException, GeneralSecurityException {
+        var busy = new BusyTimes();
+        var calendar = GetCalendar();
+        long window = FREEBUSY_MAX_DAYS * 24 * 60 * 60 * 1000L;
 
-        try {
-            var event = SimpleEvent.NewGoogleEvent(simple);
-            var ev = GetCalendar().events().update(simple.GetCalendarID(), simple.GetID(), event);
-            ev.execute();
-        } catch (Exception ex) {
-            System.out.printf("Exception: %s", ex.getMessage());
+        for (int first = 0; first < calendarIDs.size(); first += FREEBUSY_MAX_CALENDARS) {
+            var items = new ArrayList<FreeBusyRequestItem>();
+            for (var id : calendarIDs.subList(first, Math.min(first + FREEBUSY_MAX_CALENDARS, calendarIDs.size()))) {
+                items.add(new FreeBusyRequestItem().setId(id));
+            }
+            for (long start = from; start < to; start += window) {
+                var request = new FreeBusyRequest()
+                        .setTimeMin(SimpleEvent.MillisToGoogleDateTime(start, 0))
+                        .setTimeMax(SimpleEvent.MillisToGoogleDateTime(Math.min(start + window, to), 0))
+                        .setItems(items);
+                var response = Call("freebusy.query", calendar.freebusy().query(request)::execute);
+                if (response.getCalendars() == null)
+                    continue;
+                for (var c : response.getCalendars().entrySet()) {
+                    if (c.getValue().getErrors() != null && !c.getValue().getErrors().isEmpty()) {
+                        Metrics.Count("errors:" + c.getValue().getErrors().get(0).getReason());
+                        Log.Warn("No busy times for %s: %s", c.getKey(), c.getValue().getErrors().get(0).getReason());
+                    }
+                    if (c.getValue().getBusy() == null)
+                        continue;
+                    for (var period : c.getValue().getBusy()) {
+                        busy.Add(period.getStart().getValue(), period.getEnd().getValue());
+                    }
+                }
+            }
         }
+        return busy;
     }
 
-    public static void DeleteEvent(SimpleEvent simple) throws IOException, GeneralSecurityException {
+    /*
+    Subscribe to changes on the calendar. Google posts a notification to address, which must be HTTPS,
+    whenever an event changes; the notification says only that something changed, not what.
+     */
+    public static WatchChannel WatchEvents(String calendarID, String channelID, String token, String address) throws IOException, GeneralSecurityException {
 
-        try {
-            var ev = GetCalendar().events().delete(simple.GetCalendarID(), simple.GetID());
-            ev.execute();
-        } catch (Exception ex) {
-            System.out.printf("Exception: %s", ex.getMessage());
+        var calID = calendarID == null ? SimpleEvent.CALENDARID_PRIMARY : calendarID;
+        var request = new Channel()
+                .setId(channelID)
+                .setType("web_hook")
+                .setAddress(address)
+                .setToken(token);
+        var channel = Call("events.watch", GetCalendar().events().watch(calID, request)::execute);
+        var expiration = channel.getExpiration();
+        return new WatchChannel(channelID, token, calID, channel.getResourceId(), expiration != null ? expiration : 0);
+    }
+
+    public static void StopWatch(WatchChannel channel) throws IOException, GeneralSecurityException {
+        Call("channels.stop", GetCalendar().channels().stop(new Channel()
+                .setId(channel.GetID())
+                .setResourceId(channel.GetResourceID()))::execute);
+    }
+
+    /*
+    Send the mutations as Google batch requests of up to MAX_BATCH_SIZE calls each.
+    Results are returned in the same order as the mutations, one per mutation.
+     */
+    public static List<MutationResult> ExecuteBatch(List<EventMutation> mutations) throws IOException, GeneralSecurityException {
+
+        var results = new MutationResult[mutations.size()];
+        var calendar = GetCalendar();
+
+        for (int first = 0; first < mutations.size(); first += MAX_BATCH_SIZE) {
+            int last = Math.min(first + MAX_BATCH_SIZE, mutations.size());
+            var batch = calendar.batch();
+            var sent = new BatchClock();
+
+            for (int i = first; i < last; i++) {
+                QueueMutation(calendar, batch, mutations.get(i), results, i, sent);
+            }
+
+            try {
+                Call("batch", () -> {
+                    sent._Nanos = System.nanoTime();
+                    batch.execute();
+                    return null;
+                });
+            } catch (IOException ex) {
+                for (int i = first; i < last; i++) {
+                    if (results[i] == null)
+                        results[i] = MutationResult.Failed(mutations.get(i), 0, null, ex.getMessage());
+                }
+            }
+        }
+
+        for (int i = 0; i < results.length; i++) {
+            if (results[i] == null)
+                results[i] = MutationResult.Failed(mutations.get(i), 0, null, "No response in batch");
+        }
+        return Arrays.asList(results);
+    }
+
+    private static void QueueMutation(Calendar calendar, BatchRequest batch, EventMutation mutation,
+                                      MutationResult[] results, int index, BatchClock sent) throws IOException {
+        var simple = mutation.GetEvent();
+        MUTATION_COUNTS[mutation.GetOperation().ordinal()].Increment();
+        switch (mutation.GetOperation()) {
+            case Delete:
+                calendar.events().delete(simple.GetCalendarID(), simple.GetID())
+                        .queue(batch, new MutationCallback<Void>(mutation, results, index, sent));
+                break;
+            case Update:
+                calendar.events().update(simple.GetCalendarID(), simple.GetID(), SimpleEvent.NewGoogleEvent(simple))
+                        .setFields(MUTATION_FIELDS)
+                        .queue(batch, new MutationCallback<Event>(mutation, results, index, sent));
+                break;
+            case Add:
+                calendar.events().insert(simple.GetCalendarID(), SimpleEvent.NewGoogleEvent(simple).setId(mutation.GetInsertID()))
+                        .setFields(MUTATION_FIELDS)
+                        .queue(batch, new MutationCallback<Event>(mutation, results, index, sent));
+                break;
         }
     }
+
+    // When a batch was sent, set once it is, for timing the calls in it
+    private static class BatchClock {
+        long _Nanos = 0;
+    }
+
+    private static class MutationCallback<T> extends JsonBatchCallback<T> {
+        private final EventMutation _Mutation;
+        private final MutationResult[] _Results;
+        private final int _Index;
+        private final BatchClock _Sent;
+
+        MutationCallback(EventMutation mutation, MutationResult[] results, int index, BatchClock sent)
+        {
+            _Mutation = mutation;
+            _Results = results;
+            _Index = index;
+            _Sent = sent;
+        }
+
+        @Override
+        public void onSuccess(T response, HttpHeaders headers)
+        {
+            var operation = _Mutation.GetOperation().ordinal();
+            MUTATION_TIMES[operation].RecordSince(_Sent._Nanos);
+            MUTATION_SUCCESSES[operation].Increment();
+            var id = response instanceof Event ? ((Event) response).getId() : _Mutation.GetEvent().GetID();
+            _Results[_Index] = MutationResult.Succeeded(_Mutation, id);
+        }
+
+        @Override
+        public void onFailure(GoogleJsonError error, HttpHeaders headers)
+        {
+            var operation = _Mutation.GetOperation().ordinal();
+            MUTATION_TIMES[operation].RecordSince(_Sent._Nanos);
+            Metrics.Count("status:" + MUTATION_CALLS[operation] + ":" + error.getCode());
+            var errors = error.getErrors();
+            var reason = errors != null && !errors.isEmpty() ? errors.get(0).getReason() : null;
+            Metrics.Count("errors:" + error.getCode());
+            _Results[_Index] = MutationResult.Failed(_Mutation, error.getCode(), reason, error.getMessage());
+        }
+    }
+
+    public static MutationResult AddEvent(SimpleEvent simple) throws IOException, GeneralSecurityException {
+        return ExecuteBatch(List.of(new EventMutation(EventMutation.Operation.Add, simple))).get(0);
+    }
+
+    public static MutationResult UpdateEvent(SimpleEvent simple) throws IOException, GeneralSecurityException {
+        return ExecuteBatch(List.of(new EventMutation(EventMutation.Operation.Update, simple))).get(0);
+    }
+
+    public static MutationResult DeleteEvent(SimpleEvent simple) throws IOException, GeneralSecurityException {
+        return ExecuteBatch(List.of(new EventMutation(EventMutation.Operation.Delete, simple))).get(0);
+    }
 }
\ No newline at end of file
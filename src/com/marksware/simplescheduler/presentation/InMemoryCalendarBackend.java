@@ -0,0 +1,336 @@
+package com.marksware.simplescheduler.presentation;
+
+import com.marksware.simplescheduler.models.EventMutation;
+import com.marksware.simplescheduler.models.MutationResult;
+import com.marksware.simplescheduler.models.Recurrence;
+import com.marksware.simplescheduler.models.SimpleEvent;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+
+/*
+Calendars held in memory, for running the scheduler without the network.
+Every change is stamped with a version number, which doubles as the sync token.
+Recurring events are stored whole, as Google stores them, and listed instance by instance unless asked for whole.
+ */
+public class InMemoryCalendarBackend implements CalendarBackend {
+
+    // How far ahead a recurring event without an end is listed instance by instance
+    private static final long INSTANCE_HORIZON_DAYS = 365;
+
+    private static class StoredEvent {
+        final SimpleEvent _Event;
+        final long _Version;
+
+        StoredEvent(SimpleEvent event, long version)
+        {
+            _Event = event;
+            _Version = version;
+        }
+    }
+
+    // Tokens handed out by an earlier instance, such as before a file was reloaded, are treated as expired
+    private final String _Epoch = Long.toString(System.nanoTime(), 36);
+
+    private final LinkedHashMap<String, LinkedHashMap<String, StoredEvent>> _Calendars = new LinkedHashMap<String, LinkedHashMap<String, StoredEvent>>();
+    private long _Version = 0;
+    private long _NextID = 0;
+
+    private LinkedHashMap<String, StoredEvent> GetCalendar(String calendarID)
+    {
+        var calID = calendarID == null ? SimpleEvent.CALENDARID_PRIMARY : calendarID;
+        return _Calendars.computeIfAbsent(calID, k -> new LinkedHashMap<String, StoredEvent>());
+    }
+
+    /*
+    Put an event on its calendar as is, assigning an ID if it has none
+     */
+    public synchronized SimpleEvent PutEvent(SimpleEvent simple)
+    {
+        var stored = new SimpleEvent(simple);
+        if (stored.GetID() == null)
+            stored.SetID(NewID());
+        GetCalendar(stored.GetCalendarID()).put(stored.GetID(), new StoredEvent(stored, ++_Version));
+        return stored;
+    }
+
+    public synchronized int Size(String calendarID)
+    {
+        int count = 0;
+        for (var s : GetCalendar(calendarID).values()) {
+            if (!s._Event.IsCancelled())
+                count++;
+        }
+        return count;
+    }
+
+    private String NewID()
+    {
+        return String.format("%s%06d", _Epoch, ++_NextID);
+    }
+
+    protected synchronized List<SimpleEvent> GetAllEvents()
+    {
+        var events = new ArrayList<SimpleEvent>();
+        for (var calendar : _Calendars.values()) {
+            for (var s : calendar.values()) {
+                if (!s._Event.IsCancelled())
+                    events.add(s._Event);
+            }
+        }
+        return events;
+    }
+
+    @Override
+    public synchronized List<String> GetCalendarIDs()
+    {
+        return new ArrayList<String>(_Calendars.keySet());
+    }
+
+    @Override
+    public synchronized Iterator<SimpleEvent> GetEvents(String calendarID, int pageSize)
+    {
+        var now = Instant.now();
+        var minTime = now.minus(365, ChronoUnit.DAYS).toEpochMilli();
+        var maxTime = now.plus(INSTANCE_HORIZON_DAYS, ChronoUnit.DAYS).toEpochMilli();
+        var calendar = GetCalendar(calendarID);
+        var exceptions = GetExceptions(calendar);
+        var events = new ArrayList<SimpleEvent>();
+        for (var s : calendar.values()) {
+            if (s._Event.IsCancelled())
+                continue;
+            if (s._Event.IsRecurring())
+                Recurrence.Instances(s._Event, minTime, maxTime, exceptions.get(s._Event.GetID())).forEachRemaining(events::add);
+            else if (s._Event.GetEndMillis() >= minTime)
+                events.add(new SimpleEvent(s._Event));
+        }
+        events.sort(Comparator.comparing(SimpleEvent::GetStartDateTime));
+        return events.iterator();
+    }
+
+    @Override
+    public synchronized Iterator<SimpleEvent> GetRecurringEvents(String calendarID, int pageSize)
+    {
+        var minTime = Instant.now().minus(365, ChronoUnit.DAYS).toEpochMilli();
+        var events = new ArrayList<SimpleEvent>();
+        for (var s : GetCalendar(calendarID).values()) {
+            var e = s._Event;
+            // Cancelled instances are listed so the recurring event can leave them out
+            var listed = e.IsRecurring() ? !e.IsCancelled()
+                    : e.IsCancelled() ? e.GetRecurringEventID() != null
+                    : e.GetEndMillis() >= minTime;
+            if (listed)
+                events.add(new SimpleEvent(e));
+        }
+        return events.iterator();
+    }
+
+    // Original starts of the instances changed or cancelled on their own, by recurring event ID
+    private static HashMap<String, Set<Long>> GetExceptions(LinkedHashMap<String, StoredEvent> calendar)
+    {
+        var exceptions = new HashMap<String, Set<Long>>();
+        for (var s : calendar.values()) {
+            if (s._Event.GetRecurringEventID() != null)
+                exceptions.computeIfAbsent(s._Event.GetRecurringEventID(), k -> new HashSet<Long>()).add(s._Event.GetOriginalStartMillis());
+        }
+        return exceptions;
+    }
+
+    // An instance of a recurring event on the calendar, which can be changed or cancelled before it is stored on its own
+    private static boolean IsInstance(LinkedHashMap<String, StoredEvent> calendar, SimpleEvent simple)
+    {
+        if (simple.GetRecurringEventID() == null || simple.GetOriginalStartMillis() == SimpleEvent.NO_TIME)
+            return false;
+        var recurring = calendar.get(simple.GetRecurringEventID());
+        return recurring != null && recurring._Event.IsRecurring() && !recurring._Event.IsCancelled();
+    }
+
+    @Override
+    public synchronized SyncIterator GetEventChanges(String calendarID, String syncToken, int pageSize)
+    {
+        long since = -1;
+        if (syncToken != null) {
+            var parts = syncToken.split(":");
+            if (parts.length != 2 || !parts[0].equals(_Epoch))
+                throw new UncheckedIOException(new SyncTokenExpiredException());
+            since = Long.parseLong(parts[1]);
+        }
+        var now = Instant.now();
+        var calendar = GetCalendar(calendarID);
+        var exceptions = GetExceptions(calendar);
+        var events = new ArrayList<SimpleEvent>();
+        for (var s : calendar.values()) {
+            // A full listing leaves out removed events
+            if (s._Version <= since || (since < 0 && s._Event.IsCancelled()))
+                continue;
+            // A changed recurring event is listed as all of its instances, as Google does for singleEvents
+            if (s._Event.IsRecurring() && !s._Event.IsCancelled())
+                Recurrence.Instances(s._Event, now.minus(365, ChronoUnit.DAYS).toEpochMilli(), now.plus(INSTANCE_HORIZON_DAYS, ChronoUnit.DAYS).toEpochMilli(),
+                        exceptions.get(s._Event.GetID())).forEachRemaining(events::add);
+            else
+                events.add(new SimpleEvent(s._Event));
+        }
+        var iterator = events.iterator();
+        var nextSyncToken = _Epoch + ":" + _Version;
+
+        return new SyncIterator() {
+            @Override
+            public String GetNextSyncToken() { return nextSyncToken; }
+
+            @Override
+            public boolean hasNext() { return iterator.hasNext(); }
+
+            @Override
+            public SimpleEvent next() { return iterator.next(); }
+        };
+    }
+
+    public static class SyncTokenExpiredException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        public SyncTokenExpiredException()
+        {
+            super("Sync token is no longer valid");
+        }
+    }
+
+    @Override
+    public boolean IsSyncTokenExpired(Exception ex)
+    {
+        var cause = ex instanceof UncheckedIOException ? ex.getCause() : ex;
+        return cause instanceof SyncTokenExpiredException;
+    }
+
+    @Override
+    public synchronized BusyTimes GetBusyTimes(List<String> calendarIDs, long from, long to)
+    {
+        var busy = new BusyTimes();
+        for (var calendarID : calendarIDs) {
+            var calendar = _Calendars.get(calendarID);
+            if (calendar == null)
+                continue;
+            var exceptions = GetExceptions(calendar);
+            for (var s : calendar.values()) {
+                if (s._Event.IsCancelled())
+                    continue;
+                if (s._Event.IsRecurring()) {
+                    var instances = Recurrence.Instances(s._Event, from, to, exceptions.get(s._Event.GetID()));
+                    while (instances.hasNext()) {
+                        busy.Add(instances.next());
+                    }
+                } else if (s._Event.GetStartMillis() < to && s._Event.GetEndMillis() > from) {
+                    busy.Add(s._Event);
+                }
+            }
+        }
+        return busy;
+    }
+
+    /*
+    Nothing sends notifications for calendars in memory, so the channel only exists for the caller.
+    Post to the notification endpoint by hand to try out a daemon against this backend.
+     */
+    @Override
+    public WatchChannel Watch(String calendarID, String channelID, String token, String address)
+    {
+        var calID = calendarID == null ? SimpleEvent.CALENDARID_PRIMARY : calendarID;
+        return new WatchChannel(channelID, token, calID, null, 0);
+    }
+
+    @Override
+    public void StopWatch(WatchChannel channel)
+    {
+    }
+
+    @Override
+    public synchronized MutationResult AddEvent(SimpleEvent simple)
+    {
+        return Apply(new EventMutation(EventMutation.Operation.Add, simple));
+    }
+
+    @Override
+    public synchronized MutationResult UpdateEvent(SimpleEvent simple)
+    {
+        return Apply(new EventMutation(EventMutation.Operation.Update, simple));
+    }
+
+    @Override
+    public synchronized MutationResult DeleteEvent(SimpleEvent simple)
+    {
+        return Apply(new EventMutation(EventMutation.Operation.Delete, simple));
+    }
+
+    @Override
+    public synchronized List<MutationResult> ExecuteBatch(List<EventMutation> mutations)
+    {
+        var results = new ArrayList<MutationResult>(mutations.size());
+        for (var m : mutations) {
+            results.add(Apply(m));
+        }
+        return results;
+    }
+
+    private MutationResult Apply(EventMutation mutation)
+    {
+        switch (mutation.GetOperation()) {
+            case Delete: return Delete(mutation);
+            case Update: return Update(mutation);
+            default: return Add(mutation);
+        }
+    }
+
+    private MutationResult Add(EventMutation mutation)
+    {
+        var simple = mutation.GetEvent();
+        var calendar = GetCalendar(simple.GetCalendarID());
+        // Like Google, the ID the client chose is kept, and refused once taken even by a deleted event
+        var id = mutation.GetInsertID() != null ? mutation.GetInsertID() : NewID();
+        if (calendar.containsKey(id))
+            return MutationResult.Failed(mutation, 409, "duplicate", "The requested identifier already exists.");
+        var stored = new SimpleEvent(simple);
+        stored.SetID(id);
+        stored.SetStatus(null);
+        calendar.put(stored.GetID(), new StoredEvent(stored, ++_Version));
+        return MutationResult.Succeeded(mutation, stored.GetID());
+    }
+
+    private MutationResult Update(EventMutation mutation)
+    {
+        var simple = mutation.GetEvent();
+        var calendar = GetCalendar(simple.GetCalendarID());
+        var existing = calendar.get(simple.GetID());
+        if (existing == null ? !IsInstance(calendar, simple) : existing._Event.IsCancelled())
+            return MutationResult.Failed(mutation, 404, "notFound", "Not Found");
+
+        var stored = new SimpleEvent(simple);
+        stored.SetStatus(null);
+        calendar.put(stored.GetID(), new StoredEvent(stored, ++_Version));
+        return MutationResult.Succeeded(mutation, stored.GetID());
+    }
+
+    private MutationResult Delete(EventMutation mutation)
+    {
+        var simple = mutation.GetEvent();
+        var calendar = GetCalendar(simple.GetCalendarID());
+        var existing = calendar.get(simple.GetID());
+        if (existing == null && !IsInstance(calendar, simple))
+            return MutationResult.Failed(mutation, 404, "notFound", "Not Found");
+        if (existing != null && existing._Event.IsCancelled())
+            return MutationResult.Failed(mutation, 410, "deleted", "Resource has been deleted");
+
+        // Keep a cancelled tombstone so incremental listings report the removal.
+        // A cancelled instance keeps its place in the recurring event, so the recurring event leaves it out.
+        var instance = existing != null ? existing._Event : simple;
+        var tombstone = new SimpleEvent();
+        tombstone.SetCalendarID(simple.GetCalendarID());
+        tombstone.SetID(simple.GetID());
+        tombstone.SetStatus(SimpleEvent.STATUS_CANCELLED);
+        tombstone.SetRecurringEventID(instance.GetRecurringEventID());
+        tombstone.SetOriginalStartMillis(instance.GetOriginalStartMillis());
+        calendar.put(tombstone.GetID(), new StoredEvent(tombstone, ++_Version));
+        return MutationResult.Succeeded(mutation, simple.GetID());
+    }
+}
@@ -0,0 +1,239 @@
+package com.marksware.simplescheduler.presentation;
+
+import com.google.gson.stream.JsonWriter;
+import com.marksware.simplescheduler.models.SimpleEvent;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+Leveled log written by a background thread.
+Callers only drop the format and its arguments into a bounded ring; the writer thread formats them and writes them out
+in batches, so a busy loop never waits on the console. When the ring is full callers wait rather than lose messages.
+A message below the level costs one comparison. Per-event messages should still check IsEnabled first, so their
+arguments aren't even built.
+Arguments are formatted later on the writer thread, so they must not change after the call: pass strings, numbers
+or Log.Event(e), never a SimpleEvent that is still being worked on.
+ */
+public class Log {
+
+    public enum Level { Debug, Info, Warn, Error, Off }
+
+    // Text is one line per message; Json is one object per message, with the format and arguments kept apart
+    public enum Format { Text, Json }
+
+    private static final int RING_SIZE = 8192;
+    private static final int MAX_BATCH = 1024;
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm:ss.SSS");
+
+    private static class Record {
+        final long _Millis = System.currentTimeMillis();
+        final Level _Level;
+        final String _Thread = Thread.currentThread().getName();
+        final String _Format;
+        final Object[] _Args;
+
+        Record(Level level, String format, Object[] args)
+        {
+            _Level = level;
+            _Format = format;
+            _Args = args;
+        }
+    }
+
+    private static volatile Level _Level = Level.Info;
+    public static Level GetLevel() { return _Level; }
+    public static void SetLevel(Level value) { _Level = value; }
+
+    private static volatile Format _Format = Format.Text;
+    public static void SetFormat(Format value) { _Format = value; }
+
+    private static final ArrayBlockingQueue<Record> _Ring = new ArrayBlockingQueue<Record>(RING_SIZE);
+    private static final AtomicLong _Queued = new AtomicLong();
+    private static final Object _WrittenLock = new Object();
+    private static long _Written = 0;
+    private static volatile Writer _Out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(FileDescriptor.out), StandardCharsets.UTF_8));
+
+    static {
+        var writer = new Thread(Log::WriteLoop, "SimpleScheduler-log");
+        writer.setDaemon(true);
+        writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(Log::Flush));
+    }
+
+    // "debug", "info", "warn", "error" or "off"
+    public static Level ParseLevel(String value)
+    {
+        for (var level : Level.values()) {
+            if (level.name().equalsIgnoreCase(value))
+                return level;
+        }
+        throw new IllegalArgumentException(String.format("Unknown log level '%s'", value));
+    }
+
+    // "text" or "json"
+    public static Format ParseFormat(String value)
+    {
+        for (var format : Format.values()) {
+            if (format.name().equalsIgnoreCase(value))
+                return format;
+        }
+        throw new IllegalArgumentException(String.format("Unknown log format '%s'", value));
+    }
+
+    public static boolean IsEnabled(Level level) { return level.compareTo(_Level) >= 0 && level != Level.Off; }
+
+    public static void Debug(String format, Object... args) { if (IsEnabled(Level.Debug)) Queue(Level.Debug, format, args); }
+
+    public static void Info(String format, Object... args) { if (IsEnabled(Level.Info)) Queue(Level.Info, format, args); }
+
+    public static void Warn(String format, Object... args) { if (IsEnabled(Level.Warn)) Queue(Level.Warn, format, args); }
+
+    public static void Error(String format, Object... args) { if (IsEnabled(Level.Error)) Queue(Level.Error, format, args); }
+
+    /*
+    Send the log to a file, appending, instead of standard output
+     */
+    public static void SetFile(File file) throws IOException
+    {
+        Flush();
+        _Out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8));
+    }
+
+    /*
+    A summary and the start and end of an event as they are now, to log without copying the whole event
+     */
+    public static Object Event(SimpleEvent e)
+    {
+        var summary = e.GetSummary();
+        var start = e.GetStartMillis();
+        var end = e.GetEndMillis();
+        return new Object() {
+            @Override
+            public String toString() { return SimpleEvent.FormatEvent(summary, start, end); }
+        };
+    }
+
+    private static void Queue(Level level, String format, Object[] args)
+    {
+        _Queued.incrementAndGet();
+        try {
+            _Ring.put(new Record(level, format, args));
+        } catch (InterruptedException ex) {
+            _Queued.decrementAndGet();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /*
+    Wait until everything logged so far has been written, such as before printing directly to the console
+     */
+    public static void Flush()
+    {
+        var target = _Queued.get();
+        synchronized (_WrittenLock) {
+            while (_Written < target) {
+                try {
+                    _WrittenLock.wait();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private static void WriteLoop()
+    {
+        var batch = new ArrayList<Record>(MAX_BATCH);
+        var line = new StringBuilder();
+        while (true) {
+            try {
+                batch.add(_Ring.take());
+            } catch (InterruptedException ex) {
+                return;
+            }
+            _Ring.drainTo(batch, MAX_BATCH - 1);
+
+            var out = _Out;
+            try {
+                for (var r : batch) {
+                    line.setLength(0);
+                    try {
+                        if (_Format == Format.Json)
+                            FormatJson(line, r);
+                        else
+                            FormatText(line, r);
+                    } catch (RuntimeException ex) {
+                        // An argument that can't be formatted must not stop the writer
+                        line.setLength(0);
+                        line.append(r._Format).append('\n');
+                    }
+                    out.write(line.toString());
+                }
+                out.flush();
+            } catch (IOException ex) {
+                // Nowhere left to report it
+            }
+            synchronized (_WrittenLock) {
+                _Written += batch.size();
+                _WrittenLock.notifyAll();
+            }
+            batch.clear();
+        }
+    }
+
+    private static String Message(Record r)
+    {
+        if (r._Args == null || r._Args.length == 0)
+            return r._Format;
+        try {
+            return String.format(r._Format, r._Args);
+        } catch (RuntimeException ex) {
+            return r._Format + " " + Arrays.toString(r._Args);
+        }
+    }
+
+    private static void FormatText(StringBuilder line, Record r)
+    {
+        var time = LocalTime.ofInstant(Instant.ofEpochMilli(r._Millis), ZoneId.systemDefault());
+        line.append(TIME_FORMAT.format(time)).append(' ');
+        line.append(String.format("%-5s ", r._Level.name().toUpperCase()));
+        line.append(Message(r));
+        if (line.charAt(line.length() - 1) != '\n')
+            line.append('\n');
+    }
+
+    private static void FormatJson(StringBuilder line, Record r) throws IOException
+    {
+        var text = new StringWriter();
+        var writer = new JsonWriter(text);
+        writer.beginObject();
+        writer.name("time").value(Instant.ofEpochMilli(r._Millis).toString());
+        writer.name("level").value(r._Level.name().toLowerCase());
+        writer.name("thread").value(r._Thread);
+        writer.name("message").value(Message(r));
+        writer.name("format").value(r._Format);
+        if (r._Args != null && r._Args.length > 0) {
+            writer.name("args").beginArray();
+            for (var arg : r._Args) {
+                if (arg instanceof Number)
+                    writer.value((Number) arg);
+                else
+                    writer.value(String.valueOf(arg));
+            }
+            writer.endArray();
+        }
+        writer.endObject();
+        writer.flush();
+        line.append(text).append('\n');
+    }
+}
@@ -0,0 +1,288 @@
+package com.marksware.simplescheduler.presentation;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+Counts and timings for the scheduler, kept in memory and handed to exporters.
+A name may carry one label after a colon, such as "phase:fetch" or "google:events.list"; exporters that support
+labels report those as one metric with a name label.
+Timers keep a histogram of their samples in fixed buckets, so percentiles can be read off without keeping every sample.
+Counters only add up here, some are counted a byte at a time; exporters are given what they added up to on Export.
+Everything may be recorded from any thread. Hot paths should hold on to the Counter or Timer instead of looking it up.
+ */
+public class Metrics {
+
+    // Upper bounds of the histogram buckets in nanoseconds, from 10us to 1 minute; anything slower goes in one more
+    private static final long[] BUCKET_BOUNDS = {
+            10000L, 100000L, 500000L,
+            1000000L, 2000000L, 5000000L, 10000000L, 20000000L, 50000000L, 100000000L, 200000000L, 500000000L,
+            1000000000L, 2000000000L, 5000000000L, 10000000000L, 30000000000L, 60000000000L };
+
+    public static long[] GetBucketBounds() { return BUCKET_BOUNDS.clone(); }
+
+    public static class Counter {
+        private final String _Name;
+        private final LongAdder _Value = new LongAdder();
+        // What exporters have been given so far, guarded by Metrics.class
+        private long _Exported = 0;
+
+        Counter(String name)
+        {
+            _Name = name;
+        }
+
+        public void Increment() { Add(1); }
+
+        public void Add(long value) { _Value.add(value); }
+    }
+
+    public static class Timer {
+        private final String _Name;
+        private final LongAdder[] _Buckets = new LongAdder[BUCKET_BOUNDS.length + 1];
+        private final LongAdder _Count = new LongAdder();
+        private final LongAdder _TotalNanos = new LongAdder();
+        private final LongAccumulator _MaxNanos = new LongAccumulator(Math::max, 0);
+
+        Timer(String name)
+        {
+            _Name = name;
+            for (int i = 0; i < _Buckets.length; i++) {
+                _Buckets[i] = new LongAdder();
+            }
+        }
+
+        public void Record(long nanos)
+        {
+            int bucket = 0;
+            while (bucket < BUCKET_BOUNDS.length && nanos > BUCKET_BOUNDS[bucket]) {
+                bucket++;
+            }
+            _Buckets[bucket].increment();
+            _Count.increment();
+            _TotalNanos.add(nanos);
+            _MaxNanos.accumulate(nanos);
+            for (var exporter : _Exporters) {
+                exporter.Timed(_Name, nanos);
+            }
+        }
+
+        public void RecordSince(long startNanos) { Record(System.nanoTime() - startNanos); }
+
+        private void Reset()
+        {
+            for (var b : _Buckets) {
+                b.reset();
+            }
+            _Count.reset();
+            _TotalNanos.reset();
+            _MaxNanos.reset();
+        }
+    }
+
+    /*
+    A timed stretch of work on one thread, recorded when it is closed.
+    Exporters that trace get to open a span for it.
+     */
+    public static class Phase implements AutoCloseable {
+        private final Timer _Timer;
+        private final long _Started = System.nanoTime();
+        private final MetricsExporter.Span[] _Spans;
+
+        private Phase(Timer timer, MetricsExporter.Span[] spans)
+        {
+            _Timer = timer;
+            _Spans = spans;
+        }
+
+        @Override
+        public void close()
+        {
+            _Timer.RecordSince(_Started);
+            for (int i = _Spans.length - 1; i >= 0; i--) {
+                if (_Spans[i] != null)
+                    _Spans[i].End();
+            }
+        }
+    }
+
+    public static class TimerSnapshot {
+        private final long[] _Buckets;
+        public long GetBucket(int index) { return _Buckets[index]; }
+        public int GetBucketCount() { return _Buckets.length; }
+
+        private final long _Count;
+        public long GetCount() { return _Count; }
+
+        private final long _TotalNanos;
+        public long GetTotalNanos() { return _TotalNanos; }
+
+        private final long _MaxNanos;
+        public long GetMaxNanos() { return _MaxNanos; }
+
+        TimerSnapshot(Timer timer)
+        {
+            _Buckets = new long[timer._Buckets.length];
+            long count = 0;
+            for (int i = 0; i < _Buckets.length; i++) {
+                _Buckets[i] = timer._Buckets[i].sum();
+                count += _Buckets[i];
+            }
+            // Taken from the buckets so the count always agrees with them
+            _Count = count;
+            _TotalNanos = timer._TotalNanos.sum();
+            _MaxNanos = timer._MaxNanos.get();
+        }
+
+        // Upper bound of the bucket holding the given fraction of samples, or the slowest sample if that is lower
+        public long GetPercentileNanos(double fraction)
+        {
+            long rank = (long) Math.ceil(fraction * _Count);
+            long seen = 0;
+            for (int i = 0; i < _Buckets.length; i++) {
+                seen += _Buckets[i];
+                if (seen >= rank && seen > 0)
+                    return i < BUCKET_BOUNDS.length ? Math.min(BUCKET_BOUNDS[i], _MaxNanos) : _MaxNanos;
+            }
+            return 0;
+        }
+    }
+
+    public static class Snapshot {
+        private final Map<String, Long> _Counters;
+        public Map<String, Long> GetCounters() { return _Counters; }
+
+        private final Map<String, TimerSnapshot> _Timers;
+        public Map<String, TimerSnapshot> GetTimers() { return _Timers; }
+
+        Snapshot(Map<String, Long> counters, Map<String, TimerSnapshot> timers)
+        {
+            _Counters = Collections.unmodifiableMap(counters);
+            _Timers = Collections.unmodifiableMap(timers);
+        }
+    }
+
+    private static final ConcurrentHashMap<String, Counter> _Counters = new ConcurrentHashMap<String, Counter>();
+    private static final ConcurrentHashMap<String, Timer> _Timers = new ConcurrentHashMap<String, Timer>();
+    private static volatile MetricsExporter[] _Exporters = new MetricsExporter[0];
+
+    public static Counter GetCounter(String name) { return _Counters.computeIfAbsent(name, Counter::new); }
+
+    public static Timer GetTimer(String name) { return _Timers.computeIfAbsent(name, Timer::new); }
+
+    public static void Count(String name) { GetCounter(name).Add(1); }
+
+    public static void Count(String name, long value) { GetCounter(name).Add(value); }
+
+    public static void Time(String name, long nanos) { GetTimer(name).Record(nanos); }
+
+    // A phase of a run, which may call the Calendar API like the rest of the run
+    public interface Work<T> {
+        T Run() throws IOException, GeneralSecurityException;
+    }
+
+    public interface Step {
+        void Run() throws IOException, GeneralSecurityException;
+    }
+
+    /*
+    Time a phase of a run and hand back its result: var mutations = Metrics.Time("phase:plan", () -> Plan(plan));
+     */
+    public static <T> T Time(String name, Work<T> work) throws IOException, GeneralSecurityException
+    {
+        var phase = StartPhase(name);
+        try {
+            return work.Run();
+        } finally {
+            phase.close();
+        }
+    }
+
+    public static void Time(String name, Step step) throws IOException, GeneralSecurityException
+    {
+        var phase = StartPhase(name);
+        try {
+            step.Run();
+        } finally {
+            phase.close();
+        }
+    }
+
+    /*
+    Start timing a phase, recorded when the Phase is closed. Time(name, work) does both.
+     */
+    public static Phase StartPhase(String name)
+    {
+        var exporters = _Exporters;
+        var spans = new MetricsExporter.Span[exporters.length];
+        for (int i = 0; i < exporters.length; i++) {
+            spans[i] = exporters[i].StartSpan(name);
+        }
+        return new Phase(GetTimer(name), spans);
+    }
+
+    public static synchronized void AddExporter(MetricsExporter exporter)
+    {
+        var exporters = new MetricsExporter[_Exporters.length + 1];
+        System.arraycopy(_Exporters, 0, exporters, 0, _Exporters.length);
+        exporters[_Exporters.length] = exporter;
+        _Exporters = exporters;
+    }
+
+    /*
+    Everything recorded since the start or the last Reset, by name
+     */
+    public static Snapshot GetSnapshot()
+    {
+        var counters = new TreeMap<String, Long>();
+        for (var c : _Counters.values()) {
+            counters.put(c._Name, c._Value.sum());
+        }
+        var timers = new TreeMap<String, TimerSnapshot>();
+        for (var t : _Timers.values()) {
+            timers.put(t._Name, new TimerSnapshot(t));
+        }
+        return new Snapshot(counters, timers);
+    }
+
+    // Counters and Timers already handed out stay valid
+    public static synchronized void Reset()
+    {
+        for (var c : _Counters.values()) {
+            c._Value.reset();
+            c._Exported = 0;
+        }
+        for (var t : _Timers.values()) {
+            t.Reset();
+        }
+    }
+
+    /*
+    Give every exporter what each counter added up to since the last export, then the current totals,
+    such as at the end of a run
+     */
+    public static synchronized void Export() throws IOException
+    {
+        var exporters = _Exporters;
+        var snapshot = GetSnapshot();
+        for (var c : _Counters.values()) {
+            var value = snapshot.GetCounters().get(c._Name);
+            // A counter made after the snapshot was taken is left to the next export
+            if (value == null || value == c._Exported)
+                continue;
+            for (var exporter : exporters) {
+                exporter.Counted(c._Name, value - c._Exported);
+            }
+            c._Exported = value;
+        }
+        for (var exporter : exporters) {
+            exporter.Export(snapshot);
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.marksware.simplescheduler.presentation;
+
+import java.io.IOException;
+
+/*
+Where Metrics go.
+Exporters that aggregate on their own see every timing as it is recorded, and how much each counter went up by
+since the last export; exporters that dump totals only need Export. Either kind may leave the other methods empty.
+ */
+public interface MetricsExporter {
+
+    interface Span {
+        void End();
+    }
+
+    // Called from Metrics.Export, just before Export, with the increase since the one before
+    void Counted(String name, long value);
+
+    void Timed(String name, long nanos);
+
+    // A phase is starting on this thread; the span is ended on the same thread. Null if the exporter doesn't trace.
+    Span StartSpan(String name);
+
+    void Export(Metrics.Snapshot snapshot) throws IOException;
+}
@@ -0,0 +1,225 @@
+package com.marksware.simplescheduler.presentation;
+
+import com.marksware.simplescheduler.models.EventMutation;
+import com.marksware.simplescheduler.models.MutationResult;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+/*
+Sends mutations as concurrent batches with a bounded number in flight.
+Mutations of the same logical event (an event and the events generated from it) are sent in order,
+everything else runs in parallel. Rate limited and failed calls are retried with exponential backoff and jitter.
+Retrying an add is safe because it carries the same client chosen event ID every time, and a retried delete that finds
+the event already gone is taken as done.
+ */
+public class MutationPipeline {
+
+    public interface BatchExecutor {
+        List<MutationResult> Execute(List<EventMutation> mutations) throws IOException, GeneralSecurityException;
+    }
+
+    private final BatchExecutor _BatchExecutor;
+
+    private static final Metrics.Counter RETRIES = Metrics.GetCounter("retries");
+    private static final Metrics.Counter RATE_LIMITED = Metrics.GetCounter("rate_limited");
+    // Time spent on each kind of write; a batch that mixes them is shared out by how many of each it holds
+    private static final Metrics.Timer[] OPERATION_TIMES = new Metrics.Timer[EventMutation.Operation.values().length];
+    static {
+        for (var operation : EventMutation.Operation.values()) {
+            OPERATION_TIMES[operation.ordinal()] = Metrics.GetTimer("phase:" + operation.name().toLowerCase());
+        }
+    }
+
+    private int _MaxInFlight = 4;
+    public int GetMaxInFlight() { return _MaxInFlight; }
+    public void SetMaxInFlight(int value) { _MaxInFlight = Math.max(1, value); }
+
+    private int _BatchSize = GoogleUtil.MAX_BATCH_SIZE;
+    public int GetBatchSize() { return _BatchSize; }
+    public void SetBatchSize(int value) { _BatchSize = Math.max(1, Math.min(value, GoogleUtil.MAX_BATCH_SIZE)); }
+
+    private int _MaxAttempts = 6;
+    public int GetMaxAttempts() { return _MaxAttempts; }
+    public void SetMaxAttempts(int value) { _MaxAttempts = Math.max(1, value); }
+
+    private long _BaseBackoffMillis = 500;
+    public void SetBaseBackoffMillis(long value) { _BaseBackoffMillis = value; }
+
+    private long _MaxBackoffMillis = 32000;
+    public void SetMaxBackoffMillis(long value) { _MaxBackoffMillis = value; }
+
+    // When rate limited, every batch holds off until this time rather than only the one that was refused
+    private final Object _PauseLock = new Object();
+    private long _PausedUntil = 0;
+
+    public MutationPipeline(BatchExecutor batchExecutor)
+    {
+        _BatchExecutor = batchExecutor;
+    }
+
+    private static String LogicalKey(EventMutation mutation, int index)
+    {
+        var e = mutation.GetEvent();
+        var sourceID = e.GetExtendedProperties().get(SchedulingUtil.ScheduledIdentifiers._SimpleSchedule_SourceID.toString());
+        var id = sourceID != null ? sourceID : e.GetID();
+        if (id == null)
+            return "#" + index;
+        return e.GetCalendarID() + "/" + id;
+    }
+
+    /*
+    Results are returned in the same order as the mutations, one per mutation
+     */
+    public List<MutationResult> Execute(List<EventMutation> mutations) throws IOException, GeneralSecurityException
+    {
+        var results = new MutationResult[mutations.size()];
+
+        var chains = new LinkedHashMap<String, List<Integer>>();
+        for (int i = 0; i < mutations.size(); i++) {
+            chains.computeIfAbsent(LogicalKey(mutations.get(i), i), k -> new ArrayList<Integer>()).add(i);
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(_MaxInFlight, r -> {
+            var thread = new Thread(r, "SimpleScheduler-mutation");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            // Wave n holds the n-th mutation of every chain, so a chain never has two mutations in flight
+            for (int wave = 0; ; wave++) {
+                var indexes = new ArrayList<Integer>();
+                for (var chain : chains.values()) {
+                    if (wave < chain.size())
+                        indexes.add(chain.get(wave));
+                }
+                if (indexes.isEmpty())
+                    break;
+
+                var futures = new ArrayList<Future<?>>();
+                for (int first = 0; first < indexes.size(); first += _BatchSize) {
+                    var batch = indexes.subList(first, Math.min(first + _BatchSize, indexes.size()));
+                    futures.add(pool.submit(() -> {
+                        RunBatch(mutations, batch, results);
+                        return null;
+                    }));
+                }
+                for (var f : futures) {
+                    Await(f);
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        return Arrays.asList(results);
+    }
+
+    private void RunBatch(List<EventMutation> mutations, List<Integer> indexes, MutationResult[] results)
+            throws IOException, GeneralSecurityException, InterruptedException {
+        var pending = indexes;
+        for (int attempt = 1; ; attempt++) {
+            WaitWhilePaused();
+
+            var batch = new ArrayList<EventMutation>(pending.size());
+            for (var i : pending) {
+                batch.add(mutations.get(i));
+            }
+            var started = System.nanoTime();
+            var batchResults = _BatchExecutor.Execute(batch);
+            RecordOperationTimes(batch, System.nanoTime() - started);
+
+            var retry = new ArrayList<Integer>();
+            boolean rateLimited = false;
+            for (int j = 0; j < pending.size(); j++) {
+                var r = batchResults.get(j).WithAttempts(attempt);
+                // Only a retry can find its own insert already there, or its own delete already done,
+                // when the response to the one before was lost
+                if (attempt > 1 && r.IsDuplicateInsert())
+                    r = MutationResult.Succeeded(r.GetMutation(), r.GetMutation().GetInsertID()).WithAttempts(attempt);
+                else if (attempt > 1 && r.IsAlreadyDeleted())
+                    r = MutationResult.Succeeded(r.GetMutation(), r.GetMutation().GetEvent().GetID()).WithAttempts(attempt);
+                results[pending.get(j)] = r;
+                if (r.IsRetryable() && attempt < _MaxAttempts) {
+                    retry.add(pending.get(j));
+                    rateLimited |= r.IsRateLimited();
+                }
+            }
+            if (retry.isEmpty())
+                return;
+            RETRIES.Add(retry.size());
+            if (rateLimited)
+                RATE_LIMITED.Increment();
+
+            var delay = Backoff(attempt);
+            if (rateLimited) {
+                Pause(delay);
+            } else {
+                Thread.sleep(delay);
+            }
+            pending = retry;
+        }
+    }
+
+    private static void RecordOperationTimes(List<EventMutation> batch, long nanos)
+    {
+        var counts = new int[OPERATION_TIMES.length];
+        for (var m : batch) {
+            counts[m.GetOperation().ordinal()]++;
+        }
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0)
+                OPERATION_TIMES[i].Record(nanos * counts[i] / batch.size());
+        }
+    }
+
+    private long Backoff(int attempt)
+    {
+        var cap = Math.min(_MaxBackoffMillis, _BaseBackoffMillis << Math.min(attempt - 1, 20));
+        return cap / 2 + ThreadLocalRandom.current().nextLong(cap / 2 + 1);
+    }
+
+    private void Pause(long delay)
+    {
+        synchronized (_PauseLock) {
+            _PausedUntil = Math.max(_PausedUntil, System.currentTimeMillis() + delay);
+        }
+    }
+
+    private void WaitWhilePaused() throws InterruptedException
+    {
+        while (true) {
+            long wait;
+            synchronized (_PauseLock) {
+                wait = _PausedUntil - System.currentTimeMillis();
+            }
+            if (wait <= 0)
+                return;
+            Thread.sleep(wait);
+        }
+    }
+
+    private static void Await(Future<?> future) throws IOException, GeneralSecurityException
+    {
+        try {
+            future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while sending mutations", ex);
+        } catch (ExecutionException ex) {
+            var cause = ex.getCause();
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            if (cause instanceof GeneralSecurityException)
+                throw (GeneralSecurityException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            throw new IOException(cause);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.marksware.simplescheduler.presentation;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+/*
+HTTP endpoint that Calendar API push notifications are posted to, which also serves the metrics for Prometheus at /metrics.
+A notification only says that a watched calendar changed, in its headers; the body is empty.
+Google needs a public HTTPS address, so in production this sits behind a proxy that terminates TLS.
+Locally it can be tried by posting the headers by hand:
+
+    curl -X POST -H "X-Goog-Channel-ID: <id>" -H "X-Goog-Channel-Token: <token>" \
+         -H "X-Goog-Resource-State: exists" http://localhost:8080/notifications
+ */
+public class NotificationServer {
+
+    public interface Listener {
+        void Notified(String channelID, String token, String resourceState);
+    }
+
+    public static final int DEFAULT_PORT = 8080;
+    public static final String DEFAULT_PATH = "/notifications";
+
+    private final HttpServer _Server;
+
+    public NotificationServer(int port, String path, Listener listener) throws IOException
+    {
+        _Server = HttpServer.create(new InetSocketAddress(port), 0);
+        _Server.createContext(path, exchange -> Handle(exchange, listener));
+        _Server.createContext("/metrics", NotificationServer::HandleMetrics);
+    }
+
+    public int GetPort() { return _Server.getAddress().getPort(); }
+
+    public void Start() { _Server.start(); }
+
+    public void Stop() { _Server.stop(0); }
+
+    // Answer straight away: Google retries notifications that are slow or fail, which would only bring more of them
+    private static void Handle(HttpExchange exchange, Listener listener) throws IOException
+    {
+        try (exchange) {
+            exchange.getRequestBody().readAllBytes();
+            if (!exchange.getRequestMethod().equals("POST")) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            var headers = exchange.getRequestHeaders();
+            var channelID = headers.getFirst("X-Goog-Channel-ID");
+            if (channelID == null) {
+                exchange.sendResponseHeaders(400, -1);
+                return;
+            }
+            exchange.sendResponseHeaders(200, -1);
+            listener.Notified(channelID, headers.getFirst("X-Goog-Channel-Token"), headers.getFirst("X-Goog-Resource-State"));
+        }
+    }
+
+    private static void HandleMetrics(HttpExchange exchange) throws IOException
+    {
+        try (exchange) {
+            var text = new StringWriter();
+            TextMetricsExporter.WritePrometheus(text, Metrics.GetSnapshot());
+            var body = text.toString().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.marksware.simplescheduler.presentation;
+
+import io.opencensus.stats.Aggregation;
+import io.opencensus.stats.BucketBoundaries;
+import io.opencensus.stats.Measure;
+import io.opencensus.stats.Stats;
+import io.opencensus.stats.View;
+import io.opencensus.tags.TagContext;
+import io.opencensus.tags.TagKey;
+import io.opencensus.tags.TagValue;
+import io.opencensus.tags.Tags;
+import io.opencensus.trace.Tracing;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+Records every count and timing through OpenCensus, and opens a span for every phase.
+Counts and timings each go to one measure, tagged with the metric and the label after the colon.
+Only the OpenCensus API is in libs, where recording does nothing; put an OpenCensus implementation and an exporter
+such as Stackdriver or Zipkin on the classpath to send them somewhere. The Google HTTP client already opens a span
+for every API call, which then nests under the phase it was made in.
+ */
+public class OpenCensusMetricsExporter implements MetricsExporter {
+
+    private static final TagKey METRIC = TagKey.create("metric");
+    private static final TagKey NAME = TagKey.create("name");
+
+    private static final Measure.MeasureLong COUNT = Measure.MeasureLong.create(
+            "simplescheduler/count", "Things counted by the scheduler", "1");
+    private static final Measure.MeasureDouble LATENCY = Measure.MeasureDouble.create(
+            "simplescheduler/latency", "Time taken by scheduler phases, API calls and commands", "ms");
+
+    private final ConcurrentHashMap<String, TagContext> _Tags = new ConcurrentHashMap<String, TagContext>();
+
+    public OpenCensusMetricsExporter()
+    {
+        var bounds = new ArrayList<Double>();
+        for (var bound : Metrics.GetBucketBounds()) {
+            bounds.add(bound / 1000000.0);
+        }
+        var viewManager = Stats.getViewManager();
+        viewManager.registerView(View.create(View.Name.create("simplescheduler/count"), "Things counted by the scheduler",
+                COUNT, Aggregation.Sum.create(), List.of(METRIC, NAME)));
+        viewManager.registerView(View.create(View.Name.create("simplescheduler/latency"), "Time taken by the scheduler",
+                LATENCY, Aggregation.Distribution.create(BucketBoundaries.create(bounds)), List.of(METRIC, NAME)));
+    }
+
+    private TagContext GetTags(String name)
+    {
+        return _Tags.computeIfAbsent(name, n -> {
+            var colon = n.indexOf(':');
+            return Tags.getTagger().emptyBuilder()
+                    .putLocal(METRIC, TagValue.create(colon >= 0 ? n.substring(0, colon) : n))
+                    .putLocal(NAME, TagValue.create(colon >= 0 ? n.substring(colon + 1) : ""))
+                    .build();
+        });
+    }
+
+    @Override
+    public void Counted(String name, long value)
+    {
+        Stats.getStatsRecorder().newMeasureMap().put(COUNT, value).record(GetTags(name));
+    }
+
+    @Override
+    public void Timed(String name, long nanos)
+    {
+        Stats.getStatsRecorder().newMeasureMap().put(LATENCY, nanos / 1000000.0).record(GetTags(name));
+    }
+
+    @Override
+    public Span StartSpan(String name)
+    {
+        var scope = Tracing.getTracer().spanBuilder(name).startScopedSpan();
+        return scope::close;
+    }
+
+    // OpenCensus exporters push on their own schedule
+    @Override
+    public void Export(Metrics.Snapshot snapshot) { }
+}
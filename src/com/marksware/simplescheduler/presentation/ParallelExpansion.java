@@ -0,0 +1,89 @@
+package com.marksware.simplescheduler.presentation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/*
+Expands a range of events across cores with fork/join.
+The range is cut into slices, each slice is expanded into a plan of its own, and the plans are merged back
+in slice order, so the result is exactly what expanding the events one after another would give.
+Expanding an event must only read the event and write to the plan it is given.
+ */
+class ParallelExpansion {
+
+    interface SliceExpander {
+        void Expand(int from, int to, EventPlan outPlan);
+    }
+
+    // Smallest slice worth handing to another thread
+    static final int MIN_SLICE_SIZE = 1024;
+
+    private static ForkJoinPool _Pool = null;
+
+    private static synchronized ForkJoinPool GetPool(int parallelism)
+    {
+        if (_Pool == null || _Pool.getParallelism() != parallelism) {
+            if (_Pool != null)
+                _Pool.shutdown();
+            _Pool = new ForkJoinPool(parallelism);
+        }
+        return _Pool;
+    }
+
+    static void Run(String calendarID, int size, int parallelism, SliceExpander expander, EventPlan outPlan)
+    {
+        if (parallelism <= 1 || size < 2 * MIN_SLICE_SIZE) {
+            expander.Expand(0, size, outPlan);
+            return;
+        }
+
+        // A few slices per thread so a slice full of commands doesn't hold everything up
+        int sliceSize = Math.max(MIN_SLICE_SIZE, size / (parallelism * 4));
+        var plans = GetPool(parallelism).invoke(new SliceTask(calendarID, expander, 0, size, sliceSize));
+        for (var plan : plans) {
+            outPlan.AddAll(plan);
+        }
+    }
+
+    private static class SliceTask extends RecursiveTask<List<EventPlan>> {
+        private static final long serialVersionUID = 1L;
+
+        private final String _CalendarID;
+        private final SliceExpander _Expander;
+        private final int _From;
+        private final int _To;
+        private final int _SliceSize;
+
+        SliceTask(String calendarID, SliceExpander expander, int from, int to, int sliceSize)
+        {
+            _CalendarID = calendarID;
+            _Expander = expander;
+            _From = from;
+            _To = to;
+            _SliceSize = sliceSize;
+        }
+
+        @Override
+        protected List<EventPlan> compute()
+        {
+            if (_To - _From <= _SliceSize) {
+                var plan = new EventPlan(_CalendarID);
+                _Expander.Expand(_From, _To, plan);
+                var plans = new ArrayList<EventPlan>(1);
+                plans.add(plan);
+                return plans;
+            }
+
+            int middle = (_From + _To) >>> 1;
+            var left = new SliceTask(_CalendarID, _Expander, _From, middle, _SliceSize);
+            var right = new SliceTask(_CalendarID, _Expander, middle, _To, _SliceSize);
+            left.fork();
+            var plans = right.compute();
+            var leftPlans = left.join();
+            leftPlans.addAll(plans);
+            return leftPlans;
+        }
+    }
+}
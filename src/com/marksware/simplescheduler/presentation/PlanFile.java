@@ -0,0 +1,103 @@
+package com.marksware.simplescheduler.presentation;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import com.marksware.simplescheduler.models.EventMutation;
+import com.marksware.simplescheduler.models.SimpleEvent;
+import com.marksware.simplescheduler.models.SimpleEventJson;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+A plan saved as JSON Lines, one mutation per line:
+{"op":"update","event":{...}}
+An add also keeps the ID it asks for, {"op":"add","insertId":"...","event":{...}}, so applying the same plan
+again, say after it failed part way, doesn't add its events twice.
+Lines are written and read one at a time, so plans for many calendars can be concatenated or diffed line by line.
+ */
+public class PlanFile {
+
+    public static void Write(File file, List<EventMutation> mutations) throws IOException
+    {
+        try (var out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+            Write(out, mutations);
+        }
+    }
+
+    public static void Write(Writer out, List<EventMutation> mutations) throws IOException
+    {
+        for (var m : mutations) {
+            var line = new StringWriter();
+            var writer = new JsonWriter(line);
+            writer.beginObject();
+            writer.name("op").value(m.GetOperation().toString().toLowerCase());
+            if (m.GetInsertID() != null)
+                writer.name("insertId").value(m.GetInsertID());
+            writer.name("event");
+            SimpleEventJson.Write(writer, m.GetEvent());
+            writer.endObject();
+            writer.flush();
+            out.write(line.toString());
+            out.write('\n');
+        }
+    }
+
+    public static List<EventMutation> Read(File file) throws IOException
+    {
+        var mutations = new ArrayList<EventMutation>();
+        try (var in = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            int number = 0;
+            while ((line = in.readLine()) != null) {
+                number++;
+                if (line.isBlank())
+                    continue;
+                try {
+                    mutations.add(ReadLine(line));
+                } catch (IOException | IllegalArgumentException | IllegalStateException ex) {
+                    throw new IOException(String.format("%s line %d: %s", file.getPath(), number, ex.getMessage()), ex);
+                }
+            }
+        }
+        return mutations;
+    }
+
+    private static EventMutation ReadLine(String line) throws IOException
+    {
+        var reader = new JsonReader(new StringReader(line));
+        EventMutation.Operation operation = null;
+        String insertID = null;
+        SimpleEvent event = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            var name = reader.nextName();
+            if (name.equals("op")) {
+                var op = reader.nextString();
+                for (var o : EventMutation.Operation.values()) {
+                    if (o.toString().equalsIgnoreCase(op))
+                        operation = o;
+                }
+                if (operation == null)
+                    throw new IOException("Unknown operation " + op);
+            } else if (name.equals("insertId")) {
+                insertID = reader.nextString();
+            } else if (name.equals("event")) {
+                event = SimpleEventJson.Read(reader);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (operation == null || event == null)
+            throw new IOException("Expected both op and event");
+        // A plan written before adds kept their ID gets new ones
+        if (operation == EventMutation.Operation.Add && insertID == null)
+            return new EventMutation(operation, event);
+        return new EventMutation(operation, event, insertID);
+    }
+}
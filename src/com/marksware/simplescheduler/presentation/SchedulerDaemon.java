@@ -0,0 +1,263 @@
+package com.marksware.simplescheduler.presentation;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/*
+Stays running and reprocesses a calendar within seconds of it changing.
+Each calendar is watched through a push channel. Notifications are debounced, so a burst of edits leads to one
+incremental run once the calendar has been quiet for a moment, and the run fetches only what changed since the last one.
+The Calendar client and each calendar's snapshot stay in memory between runs.
+Notifications are not guaranteed to arrive, so every calendar is also polled now and then; without a notification
+address polling is all there is.
+ */
+public class SchedulerDaemon {
+
+    private static class CalendarWatch {
+        final String _CalendarID;
+        SyncState _State = null;
+        volatile WatchChannel _Channel = null;
+        ScheduledFuture<?> _PendingRun = null;
+        long _FirstNotifiedMillis = 0;
+        boolean _Running = false;
+        boolean _NotifiedWhileRunning = false;
+
+        CalendarWatch(String calendarID)
+        {
+            _CalendarID = calendarID;
+        }
+    }
+
+    private final int _PageSize;
+    private final String _NotifyAddress;
+    private final LinkedHashMap<String, CalendarWatch> _Watches = new LinkedHashMap<String, CalendarWatch>();
+    // Every live channel by ID, including one that is being replaced
+    private final ConcurrentHashMap<String, WatchChannel> _Channels = new ConcurrentHashMap<String, WatchChannel>();
+    private final CountDownLatch _Stopped = new CountDownLatch(1);
+    private ScheduledThreadPoolExecutor _Scheduler = null;
+    private NotificationServer _Server = null;
+
+    // Wait this long after the last notification before running
+    private long _DebounceMillis = 2000;
+    public long GetDebounceMillis() { return _DebounceMillis; }
+    public void SetDebounceMillis(long value) { _DebounceMillis = Math.max(0, value); }
+
+    // but never this much longer than after the first, so a calendar that keeps changing still gets processed
+    private long _MaxDelayMillis = 15000;
+    public long GetMaxDelayMillis() { return _MaxDelayMillis; }
+    public void SetMaxDelayMillis(long value) { _MaxDelayMillis = Math.max(0, value); }
+
+    private long _PollMillis = 15 * 60 * 1000L;
+    public long GetPollMillis() { return _PollMillis; }
+    public void SetPollMillis(long value) { _PollMillis = Math.max(1000, value); }
+
+    // Channels are replaced this long before they expire
+    private long _RenewMillis = 60 * 60 * 1000L;
+    public void SetRenewMillis(long value) { _RenewMillis = value; }
+
+    private int _Port = NotificationServer.DEFAULT_PORT;
+    public int GetPort() { return _Server != null ? _Server.GetPort() : _Port; }
+    public void SetPort(int value) { _Port = value; }
+
+    private int _Parallelism = 4;
+    public void SetParallelism(int value) { _Parallelism = Math.max(1, value); }
+
+    /*
+    notifyAddress is the public HTTPS URL that reaches this daemon's endpoint, or null to only poll
+     */
+    public SchedulerDaemon(List<String> calendarIDs, int pageSize, String notifyAddress)
+    {
+        _PageSize = pageSize;
+        _NotifyAddress = notifyAddress;
+        for (var calendarID : calendarIDs) {
+            _Watches.put(calendarID, new CalendarWatch(calendarID));
+        }
+    }
+
+    public synchronized void Start() throws IOException
+    {
+        _Scheduler = new ScheduledThreadPoolExecutor(_Parallelism, r -> {
+            var thread = new Thread(r, "SimpleScheduler-daemon");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Debouncing cancels a lot of runs, and nothing still waiting should run once we stop
+        _Scheduler.setRemoveOnCancelPolicy(true);
+        _Scheduler.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        _Scheduler.setContinueExistingPeriodicTasksAfterShutdownPolicy(false);
+
+        var path = _NotifyAddress != null ? URI.create(_NotifyAddress).getPath() : null;
+        _Server = new NotificationServer(_Port, path == null || path.isEmpty() ? NotificationServer.DEFAULT_PATH : path,
+                this::Notified);
+        _Server.Start();
+        Log.Info("Listening for notifications on port %d", _Server.GetPort());
+
+        // Catch up on anything that changed while we were not running
+        for (var w : _Watches.values()) {
+            Watch(w);
+            Schedule(w);
+        }
+        _Scheduler.scheduleWithFixedDelay(this::Poll, _PollMillis, _PollMillis, TimeUnit.MILLISECONDS);
+        _Scheduler.scheduleWithFixedDelay(this::RenewChannels, 60, 60, TimeUnit.SECONDS);
+    }
+
+    /*
+    Block until Stop is called
+     */
+    public void Await() throws InterruptedException
+    {
+        _Stopped.await();
+    }
+
+    /*
+    Stop watching, letting a run already under way finish
+     */
+    public void Stop() throws InterruptedException
+    {
+        ScheduledThreadPoolExecutor scheduler;
+        List<WatchChannel> channels;
+        synchronized (this) {
+            if (_Scheduler == null)
+                return;
+            scheduler = _Scheduler;
+            _Scheduler = null;
+            scheduler.shutdown();
+            _Server.Stop();
+            channels = new ArrayList<WatchChannel>(_Channels.values());
+            _Channels.clear();
+        }
+        scheduler.awaitTermination(60, TimeUnit.SECONDS);
+        for (var channel : channels) {
+            StopChannel(channel);
+        }
+        _Stopped.countDown();
+    }
+
+    /*
+    Reprocess the calendar once it has been quiet for the debounce time
+     */
+    public synchronized void Notify(String calendarID)
+    {
+        var w = _Watches.get(calendarID);
+        if (w != null)
+            Schedule(w);
+    }
+
+    private void Notified(String channelID, String token, String resourceState)
+    {
+        var channel = _Channels.get(channelID);
+        if (channel == null || !channel.GetToken().equals(token)) {
+            Log.Warn("Ignoring notification for unknown channel or token %s", channelID);
+            return;
+        }
+        // The first message on a channel only confirms that it works
+        if ("sync".equals(resourceState))
+            return;
+        Notify(channel.GetCalendarID());
+    }
+
+    private synchronized void Schedule(CalendarWatch w)
+    {
+        if (_Scheduler == null)
+            return;
+        // Changes that arrive during a run are picked up by another run straight after it
+        if (w._Running) {
+            w._NotifiedWhileRunning = true;
+            return;
+        }
+        var now = System.nanoTime() / 1000000;
+        if (w._PendingRun == null)
+            w._FirstNotifiedMillis = now;
+        else
+            w._PendingRun.cancel(false);
+        var delay = Math.max(0, Math.min(_DebounceMillis, w._FirstNotifiedMillis + _MaxDelayMillis - now));
+        w._PendingRun = _Scheduler.schedule(() -> Run(w), delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void Run(CalendarWatch w)
+    {
+        synchronized (this) {
+            if (w._Running)
+                return;
+            w._Running = true;
+            w._PendingRun = null;
+            w._NotifiedWhileRunning = false;
+        }
+        try {
+            if (w._State == null)
+                w._State = SyncState.Load(w._CalendarID);
+            CalendarRunReport.PrintReports(List.of(SchedulingUtil.ProcessEventsIncremental(w._State, _PageSize)));
+            Metrics.Export();
+        } catch (Exception ex) {
+            // The snapshot may be ahead of what was written, so start again from the saved one
+            Log.Error("Processing %s failed: %s", w._CalendarID, ex.getMessage());
+            w._State = null;
+        } finally {
+            synchronized (this) {
+                w._Running = false;
+                if (w._NotifiedWhileRunning)
+                    Schedule(w);
+            }
+        }
+    }
+
+    private synchronized void Poll()
+    {
+        for (var w : _Watches.values()) {
+            Schedule(w);
+        }
+    }
+
+    private void Watch(CalendarWatch w)
+    {
+        if (_NotifyAddress == null)
+            return;
+        var id = UUID.randomUUID().toString();
+        try {
+            var channel = SchedulingUtil.GetBackend().Watch(w._CalendarID, id, UUID.randomUUID().toString(), _NotifyAddress);
+            _Channels.put(channel.GetID(), channel);
+            var old = w._Channel;
+            w._Channel = channel;
+            // Nothing pushes for a backend without a resource to watch, so say how to notify by hand
+            if (channel.GetResourceID() == null)
+                Log.Info("Watching %s, notify with token %s", channel, channel.GetToken());
+            else
+                Log.Info("Watching %s", channel);
+            if (old != null) {
+                _Channels.remove(old.GetID());
+                StopChannel(old);
+            }
+        } catch (Exception ex) {
+            Log.Warn("Could not watch %s, polling it instead: %s", w._CalendarID, ex.getMessage());
+        }
+    }
+
+    private void RenewChannels()
+    {
+        var now = System.currentTimeMillis();
+        for (var w : _Watches.values()) {
+            // Also try again on calendars that could not be watched before
+            var channel = w._Channel;
+            if (channel == null || (channel.GetExpirationMillis() != 0 && channel.GetExpirationMillis() - now < _RenewMillis))
+                Watch(w);
+        }
+    }
+
+    private static void StopChannel(WatchChannel channel)
+    {
+        try {
+            SchedulingUtil.GetBackend().StopWatch(channel);
+        } catch (Exception ex) {
+            Log.Warn("Could not stop watching %s: %s", channel, ex.getMessage());
+        }
+    }
+}
@@ -1,194 +1,751 @@
 package com.marksware.simplescheduler.presentation;
 
+import com.marksware.simplescheduler.models.EventMutation;
+import com.marksware.simplescheduler.models.MutationResult;
+import com.marksware.simplescheduler.models.Recurrence;
 import com.marksware.simplescheduler.models.SimpleEvent;
 
 import java.io.*;
 import java.security.GeneralSecurityException;
-import java.time.Duration;
+import java.time.DayOfWeek;
 import java.time.Instant;
-import java.time.temporal.ChronoUnit;
+import java.time.ZonedDateTime;
+import java.time.temporal.TemporalAdjusters;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class SchedulingUtil {
 
     public enum ScheduledIdentifiers { _SimpleSchedule_,
         _SimpleSchedule_Generated,
         _SimpleSchedule_OriginalStartDateTime, _SimpleSchedule_OriginalEndDateTime,
-        _SimpleSchedule_UpdatedStartDateTime, _SimpleSchedule_UpdatedEndDateTime
+        _SimpleSchedule_UpdatedStartDateTime, _SimpleSchedule_UpdatedEndDateTime,
+        _SimpleSchedule_SourceID
     };
 
+    private static final long DAY_MILLIS = 24 * 60 * 60 * 1000L;
+
+    // Per-event timings, summed over every thread that expands events
+    private static final Metrics.Timer RESTORE_TIME = Metrics.GetTimer("phase:restore");
+    private static final Metrics.Timer COMMANDS_TIME = Metrics.GetTimer("phase:commands");
+    private static final Metrics.Counter COMMAND_ERRORS = Metrics.GetCounter("errors:command");
+
+    // Threads used to expand events, one per core unless set
+    private static volatile int _ExpandParallelism = Runtime.getRuntime().availableProcessors();
+    public static int GetExpandParallelism() { return _ExpandParallelism; }
+    public static void SetExpandParallelism(int value) { _ExpandParallelism = Math.max(1, value); }
+
+    // Events read from a stream are expanded a chunk at a time, two of the smallest slices worth a thread for each
+    // thread, so what is held grows with the cores and not with the calendar, as the fetch holds only a page or two
+    private static int GetExpandChunkSize() { return _ExpandParallelism * 2 * ParallelExpansion.MIN_SLICE_SIZE; }
+
+    // Fetch recurring events once each, with only their changed instances, and expand them here instead of having
+    // Google send every instance. Off unless set.
+    private static volatile boolean _ExpandRecurrence = false;
+    public static boolean GetExpandRecurrence() { return _ExpandRecurrence; }
+    public static void SetExpandRecurrence(boolean value) { _ExpandRecurrence = value; }
+
+    // How far ahead the instances of a recurring event with a command are expanded
+    private static volatile long _RecurrenceHorizonMillis = 90 * DAY_MILLIS;
+    public static long GetRecurrenceHorizonMillis() { return _RecurrenceHorizonMillis; }
+    public static void SetRecurrenceHorizonMillis(long value) { _RecurrenceHorizonMillis = value; }
+
     public enum SchedulingCommands { _SimpleSchedule_,
-        _SimpleSchedule_SplitInHalfToNextDay
+        _SimpleSchedule_SplitInHalfToNextDay,
+        _SimpleSchedule_Split,
+        _SimpleSchedule_MoveToNextWeekday
     };
 
+    // Handlers for the commands we recognise. Further commands are added by registering them here.
+    private static final CommandRegistry _Commands = new CommandRegistry();
+    public static CommandRegistry GetCommands() { return _Commands; }
+
+    static {
+        _Commands.Register(SchedulingCommands._SimpleSchedule_SplitInHalfToNextDay.toString(),
+                (calendarID, e, command, outPlan) -> Split(e, 2, outPlan));
+        _Commands.Register(SchedulingCommands._SimpleSchedule_Split.toString(),
+                (calendarID, e, command, outPlan) -> Split(e, command.GetIntArgument(0, 2), outPlan));
+        _Commands.Register(SchedulingCommands._SimpleSchedule_MoveToNextWeekday.toString(),
+                (calendarID, e, command, outPlan) -> MoveToNextWeekday(e, command.GetArgument(0), outPlan.GetUpdateEvents()));
+    }
 
-    private static void ApplySchedulingCommands(String calendarID, List<SimpleEvent> inEvents,
+    static void ApplySchedulingCommands(String calendarID, SimpleEvent e,
                                                 List<SimpleEvent> outAddEvents, List<SimpleEvent> outDeleteEvents, List<SimpleEvent> outUpdateEvents) {
-        // Get list of events to add
-        for (var e : inEvents) {
-
-            // Command processing
-            // Split an event into two equal parts and add the second part to the next day
-            if (e.GetDescription().contains(SchedulingCommands._SimpleSchedule_SplitInHalfToNextDay.toString())) {
-                System.out.printf("Processing command (%s) for appointment...\n", SchedulingCommands._SimpleSchedule_SplitInHalfToNextDay.toString());
-                e.PrintEvent();
-
-                // Half the time of the current event and add a copy to the next day
-                var addEvent = new SimpleEvent(e);
-                var instant = addEvent.GetStartDateTime();
-                instant = instant.plus(1, ChronoUnit.DAYS);
-                var start = addEvent.GetStartDateTime();
-                var end = addEvent.GetEndDateTime();
-                var diff = Duration.between(start, end);
-                var seconds = diff.toSeconds() / 2;
-                addEvent.SetStartDateTime(instant);
-                addEvent.SetEndDateTime(instant.plus(seconds, ChronoUnit.SECONDS));
-                outAddEvents.add(addEvent);
-
-                // Update the current event to be half the time
-                var updateEvent = new SimpleEvent(e);
-                start = updateEvent.GetStartDateTime();
-                end = updateEvent.GetEndDateTime();
-                diff = Duration.between(start, end);
-                seconds = diff.toSeconds() / 2;
-                updateEvent.SetEndDateTime(start.plus(seconds, ChronoUnit.SECONDS));
-                outUpdateEvents.add(updateEvent);
+        ApplySchedulingCommands(calendarID, e, new EventPlan(calendarID, outAddEvents, outDeleteEvents, outUpdateEvents));
+    }
+
+    /*
+    Run every command found in the event's description.
+    Commands run in the order they appear, and if two of them update the event the later one wins.
+     */
+    static void ApplySchedulingCommands(String calendarID, SimpleEvent e, EventPlan outPlan) {
+        for (var command : _Commands.Parse(e.GetDescription())) {
+            if (Log.IsEnabled(Log.Level.Debug))
+                Log.Debug("Processing command (%s) for appointment...\n%s", command, Log.Event(e));
+            var entry = _Commands.GetEntry(command.GetName());
+            entry.GetCounter().Increment();
+            var started = System.nanoTime();
+            try {
+                entry.GetHandler().Apply(calendarID, e, command, outPlan);
+            } catch (IllegalArgumentException ex) {
+                COMMAND_ERRORS.Increment();
+                Log.Warn("Skipping command (%s): %s", command, ex.getMessage());
+            }
+            var elapsed = System.nanoTime() - started;
+            entry.GetTimer().Record(elapsed);
+            COMMANDS_TIME.Record(elapsed);
+        }
+    }
+
+    // Split an event into equal parts, keeping the first part in place.
+    // Each further part goes a day after the one before, or the first free slot after that.
+    private static void Split(SimpleEvent e, int parts, EventPlan outPlan)
+    {
+        if (parts < 2 || parts > 31)
+            throw new IllegalArgumentException(String.format("Can't split into %d parts", parts));
+
+        var start = e.GetStartMillis();
+        var partMillis = (e.GetEndMillis() - start) / 1000 / parts * 1000;
+        for (int part = 1; part < parts; part++) {
+            var addEvent = new SimpleEvent(e);
+            var partStart = start + part * DAY_MILLIS;
+            addEvent.SetStartMillis(partStart);
+            addEvent.SetEndMillis(partStart + partMillis);
+            outPlan.GetAddEvents().add(addEvent);
+            outPlan.GetFloatingEvents().add(addEvent);
+        }
+
+        // Update the current event to be the first part
+        var updateEvent = new SimpleEvent(e);
+        updateEvent.SetEndMillis(start + partMillis);
+        outPlan.GetUpdateEvents().add(updateEvent);
+    }
+
+    // Move an event to the same time on the next working day, or on the next given day of the week.
+    // Days are counted where the event happens, not where the scheduler runs.
+    private static void MoveToNextWeekday(SimpleEvent e, String day, List<SimpleEvent> outUpdateEvents)
+    {
+        var start = Instant.ofEpochMilli(e.GetStartMillis()).atZone(e.GetZone());
+        ZonedDateTime moved;
+        if (day != null) {
+            moved = start.with(TemporalAdjusters.next(ParseDayOfWeek(day)));
+        } else {
+            moved = start.plusDays(1);
+            while (moved.getDayOfWeek() == DayOfWeek.SATURDAY || moved.getDayOfWeek() == DayOfWeek.SUNDAY) {
+                moved = moved.plusDays(1);
+            }
+        }
+
+        var updateEvent = new SimpleEvent(e);
+        var movedStart = moved.toInstant().toEpochMilli();
+        var shift = moved.getOffset().getTotalSeconds() / 60;
+        updateEvent.SetStartMillis(movedStart, shift);
+        updateEvent.SetEndMillis(movedStart + e.GetEndMillis() - e.GetStartMillis(), shift);
+        outUpdateEvents.add(updateEvent);
+    }
+
+    // Accepts MONDAY, MON or MO in any case
+    private static DayOfWeek ParseDayOfWeek(String day)
+    {
+        var prefix = day.trim().toUpperCase();
+        if (prefix.length() >= 2) {
+            for (var d : DayOfWeek.values()) {
+                if (d.name().startsWith(prefix))
+                    return d;
             }
         }
+        throw new IllegalArgumentException(String.format("'%s' is not a day of the week", day));
     }
 
     /*
-    Expand one or more events into the those that need to be added, deleted and updated
+    Expand one or more events into the those that need to be added, deleted and updated.
+    Events are consumed one at a time so only the expanded results are kept in memory.
+    Returns the number of events consumed.
      */
-    public static void ExpandEvents(String calendarID, List<SimpleEvent> inEvents,
-                                    List<SimpleEvent> outAddEvents, List<SimpleEvent> outDeleteEvents, List<SimpleEvent> outUpdateEvents)
+    public static int ExpandEvents(String calendarID, Iterator<SimpleEvent> inEvents,
+                                   List<SimpleEvent> outAddEvents, List<SimpleEvent> outDeleteEvents, List<SimpleEvent> outUpdateEvents)
             throws IOException, GeneralSecurityException {
+        return ExpandEvents(calendarID, inEvents, new EventPlan(calendarID, outAddEvents, outDeleteEvents, outUpdateEvents));
+    }
 
-        // Restore calendar to original state
-        RestoreCalendar(calendarID, inEvents, outAddEvents, outDeleteEvents, outUpdateEvents);
+    public static int ExpandEvents(String calendarID, Iterator<SimpleEvent> inEvents, EventPlan outPlan)
+            throws IOException, GeneralSecurityException {
 
-        // Apply any scheduling commands found
-        ApplySchedulingCommands(calendarID, inEvents, outAddEvents, outDeleteEvents, outUpdateEvents);
+        // Expand a chunk at a time across cores, so memory stays bounded while the fetch streams in
+        int count = 0;
+        long fetchNanos = 0;
+        var chunkSize = GetExpandChunkSize();
+        var chunk = new ArrayList<SimpleEvent>(chunkSize);
+        var recurring = new ArrayList<SimpleEvent>();
+        var fetchStarted = System.nanoTime();
+        while (inEvents.hasNext()) {
+            var e = inEvents.next();
+            count++;
+            // Recurring events wait until every changed instance has been seen
+            if (e.IsRecurring()) {
+                recurring.add(e);
+            } else {
+                if (e.GetRecurringEventID() != null)
+                    outPlan.AddException(e);
+                if (!e.IsCancelled())
+                    chunk.add(e);
+            }
+            if (chunk.size() == chunkSize || (!inEvents.hasNext() && !chunk.isEmpty())) {
+                fetchNanos += System.nanoTime() - fetchStarted;
+                ExpandEvents(calendarID, chunk, outPlan);
+                chunk.clear();
+                fetchStarted = System.nanoTime();
+            }
+        }
+        // Time spent waiting on pages, which overlaps with expanding when pages arrive faster than they're used
+        Metrics.Time("phase:fetch", fetchNanos + System.nanoTime() - fetchStarted);
+        ExpandRecurringEvents(calendarID, recurring, outPlan);
+        return count;
     }
 
-    private static void RestoreCalendar(String calendarID, List<SimpleEvent> inEvents,
-            List<SimpleEvent> outAddEvents, List<SimpleEvent> outDeleteEvents, List<SimpleEvent> outUpdateEvents) {
-        // Remove all events that we've generated
-        for (var e : inEvents) {
-            for (var p : e.GetExtendedProperties().entrySet()) {
-                if (p.getKey().contains(ScheduledIdentifiers._SimpleSchedule_Generated.toString())) {
-                    outDeleteEvents.add(e);
-                    break;
+    /*
+    Recurring events are only expanded as far as they need to be. The instances of one with a command, from a year ago
+    up to the recurrence horizon, are expanded like single events and written back as instances of their own.
+    One without a command stays whole in the plan, and placement works out its instances only where it looks for time.
+     */
+    private static void ExpandRecurringEvents(String calendarID, List<SimpleEvent> recurring, EventPlan outPlan)
+    {
+        var now = System.currentTimeMillis();
+        var chunkSize = GetExpandChunkSize();
+        var instances = new ArrayList<SimpleEvent>();
+        for (var e : recurring) {
+            if (!HasCommand(e)) {
+                outPlan.GetRecurringEvents().add(e);
+                continue;
+            }
+            try {
+                Recurrence.Instances(e, now - 365 * DAY_MILLIS, now + _RecurrenceHorizonMillis, outPlan.GetExceptions(e.GetID()))
+                        .forEachRemaining(instances::add);
+            } catch (IllegalArgumentException ex) {
+                Log.Warn("Leaving recurring event [%s] alone: %s", e.GetSummary(), ex.getMessage());
+                continue;
+            }
+            if (instances.size() >= chunkSize) {
+                ExpandEvents(calendarID, instances, outPlan);
+                instances.clear();
+            }
+        }
+        if (!instances.isEmpty())
+            ExpandEvents(calendarID, instances, outPlan);
+    }
+
+    // Instances of recurring events without commands that overlap from to to, as busy time
+    private static void AddRecurringBusyTimes(EventPlan plan, long from, long to, BusyTimes outBusy)
+    {
+        for (var e : plan.GetRecurringEvents()) {
+            try {
+                var instances = Recurrence.Instances(e, from, to, plan.GetExceptions(e.GetID()));
+                while (instances.hasNext()) {
+                    outBusy.Add(instances.next());
                 }
+            } catch (IllegalArgumentException ex) {
+                Log.Warn("Not counting the time of recurring event [%s]: %s", e.GetSummary(), ex.getMessage());
             }
         }
-        for (var e : outDeleteEvents) {
-            inEvents.remove(e);
+    }
+
+    /*
+    Expand a list of events, spread across cores. The events themselves are left unchanged.
+     */
+    public static void ExpandEvents(String calendarID, List<SimpleEvent> inEvents, EventPlan outPlan) {
+        ParallelExpansion.Run(calendarID, inEvents.size(), _ExpandParallelism, (from, to, slicePlan) -> {
+            for (int i = from; i < to; i++) {
+                ExpandEvent(calendarID, inEvents.get(i), slicePlan);
+            }
+        }, outPlan);
+    }
+
+    /*
+    Expand a single event into the plan without changing the event
+     */
+    static void ExpandEvent(String calendarID, SimpleEvent e, EventPlan outPlan) {
+        // Restore event to original state
+        var restored = RestoreEvent(calendarID, e, outPlan);
+        if (restored != null) {
+            // Apply any scheduling commands found
+            ApplySchedulingCommands(calendarID, restored, outPlan);
         }
+    }
 
-        // Restore all non-generated SimpleSchedule appointments to their original state
-        for (var e : inEvents) {
-            boolean hasCommand = e.GetDescription().contains(SchedulingCommands._SimpleSchedule_.toString());
+    private static long GetMarker(Map<String, String> props, ScheduledIdentifiers marker, long defaultValue)
+    {
+        var value = props.get(marker.toString());
+        return value != null ? SimpleEvent.StringToMillis(value) : defaultValue;
+    }
 
-            if (hasCommand) {
-                var ssOriginalStart = e.GetStartDateTime();
-                var ssOriginalEnd = e.GetEndDateTime();
-                var ssUpdatedStart = e.GetStartDateTime();
-                var ssUpdatedEnd = e.GetEndDateTime();
+    public static boolean IsGenerated(SimpleEvent e)
+    {
+        return e.GetExtendedProperties().containsKey(ScheduledIdentifiers._SimpleSchedule_Generated.toString());
+    }
 
-                for (var p : e.GetExtendedProperties().entrySet()) {
-                    var key = p.getKey();
-                    if (key.contains(ScheduledIdentifiers._SimpleSchedule_OriginalStartDateTime.toString())) {
-                        ssOriginalStart = SimpleEvent.StringToInstant(p.getValue().toString());
-                    } else if (key.contains(ScheduledIdentifiers._SimpleSchedule_OriginalEndDateTime.toString())) {
-                        ssOriginalEnd = SimpleEvent.StringToInstant(p.getValue().toString());
-                    } else if (key.contains(ScheduledIdentifiers._SimpleSchedule_UpdatedStartDateTime.toString())) {
-                        ssUpdatedStart = SimpleEvent.StringToInstant(p.getValue().toString());
-                    } else if (key.contains(ScheduledIdentifiers._SimpleSchedule_UpdatedEndDateTime.toString())) {
-                        ssUpdatedEnd = SimpleEvent.StringToInstant(p.getValue().toString());
-                    }
-                }
+    public static boolean HasCommand(SimpleEvent e)
+    {
+        return e.GetDescription().contains(SchedulingCommands._SimpleSchedule_.toString());
+    }
 
-                var start = e.GetStartDateTime();
-                var end = e.GetEndDateTime();
-                if (start.equals(ssUpdatedStart) && end.equals(ssUpdatedEnd)) {
-                    start = ssOriginalStart;
-                    end = ssOriginalEnd;
-                } else {
-                    ssOriginalStart = start;
-                    ssUpdatedStart = start;
-                    ssOriginalEnd = end;
-                    ssUpdatedEnd = end;
+    /*
+    Expand a columnar store of events. Only the generated events and those with commands are turned back into
+    SimpleEvents, the rest are skipped through the store's flyweight view.
+    Recurring events are expanded after the rest, as when reading a stream, once every changed instance has been seen.
+    Returns the number of events in the store.
+     */
+    public static int ExpandEvents(String calendarID, EventStore inEvents, EventPlan outPlan) {
+        ParallelExpansion.Run(calendarID, inEvents.Size(), _ExpandParallelism, (from, to, slicePlan) -> {
+            var view = inEvents.NewView();
+            for (int i = from; i < to; i++) {
+                view.At(i);
+                if (view.IsRecurring())
+                    continue;
+                if (view.GetRecurringEventID() != null)
+                    slicePlan.AddException(view.GetRecurringEventID(), view.GetOriginalStartMillis());
+                if (view.IsGenerated()) {
+                    // Remove all events that we've generated
+                    slicePlan.GetDeleteEvents().add(view.ToSimpleEvent());
+                } else if (view.HasCommand()) {
+                    ExpandEvent(calendarID, view.ToSimpleEvent(), slicePlan);
+                } else if (!view.IsCancelled()) {
+                    slicePlan.GetBusyTimes().Add(view.GetStartMillis(), view.GetEndMillis());
                 }
+            }
+        }, outPlan);
+
+        var recurring = new ArrayList<SimpleEvent>();
+        for (var view : inEvents.Views()) {
+            if (view.IsRecurring())
+                recurring.add(view.ToSimpleEvent());
+        }
+        ExpandRecurringEvents(calendarID, recurring, outPlan);
+        return inEvents.Size();
+    }
+
+    /*
+    Returns a copy of the event restored to its original state, the event itself if it has no commands,
+    or null if it was generated by us and is to be deleted. The given event is not changed.
+     */
+    static SimpleEvent RestoreEvent(String calendarID, SimpleEvent e, EventPlan outPlan) {
+        // Remove all events that we've generated
+        if (IsGenerated(e)) {
+            outPlan.GetDeleteEvents().add(e);
+            return null;
+        }
+        if (!HasCommand(e)) {
+            outPlan.GetBusyTimes().Add(e);
+            return e;
+        }
+
+        // Restore all non-generated SimpleSchedule appointments to their original state,
+        // keeping the event as fetched so unchanged updates can be skipped
+        var started = System.nanoTime();
+        outPlan.PutFetchedEvent(e);
+        var restored = new SimpleEvent(e);
+        var props = restored.GetExtendedProperties();
+        var start = e.GetStartMillis();
+        var end = e.GetEndMillis();
+        var ssUpdatedStart = GetMarker(props, ScheduledIdentifiers._SimpleSchedule_UpdatedStartDateTime, start);
+        var ssUpdatedEnd = GetMarker(props, ScheduledIdentifiers._SimpleSchedule_UpdatedEndDateTime, end);
+
+        // Only go back to the original times if the user hasn't moved the event since we updated it.
+        // The offsets are kept, commands without a time zone count days at them.
+        if (start == ssUpdatedStart && end == ssUpdatedEnd) {
+            restored.SetStartMillis(GetMarker(props, ScheduledIdentifiers._SimpleSchedule_OriginalStartDateTime, start), e.GetStartTimeZoneShift());
+            restored.SetEndMillis(GetMarker(props, ScheduledIdentifiers._SimpleSchedule_OriginalEndDateTime, end), e.GetEndTimeZoneShift());
+            props.put(ScheduledIdentifiers._SimpleSchedule_OriginalStartDateTime.toString(), restored.GetStartRfc3339());
+            props.put(ScheduledIdentifiers._SimpleSchedule_OriginalEndDateTime.toString(), restored.GetEndRfc3339());
+            props.put(ScheduledIdentifiers._SimpleSchedule_UpdatedStartDateTime.toString(), SimpleEvent.FormatRfc3339(ssUpdatedStart));
+            props.put(ScheduledIdentifiers._SimpleSchedule_UpdatedEndDateTime.toString(), SimpleEvent.FormatRfc3339(ssUpdatedEnd));
+        } else {
+            props.put(ScheduledIdentifiers._SimpleSchedule_OriginalStartDateTime.toString(), restored.GetStartRfc3339());
+            props.put(ScheduledIdentifiers._SimpleSchedule_OriginalEndDateTime.toString(), restored.GetEndRfc3339());
+            props.put(ScheduledIdentifiers._SimpleSchedule_UpdatedStartDateTime.toString(), restored.GetStartRfc3339());
+            props.put(ScheduledIdentifiers._SimpleSchedule_UpdatedEndDateTime.toString(), restored.GetEndRfc3339());
+        }
+        outPlan.GetUpdateEvents().add(new SimpleEvent(restored));
+        outPlan.GetBusyTimes().Add(restored);
+        RESTORE_TIME.RecordSince(started);
+        return restored;
+    }
+
+    // All reads and writes go through the backend, which is the live Google Calendar unless replaced
+    private static volatile CalendarBackend _Backend = new GoogleCalendarBackend();
+    public static CalendarBackend GetBackend() { return _Backend; }
+    public static void SetBackend(CalendarBackend value) { _Backend = value; }
+
+    // When set, floating events are only placed inside these hours
+    private static volatile FreeSlotFinder.WorkingHours _WorkingHours = null;
+    public static FreeSlotFinder.WorkingHours GetWorkingHours() { return _WorkingHours; }
+    public static void SetWorkingHours(FreeSlotFinder.WorkingHours value) { _WorkingHours = value; }
+
+    // Other calendars whose busy time floating events should also avoid, looked up with freeBusy
+    private static volatile List<String> _BusyCalendarIDs = new ArrayList<String>();
+    public static List<String> GetBusyCalendarIDs() { return _BusyCalendarIDs; }
+    public static void SetBusyCalendarIDs(List<String> value) { _BusyCalendarIDs = value; }
+
+    // How far past its intended start a floating event may be moved
+    private static final long PLACEMENT_HORIZON_MILLIS = 62 * DAY_MILLIS;
+
+    /*
+    Move each floating event in the plan to the earliest free slot at or after its start.
+    Floating events are placed in start order and each one takes its slot, so they don't overlap each other either.
+    One that can't be placed within the horizon keeps its start.
+     */
+    static void PlaceEvents(EventPlan plan) throws IOException, GeneralSecurityException {
+        var floating = new ArrayList<SimpleEvent>(plan.GetFloatingEvents());
+        if (floating.isEmpty())
+            return;
+        floating.sort(Comparator.comparingLong(SimpleEvent::GetStartMillis));
 
-                e.SetStartDateTime(start);
-                e.SetEndDateTime(end);
+        long from = floating.get(0).GetStartMillis();
+        long to = floating.get(floating.size() - 1).GetStartMillis() + PLACEMENT_HORIZON_MILLIS;
+        var busy = new BusyTimes();
+        busy.AddAll(plan.GetBusyTimes());
+        AddRecurringBusyTimes(plan, from, to, busy);
+        // The events being updated end up at their updated times
+        for (var e : plan.GetUpdateEvents()) {
+            busy.Add(e);
+        }
+        var otherCalendarIDs = new ArrayList<String>(_BusyCalendarIDs);
+        otherCalendarIDs.remove(plan.GetCalendarID());
+        if (!otherCalendarIDs.isEmpty())
+            busy.AddAll(_Backend.GetBusyTimes(otherCalendarIDs, from, to));
 
-                var props = e.GetExtendedProperties();
-                props.put(ScheduledIdentifiers._SimpleSchedule_OriginalStartDateTime.toString(),
-                        SimpleEvent.InstantToGoogleDateTime(ssOriginalStart).toStringRfc3339());
-                props.put(ScheduledIdentifiers._SimpleSchedule_OriginalEndDateTime.toString(),
-                        SimpleEvent.InstantToGoogleDateTime(ssOriginalEnd).toStringRfc3339());
-                props.put(ScheduledIdentifiers._SimpleSchedule_UpdatedStartDateTime.toString(),
-                        SimpleEvent.InstantToGoogleDateTime(ssUpdatedStart).toStringRfc3339());
-                props.put(ScheduledIdentifiers._SimpleSchedule_UpdatedEndDateTime.toString(),
-                        SimpleEvent.InstantToGoogleDateTime(ssUpdatedEnd).toStringRfc3339());
-                var newEvent = new SimpleEvent(e);
-                outUpdateEvents.add(newEvent);
+        var finder = new FreeSlotFinder(busy, from, to, _WorkingHours);
+        int unplaced = 0;
+        for (var e : floating) {
+            var duration = e.GetEndMillis() - e.GetStartMillis();
+            var start = finder.Place(e.GetStartMillis(), duration);
+            if (start == SimpleEvent.NO_TIME) {
+                Log.Debug("No free time for [%s] after %s, leaving it there", e.GetSummary(), e.GetStartRfc3339());
+                unplaced++;
+                continue;
             }
+            e.SetStartMillis(start);
+            e.SetEndMillis(start + duration);
         }
+        Log.Info("Placed %d events in free time, %d had none and stay where they were", floating.size() - unplaced, unplaced);
+        plan.GetFloatingEvents().clear();
     }
 
-    public static void DeleteEvents(String calendarID, List<SimpleEvent> deleteEvents)
+    private static MutationPipeline _Pipeline = new MutationPipeline(mutations -> _Backend.ExecuteBatch(mutations));
+    public static MutationPipeline GetPipeline() { return _Pipeline; }
+    public static void SetPipeline(MutationPipeline value) { _Pipeline = value; }
+
+    private static List<MutationResult> ExecuteMutations(List<EventMutation> mutations)
             throws IOException, GeneralSecurityException {
+        var results = _Pipeline.Execute(mutations);
+        for (var r : results) {
+            if (!r.IsSuccess()) {
+                Log.Warn("Failed to %s [%s] after %d attempt(s): %d %s", r.GetMutation().GetOperation().toString().toLowerCase(),
+                        r.GetMutation().GetEvent().GetSummary(), r.GetAttempts(), r.GetStatusCode(), r.GetMessage());
+            }
+        }
+        return results;
+    }
 
-        System.out.printf("\n--- Deleting ---\n");
-        for (var e : deleteEvents) {
-            e.PrintEvent();
-            GoogleUtil.DeleteEvent(e);
+    // Store the updated start and end times so we can tell if the user has manually modified them
+    static void MarkUpdated(SimpleEvent e)
+    {
+        var props = e.GetExtendedProperties();
+        props.put(ScheduledIdentifiers._SimpleSchedule_UpdatedStartDateTime.toString(), e.GetStartRfc3339());
+        props.put(ScheduledIdentifiers._SimpleSchedule_UpdatedEndDateTime.toString(), e.GetEndRfc3339());
+    }
+
+    // Mark all added events as generated, remembering which event they came from.
+    // The restore markers copied from the source event are dropped so they don't make an unchanged event look different.
+    static void MarkGenerated(SimpleEvent e)
+    {
+        var props = e.GetExtendedProperties();
+        props.remove(ScheduledIdentifiers._SimpleSchedule_OriginalStartDateTime.toString());
+        props.remove(ScheduledIdentifiers._SimpleSchedule_OriginalEndDateTime.toString());
+        props.remove(ScheduledIdentifiers._SimpleSchedule_UpdatedStartDateTime.toString());
+        props.remove(ScheduledIdentifiers._SimpleSchedule_UpdatedEndDateTime.toString());
+        props.put(ScheduledIdentifiers._SimpleSchedule_Generated.toString(), "");
+        if (e.GetID() != null)
+            props.put(ScheduledIdentifiers._SimpleSchedule_SourceID.toString(), e.GetID());
+        // An event generated from one instance of a recurring event is a single event of its own
+        e.SetRecurrence(null);
+        e.SetRecurringEventID(null);
+        e.SetOriginalStartMillis(SimpleEvent.NO_TIME);
+    }
+
+    // One line for the run, and every event at debug level
+    private static void LogMutations(List<EventMutation> mutations)
+    {
+        var counts = new int[EventMutation.Operation.values().length];
+        EventMutation.Operation section = null;
+        for (var m : mutations) {
+            counts[m.GetOperation().ordinal()]++;
+            if (!Log.IsEnabled(Log.Level.Debug))
+                continue;
+            if (m.GetOperation() != section) {
+                section = m.GetOperation();
+                switch (section) {
+                    case Delete: Log.Debug("--- Deleting ---"); break;
+                    case Update: Log.Debug("--- Updating ---"); break;
+                    case Add: Log.Debug("--- Adding ---"); break;
+                }
+            }
+            Log.Debug("%s", Log.Event(m.GetEvent()));
         }
+        Log.Info("Writing %d deletes, %d updates and %d adds", counts[EventMutation.Operation.Delete.ordinal()],
+                counts[EventMutation.Operation.Update.ordinal()], counts[EventMutation.Operation.Add.ordinal()]);
+    }
+
+    public static List<MutationResult> DeleteEvents(String calendarID, List<SimpleEvent> deleteEvents)
+            throws IOException, GeneralSecurityException {
+        return ApplyPlan(new EventPlan(calendarID, new ArrayList<SimpleEvent>(), deleteEvents, new ArrayList<SimpleEvent>()));
+    }
+
+    public static List<MutationResult> UpdateEvents(String calendarID, List<SimpleEvent> updateEvents)
+            throws IOException, GeneralSecurityException {
+        return ApplyPlan(new EventPlan(calendarID, new ArrayList<SimpleEvent>(), new ArrayList<SimpleEvent>(), updateEvents));
+    }
+
+    public static List<MutationResult> AddEvents(String calendarID, List<SimpleEvent> addEvents)
+            throws IOException, GeneralSecurityException {
+        return ApplyPlan(new EventPlan(calendarID, addEvents, new ArrayList<SimpleEvent>(), new ArrayList<SimpleEvent>()));
     }
 
-    public static void UpdateEvents(String calendarID, List<SimpleEvent> updateEvents)
+    /*
+    Write only the real changes in the plan, in one pass through the pipeline
+     */
+    public static List<MutationResult> ApplyPlan(EventPlan plan)
+            throws IOException, GeneralSecurityException {
+        var mutations = PlaceAndPlan(plan);
+        return Metrics.Time("phase:apply", () -> ApplyMutations(mutations));
+    }
+
+    private static List<EventMutation> PlaceAndPlan(EventPlan plan)
+            throws IOException, GeneralSecurityException {
+        Metrics.Time("phase:place", () -> PlaceEvents(plan));
+        return Metrics.Time("phase:plan", () -> UpdatePlanner.Plan(plan));
+    }
+
+    /*
+    Execute already planned mutations as they are, such as a plan saved by a dry run
+     */
+    public static List<MutationResult> ApplyMutations(List<EventMutation> mutations)
             throws IOException, GeneralSecurityException {
+        LogMutations(mutations);
+        return ExecuteMutations(mutations);
+    }
+
+    /*
+    Every event a full run processes, with recurring events whole when ExpandRecurrence is set
+     */
+    public static Iterator<SimpleEvent> GetEvents(String calendarID, int pageSize) throws IOException, GeneralSecurityException
+    {
+        return _ExpandRecurrence ? _Backend.GetRecurringEvents(calendarID, pageSize) : _Backend.GetEvents(calendarID, pageSize);
+    }
 
-        System.out.printf("\n--- Updating ---\n");
-        for (var e : updateEvents) {
+    /*
+    Expand and plan the events without writing anything
+     */
+    public static List<EventMutation> PlanEvents(String calendarID, Iterator<SimpleEvent> inEvents)
+            throws IOException, GeneralSecurityException {
+        var plan = new EventPlan(calendarID);
+        Metrics.Time("phase:expand", () -> ExpandEvents(calendarID, inEvents, plan));
+        return PlaceAndPlan(plan);
+    }
 
-            // Store the updated start and end times so we can tell if the user has manually modified them
-            var props = e.GetExtendedProperties();
-            props.put(ScheduledIdentifiers._SimpleSchedule_UpdatedStartDateTime.toString(), e.GetGoogleStartDateTime().toStringRfc3339());
-            props.put(ScheduledIdentifiers._SimpleSchedule_UpdatedEndDateTime.toString(), e.GetGoogleEndDateTime().toStringRfc3339());
-            e.PrintEvent();
-            GoogleUtil.UpdateEvent(e);
+    public static CalendarRunReport ProcessEvents(String calendarID, Iterator<SimpleEvent> inEvents)
+            throws IOException, GeneralSecurityException {
+            var report = new CalendarRunReport(calendarID);
+            var plan = new EventPlan(calendarID);
+
+            var started = System.nanoTime();
+            report.SetFetchedEvents(Metrics.Time("phase:expand", () -> ExpandEvents(calendarID, inEvents, plan)));
+            var expanded = System.nanoTime();
+            report.AddResults(ApplyPlan(plan));
+            report.SetFetchMillis((expanded - started) / 1000000);
+            report.SetApplyMillis((System.nanoTime() - expanded) / 1000000);
+            return report;
+    }
+
+    /*
+    Process several calendars at once, sharing one Calendar service, with at most parallelism calendars in progress.
+    A failure on one calendar is recorded in its report and does not stop the others.
+     */
+    public static List<CalendarRunReport> ProcessCalendars(List<String> calendarIDs, int pageSize, int parallelism,
+                                                           boolean incremental) throws IOException {
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, parallelism), r -> {
+            var thread = new Thread(r, "SimpleScheduler-calendar");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            var futures = new ArrayList<Future<CalendarRunReport>>();
+            for (var calendarID : calendarIDs) {
+                futures.add(pool.submit(() -> {
+                    try {
+                        if (incremental)
+                            return ProcessEventsIncremental(calendarID, pageSize);
+                        return ProcessEvents(calendarID, GetEvents(calendarID, pageSize));
+                    } catch (Exception ex) {
+                        var report = new CalendarRunReport(calendarID);
+                        report.SetError(ex.getMessage());
+                        return report;
+                    }
+                }));
+            }
+
+            var reports = new ArrayList<CalendarRunReport>();
+            for (var f : futures) {
+                try {
+                    reports.add(f.get());
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while processing calendars", ex);
+                } catch (ExecutionException ex) {
+                    throw new IOException(ex.getCause());
+                }
+            }
+            return reports;
+        } finally {
+            pool.shutdownNow();
         }
     }
 
-    public static void AddEvents(String calendarID, List<SimpleEvent> addEvents)
+    /*
+    Fetch only what changed since the last run and re-expand only the changed events.
+    The first run, or a run after the sync token expires, does a full sync and behaves like ProcessEvents.
+     */
+    public static CalendarRunReport ProcessEventsIncremental(String calendarID, int pageSize)
+            throws IOException, GeneralSecurityException {
+        return ProcessEventsIncremental(SyncState.Load(calendarID), pageSize);
+    }
+
+    /*
+    As above, from a snapshot already in memory, such as one a daemon keeps between runs.
+    The snapshot is brought up to date and saved.
+     */
+    public static CalendarRunReport ProcessEventsIncremental(SyncState state, int pageSize)
             throws IOException, GeneralSecurityException {
-        System.out.printf("\n--- Adding ---\n");
-        for (var e : addEvents) {
+        var calendarID = state.GetCalendarID();
+        var report = new CalendarRunReport(calendarID);
+        var started = System.nanoTime();
+        var changedEvents = new ArrayList<SimpleEvent>();
+        var removedEvents = new ArrayList<SimpleEvent>();
+        boolean fullSync = state.GetSyncToken() == null;
 
-            // Mark all added events as generated
-            var props = e.GetExtendedProperties();
-            props.put(ScheduledIdentifiers._SimpleSchedule_Generated.toString(), "");
-            e.PrintEvent();
-            GoogleUtil.AddEvent(e);
-            System.out.printf("\n");
+        if (!fullSync) {
+            try {
+                CollectChanges(state, _Backend.GetEventChanges(calendarID, state.GetSyncToken(), pageSize), false,
+                        changedEvents, removedEvents);
+            } catch (UncheckedIOException ex) {
+                if (!_Backend.IsSyncTokenExpired(ex))
+                    throw ex;
+                Log.Warn("Sync token expired, doing a full sync...");
+                Metrics.Count("errors:sync_token_expired");
+                fullSync = true;
+            }
         }
+        if (fullSync) {
+            state.Clear();
+            changedEvents.clear();
+            removedEvents.clear();
+            CollectChanges(state, _Backend.GetEventChanges(calendarID, null, pageSize), true,
+                    changedEvents, removedEvents);
+        }
+        Log.Info("%d changed and %d removed events (%s sync)", changedEvents.size(), removedEvents.size(),
+                fullSync ? "full" : "incremental");
+        Metrics.Count(fullSync ? "syncs:full" : "syncs:incremental");
+
+        var plan = new EventPlan(calendarID);
+        // Only changed events are expanded, so the rest of the calendar's busy time comes from the snapshot
+        state.AddBusyTimes(plan.GetBusyTimes());
+
+        // Keep to the same window as a full run
+        var minTime = System.currentTimeMillis() - 365 * DAY_MILLIS;
+        var expandEvents = new ArrayList<SimpleEvent>();
+        for (var e : changedEvents) {
+            if (e.GetEndMillis() == SimpleEvent.NO_TIME || e.GetEndMillis() >= minTime)
+                expandEvents.add(e);
+        }
+
+        if (!fullSync) {
+            // Generated events are only ever removed along with the event they were generated from
+            expandEvents.removeIf(SchedulingUtil::IsGenerated);
+            for (var e : expandEvents) {
+                plan.GetDeleteEvents().addAll(state.GetGenerated(e.GetID()));
+            }
+            for (var e : removedEvents) {
+                plan.GetDeleteEvents().addAll(state.GetGenerated(e.GetID()));
+            }
+        }
+
+        // Expand from a store, which hands out fresh events so the snapshot keeps what was fetched
+        var store = new EventStore(expandEvents.size());
+        for (var e : expandEvents) {
+            store.Put(e);
+        }
+        report.SetFetchedEvents(Metrics.Time("phase:expand", () -> ExpandEvents(calendarID, store, plan)));
+        var expanded = System.nanoTime();
+        var results = ApplyPlan(plan);
+        report.AddResults(results);
+
+        // Record our own writes so they are not mistaken for user changes on the next run
+        RecordResults(state, results);
+        state.Save();
+        report.SetFetchMillis((expanded - started) / 1000000);
+        report.SetApplyMillis((System.nanoTime() - expanded) / 1000000);
+        return report;
     }
 
-    public static void ProcessEvents(String calendarID, List<SimpleEvent> inEvents)
+    private static void RecordResults(SyncState state, List<MutationResult> results)
+    {
+        for (var r : results) {
+            if (!r.IsSuccess())
+                continue;
+            var e = r.GetMutation().GetEvent();
+            switch (r.GetMutation().GetOperation()) {
+                case Delete:
+                    state.Remove(e.GetID());
+                    break;
+                case Update:
+                    state.Put(e);
+                    break;
+                case Add:
+                    var added = new SimpleEvent(e);
+                    added.SetID(r.GetResultID());
+                    state.Put(added);
+                    break;
+            }
+        }
+    }
+
+    private static void CollectChanges(SyncState state, SyncIterator changes, boolean fullSync,
+                                       List<SimpleEvent> outChangedEvents, List<SimpleEvent> outRemovedEvents)
             throws IOException, GeneralSecurityException {
-            var outAddEvents = new ArrayList<SimpleEvent>();
-            var outDeleteEvents = new ArrayList<SimpleEvent>();
-            var outUpdateEvents = new ArrayList<SimpleEvent>();
-
-            ExpandEvents(calendarID, inEvents, outAddEvents, outDeleteEvents, outUpdateEvents);
-            DeleteEvents(calendarID, outDeleteEvents);
-            UpdateEvents(calendarID, outUpdateEvents);
-            AddEvents(calendarID, outAddEvents);
+        Metrics.Time("phase:fetch", () -> {
+            while (changes.hasNext()) {
+                var e = changes.next();
+                if (e.IsCancelled()) {
+                    var old = state.Remove(e.GetID());
+                    if (old != null)
+                        outRemovedEvents.add(old);
+                    continue;
+                }
+
+                // Skip events that are unchanged from the snapshot, which includes the echoes of our own updates
+                var old = state.Get(e.GetID());
+                state.Put(e);
+                if (fullSync || !e.ContentEquals(old))
+                    outChangedEvents.add(e);
+            }
+        });
+        state.SetSyncToken(changes.GetNextSyncToken());
     }
 
 }
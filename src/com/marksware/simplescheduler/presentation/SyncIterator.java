@@ -0,0 +1,14 @@
+package com.marksware.simplescheduler.presentation;
+
+import com.marksware.simplescheduler.models.SimpleEvent;
+
+import java.util.Iterator;
+
+/*
+Events from a listing that ends with a token for fetching later changes
+ */
+public interface SyncIterator extends Iterator<SimpleEvent> {
+
+    // Only available once the last event has been read
+    String GetNextSyncToken();
+}
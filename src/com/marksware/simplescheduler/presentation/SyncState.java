@@ -0,0 +1,114 @@
+package com.marksware.simplescheduler.presentation;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import com.marksware.simplescheduler.models.SimpleEvent;
+import com.marksware.simplescheduler.models.SimpleEventJson;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+
+/*
+Local snapshot of a calendar plus the sync token needed to fetch only what changed since it was taken
+ */
+public class SyncState {
+
+    private static final String SYNC_DIRECTORY_PATH = "sync";
+
+    // Where snapshots are kept, relative to the working directory unless set
+    private static volatile File _Directory = new File(SYNC_DIRECTORY_PATH);
+    public static File GetDirectory() { return _Directory; }
+    public static void SetDirectory(File value) { _Directory = value; }
+
+    private final String _CalendarID;
+    public String GetCalendarID() { return _CalendarID; }
+
+    private String _SyncToken = null;
+    public String GetSyncToken() { return _SyncToken; }
+    public void SetSyncToken(String value) { _SyncToken = value; }
+
+    private final EventStore _Events = new EventStore();
+
+    public SyncState(String calendarID)
+    {
+        _CalendarID = calendarID;
+    }
+
+    public int Size() { return _Events.Size(); }
+
+    public SimpleEvent Get(String id) { return _Events.Get(id); }
+
+    public void Put(SimpleEvent simple) { _Events.Put(simple); }
+
+    public SimpleEvent Remove(String id) { return _Events.Remove(id); }
+
+    /*
+    Events we generated from the given source event
+     */
+    public List<SimpleEvent> GetGenerated(String sourceID) { return _Events.GetGenerated(sourceID); }
+
+    public void AddBusyTimes(BusyTimes outBusy) { _Events.AddBusyTimes(outBusy); }
+
+    public void Clear()
+    {
+        _SyncToken = null;
+        _Events.Clear();
+    }
+
+    private static File GetFile(String calendarID)
+    {
+        var name = calendarID.replaceAll("[^A-Za-z0-9@._-]", "_");
+        return new File(_Directory, name + ".json");
+    }
+
+    public static SyncState Load(String calendarID) throws IOException
+    {
+        var state = new SyncState(calendarID);
+        var file = GetFile(calendarID);
+        if (!file.exists())
+            return state;
+
+        try (var reader = new JsonReader(new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)))) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                var name = reader.nextName();
+                if (name.equals("syncToken")) {
+                    state.SetSyncToken(reader.nextString());
+                } else if (name.equals("events")) {
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        state.Put(SimpleEventJson.Read(reader));
+                    }
+                    reader.endArray();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+        return state;
+    }
+
+    public void Save() throws IOException
+    {
+        var file = GetFile(_CalendarID);
+        file.getParentFile().mkdirs();
+        var temp = new File(file.getPath() + ".tmp");
+
+        try (var writer = new JsonWriter(new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8)))) {
+            writer.beginObject();
+            if (_SyncToken != null)
+                writer.name("syncToken").value(_SyncToken);
+            writer.name("events").beginArray();
+            for (var e : _Events) {
+                SimpleEventJson.Write(writer, e);
+            }
+            writer.endArray();
+            writer.endObject();
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
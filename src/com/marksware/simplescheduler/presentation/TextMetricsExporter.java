@@ -0,0 +1,177 @@
+package com.marksware.simplescheduler.presentation;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+
+/*
+Writes the totals to a file as JSON or in the Prometheus text format, replacing it on every export.
+The Prometheus file can be picked up by node_exporter's textfile collector; the daemon also serves it at /metrics.
+ */
+public class TextMetricsExporter implements MetricsExporter {
+
+    public enum Format { Json, Prometheus }
+
+    private static final String PROMETHEUS_PREFIX = "simplescheduler_";
+
+    private final File _File;
+    private final Format _Format;
+
+    public TextMetricsExporter(File file, Format format)
+    {
+        _File = file;
+        _Format = format;
+    }
+
+    // JSON for a .json file, Prometheus text otherwise
+    public static TextMetricsExporter ForFile(File file)
+    {
+        return new TextMetricsExporter(file, file.getName().endsWith(".json") ? Format.Json : Format.Prometheus);
+    }
+
+    @Override
+    public void Counted(String name, long value) { }
+
+    @Override
+    public void Timed(String name, long nanos) { }
+
+    @Override
+    public Span StartSpan(String name) { return null; }
+
+    /*
+    Writes a temp file next to the file and moves it into place, so readers only ever see a whole export.
+    The temp file is named for this process and thread: the daemon's poll and notification threads, or another run
+    sharing the file, may export at the same time. It is created like any other file rather than with
+    Files.createTempFile, whose owner-only permissions would keep node_exporter from reading the result.
+     */
+    @Override
+    public void Export(Metrics.Snapshot snapshot) throws IOException
+    {
+        var directory = _File.getAbsoluteFile().getParentFile();
+        directory.mkdirs();
+        var temp = new File(directory, String.format(".%s.%d.%d.tmp", _File.getName(), ProcessHandle.current().pid(),
+                Thread.currentThread().getId()));
+        try {
+            try (var out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8))) {
+                if (_Format == Format.Json)
+                    WriteJson(out, snapshot);
+                else
+                    WritePrometheus(out, snapshot);
+            }
+            Files.move(temp.toPath(), _File.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp.toPath());
+        }
+    }
+
+    /*
+    {"counters": {"calls:events.list": 12, ...},
+     "timers": {"phase:fetch": {"count": 1, "totalMillis": 812.4, "maxMillis": 812.4, "p50Millis": ..., "p99Millis": ...,
+                                "buckets": [{"le": 0.01, "count": 0}, ...]}, ...}}
+     */
+    public static void WriteJson(Writer out, Metrics.Snapshot snapshot) throws IOException
+    {
+        var writer = new JsonWriter(out);
+        writer.setIndent("  ");
+        writer.beginObject();
+        writer.name("counters").beginObject();
+        for (var c : snapshot.GetCounters().entrySet()) {
+            writer.name(c.getKey()).value(c.getValue());
+        }
+        writer.endObject();
+
+        var bounds = Metrics.GetBucketBounds();
+        writer.name("timers").beginObject();
+        for (var t : snapshot.GetTimers().entrySet()) {
+            var timer = t.getValue();
+            writer.name(t.getKey()).beginObject();
+            writer.name("count").value(timer.GetCount());
+            writer.name("totalMillis").value(Millis(timer.GetTotalNanos()));
+            writer.name("maxMillis").value(Millis(timer.GetMaxNanos()));
+            writer.name("p50Millis").value(Millis(timer.GetPercentileNanos(0.5)));
+            writer.name("p90Millis").value(Millis(timer.GetPercentileNanos(0.9)));
+            writer.name("p99Millis").value(Millis(timer.GetPercentileNanos(0.99)));
+            writer.name("buckets").beginArray();
+            for (int i = 0; i < timer.GetBucketCount(); i++) {
+                writer.beginObject();
+                if (i < bounds.length)
+                    writer.name("le").value(Millis(bounds[i]));
+                else
+                    writer.name("le").value("+Inf");
+                writer.name("count").value(timer.GetBucket(i));
+                writer.endObject();
+            }
+            writer.endArray();
+            writer.endObject();
+        }
+        writer.endObject();
+        writer.endObject();
+        writer.flush();
+    }
+
+    /*
+    Counters become <name>_total and timers become <name>_seconds histograms, with the label after the colon as name="...":
+        simplescheduler_google_seconds_bucket{name="events.list",le="0.5"} 11
+     */
+    public static void WritePrometheus(Writer out, Metrics.Snapshot snapshot) throws IOException
+    {
+        String family = null;
+        for (var c : snapshot.GetCounters().entrySet()) {
+            var metric = PROMETHEUS_PREFIX + MetricName(c.getKey()) + "_total";
+            if (!metric.equals(family)) {
+                family = metric;
+                out.write("# TYPE " + metric + " counter\n");
+            }
+            out.write(metric + Labels(c.getKey(), null) + " " + c.getValue() + "\n");
+        }
+
+        var bounds = Metrics.GetBucketBounds();
+        for (var t : snapshot.GetTimers().entrySet()) {
+            var metric = PROMETHEUS_PREFIX + MetricName(t.getKey()) + "_seconds";
+            if (!metric.equals(family)) {
+                family = metric;
+                out.write("# TYPE " + metric + " histogram\n");
+            }
+            var timer = t.getValue();
+            long cumulative = 0;
+            for (int i = 0; i < timer.GetBucketCount(); i++) {
+                cumulative += timer.GetBucket(i);
+                var le = i < bounds.length ? Seconds(bounds[i]) : "+Inf";
+                out.write(metric + "_bucket" + Labels(t.getKey(), le) + " " + cumulative + "\n");
+            }
+            out.write(metric + "_sum" + Labels(t.getKey(), null) + " " + Seconds(timer.GetTotalNanos()) + "\n");
+            out.write(metric + "_count" + Labels(t.getKey(), null) + " " + timer.GetCount() + "\n");
+        }
+        out.flush();
+    }
+
+    private static String MetricName(String name)
+    {
+        var colon = name.indexOf(':');
+        return (colon >= 0 ? name.substring(0, colon) : name).replaceAll("[^A-Za-z0-9_]", "_");
+    }
+
+    private static String Labels(String name, String le)
+    {
+        var colon = name.indexOf(':');
+        var labels = new StringBuilder();
+        if (colon >= 0) {
+            var label = name.substring(colon + 1).replace("\\", "\\\\").replace("\"", "\\\"");
+            labels.append("name=\"").append(label).append('"');
+        }
+        if (le != null) {
+            if (labels.length() > 0)
+                labels.append(',');
+            labels.append("le=\"").append(le).append('"');
+        }
+        return labels.length() > 0 ? "{" + labels + "}" : "";
+    }
+
+    private static double Millis(long nanos) { return nanos / 1000000.0; }
+
+    private static String Seconds(long nanos) { return String.format(Locale.ROOT, "%.9g", nanos / 1e9); }
+}
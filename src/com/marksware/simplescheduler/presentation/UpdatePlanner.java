@@ -0,0 +1,83 @@
+package com.marksware.simplescheduler.presentation;
+
+import com.marksware.simplescheduler.models.EventMutation;
+import com.marksware.simplescheduler.models.SimpleEvent;
+
+import java.util.*;
+
+/*
+Turns an expanded EventPlan into only the writes that change something on the calendar
+ */
+public class UpdatePlanner {
+
+    private static String SourceKey(SimpleEvent e)
+    {
+        var sourceID = e.GetExtendedProperties().get(SchedulingUtil.ScheduledIdentifiers._SimpleSchedule_SourceID.toString());
+        return sourceID != null ? sourceID : "";
+    }
+
+    /*
+    Mutations are returned as deletes, then updates, then adds
+     */
+    public static List<EventMutation> Plan(EventPlan plan)
+    {
+        var mutations = new ArrayList<EventMutation>();
+        int skipped = 0;
+
+        // Restoring an event and then applying a command to it only needs the last update
+        var updates = new LinkedHashMap<String, SimpleEvent>();
+        for (var e : plan.GetUpdateEvents()) {
+            updates.remove(e.GetID());
+            updates.put(e.GetID(), e);
+        }
+
+        // A generated event that would be deleted and then added back unchanged is left where it is
+        var deletesBySource = new HashMap<String, List<SimpleEvent>>();
+        for (var e : plan.GetDeleteEvents()) {
+            deletesBySource.computeIfAbsent(SourceKey(e), k -> new ArrayList<SimpleEvent>()).add(e);
+        }
+        var kept = Collections.newSetFromMap(new IdentityHashMap<SimpleEvent, Boolean>());
+        var adds = new ArrayList<SimpleEvent>();
+        for (var e : plan.GetAddEvents()) {
+            SchedulingUtil.MarkGenerated(e);
+            var candidates = deletesBySource.get(SourceKey(e));
+            SimpleEvent match = null;
+            if (candidates != null) {
+                for (var c : candidates) {
+                    if (!kept.contains(c) && e.ContentEquals(c)) {
+                        match = c;
+                        break;
+                    }
+                }
+            }
+            if (match != null) {
+                kept.add(match);
+                skipped += 2;
+            } else {
+                adds.add(e);
+            }
+        }
+
+        for (var e : plan.GetDeleteEvents()) {
+            if (!kept.contains(e))
+                mutations.add(new EventMutation(EventMutation.Operation.Delete, e));
+        }
+
+        // Updates that leave the event exactly as it was fetched are dropped
+        for (var e : updates.values()) {
+            SchedulingUtil.MarkUpdated(e);
+            if (e.ContentEquals(plan.GetFetchedEvent(e.GetID()))) {
+                skipped++;
+            } else {
+                mutations.add(new EventMutation(EventMutation.Operation.Update, e));
+            }
+        }
+
+        for (var e : adds) {
+            mutations.add(new EventMutation(EventMutation.Operation.Add, e));
+        }
+
+        Log.Info("Planned %d writes, skipped %d that would not change anything", mutations.size(), skipped);
+        return mutations;
+    }
+}
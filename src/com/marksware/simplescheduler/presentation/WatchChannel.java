@@ -0,0 +1,37 @@
+package com.marksware.simplescheduler.presentation;
+
+/*
+A subscription to change notifications on one calendar.
+Notifications for the channel carry its ID and token in the X-Goog-Channel-ID and X-Goog-Channel-Token headers.
+ */
+public class WatchChannel {
+
+    private final String _ID;
+    public String GetID() { return _ID; }
+
+    private final String _Token;
+    public String GetToken() { return _Token; }
+
+    private final String _CalendarID;
+    public String GetCalendarID() { return _CalendarID; }
+
+    // Identifies the watched calendar to the API, needed to stop the channel
+    private final String _ResourceID;
+    public String GetResourceID() { return _ResourceID; }
+
+    // Epoch millis, or 0 if the channel does not expire
+    private final long _ExpirationMillis;
+    public long GetExpirationMillis() { return _ExpirationMillis; }
+
+    public WatchChannel(String id, String token, String calendarID, String resourceID, long expirationMillis)
+    {
+        _ID = id;
+        _Token = token;
+        _CalendarID = calendarID;
+        _ResourceID = resourceID;
+        _ExpirationMillis = expirationMillis;
+    }
+
+    @Override
+    public String toString() { return _CalendarID + " (" + _ID + ")"; }
+}
@@ -0,0 +1,133 @@
+package com.marksware.simplescheduler.models;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RecurrenceTest {
+
+    private static final ZoneId NEW_YORK = ZoneId.of("America/New_York");
+
+    private static long Millis(String local)
+    {
+        return ZonedDateTime.of(LocalDateTime.parse(local), NEW_YORK).toInstant().toEpochMilli();
+    }
+
+    // Up to max starts from from, as local times in New York
+    private static List<String> Starts(List<String> lines, String start, String from, int max)
+    {
+        var starts = new Recurrence(lines, Millis(start), NEW_YORK).Starts(Millis(from));
+        var local = new ArrayList<String>();
+        while (starts.hasNext() && local.size() < max) {
+            local.add(Instant.ofEpochMilli(starts.nextLong()).atZone(NEW_YORK).toLocalDateTime().toString());
+        }
+        return local;
+    }
+
+    @Test
+    public void WeeklyByDayKeepsItsLocalTimeAcrossDaylightSaving()
+    {
+        // The clocks go forward on Sunday 8 March
+        var starts = Starts(List.of("RRULE:FREQ=WEEKLY;BYDAY=MO,WE;COUNT=5"), "2026-03-02T09:00", "2026-03-02T09:00", 10);
+
+        assertEquals(List.of("2026-03-02T09:00", "2026-03-04T09:00", "2026-03-09T09:00", "2026-03-11T09:00", "2026-03-16T09:00"), starts);
+    }
+
+    @Test
+    public void UntilDateIncludesItsWholeDayAndExdateIsLeftOut()
+    {
+        var starts = Starts(List.of("RRULE:FREQ=DAILY;UNTIL=20260305", "EXDATE;TZID=America/New_York:20260303T090000"),
+                "2026-03-02T09:00", "2026-03-02T09:00", 10);
+
+        assertEquals(List.of("2026-03-02T09:00", "2026-03-04T09:00", "2026-03-05T09:00"), starts);
+    }
+
+    @Test
+    public void RdateIsMergedInOrder()
+    {
+        var starts = Starts(List.of("RRULE:FREQ=WEEKLY;INTERVAL=2;COUNT=3", "RDATE;TZID=America/New_York:20260305T140000"),
+                "2026-03-02T09:00", "2026-03-02T09:00", 10);
+
+        assertEquals(List.of("2026-03-02T09:00", "2026-03-05T14:00", "2026-03-16T09:00", "2026-03-30T09:00"), starts);
+    }
+
+    @Test
+    public void MonthlyOrdinalDays()
+    {
+        var lastFriday = Starts(List.of("RRULE:FREQ=MONTHLY;BYDAY=-1FR"), "2026-01-30T09:00", "2026-01-30T09:00", 3);
+        var secondMonday = Starts(List.of("RRULE:FREQ=MONTHLY;BYDAY=2MO;COUNT=2"), "2026-01-12T09:00", "2026-01-12T09:00", 10);
+
+        assertEquals(List.of("2026-01-30T09:00", "2026-02-27T09:00", "2026-03-27T09:00"), lastFriday);
+        assertEquals(List.of("2026-01-12T09:00", "2026-02-09T09:00"), secondMonday);
+    }
+
+    @Test
+    public void StartsFromLaterInTheSeriesStillCountFromTheFirst()
+    {
+        var open = Starts(List.of("RRULE:FREQ=WEEKLY;INTERVAL=2"), "2026-01-05T09:00", "2027-06-01T00:00", 2);
+        var counted = Starts(List.of("RRULE:FREQ=WEEKLY;COUNT=4"), "2026-01-05T09:00", "2026-01-20T00:00", 10);
+
+        assertEquals(List.of("2027-06-07T09:00", "2027-06-21T09:00"), open);
+        assertEquals(List.of("2026-01-26T09:00"), counted);
+    }
+
+    @Test
+    public void UnsupportedRuleIsRefused()
+    {
+        assertThrows(IllegalArgumentException.class, () -> new Recurrence(List.of("RRULE:FREQ=HOURLY"), 0, NEW_YORK));
+        assertThrows(IllegalArgumentException.class, () -> new Recurrence(List.of("RRULE:FREQ=MONTHLY;BYSETPOS=-1"), 0, NEW_YORK));
+    }
+
+    @Test
+    public void InstancesAreListedAsGoogleListsThem()
+    {
+        var recurring = new SimpleEvent();
+        recurring.SetID("weekly");
+        recurring.SetStartMillis(Millis("2026-03-02T09:00"), -5 * 60);
+        recurring.SetEndMillis(Millis("2026-03-02T10:00"), -5 * 60);
+        recurring.SetTimeZone(NEW_YORK.getId());
+        recurring.SetRecurrence(List.of("RRULE:FREQ=WEEKLY;COUNT=4"));
+
+        // From the middle of the first instance, with the third changed on its own
+        var instances = new ArrayList<SimpleEvent>();
+        Recurrence.Instances(recurring, Millis("2026-03-02T09:30"), Millis("2026-04-01T00:00"), Set.of(Millis("2026-03-16T09:00")))
+                .forEachRemaining(instances::add);
+
+        assertEquals(3, instances.size());
+        var second = instances.get(1);
+        assertEquals("weekly_20260309T130000Z", second.GetID());
+        assertEquals("weekly", second.GetRecurringEventID());
+        assertNull(second.GetRecurrence());
+        assertEquals(Millis("2026-03-09T09:00"), second.GetOriginalStartMillis());
+        assertEquals(Millis("2026-03-09T09:00"), second.GetStartMillis());
+        assertEquals(-4 * 60, second.GetStartTimeZoneShift());
+        assertEquals(Millis("2026-03-09T10:00"), second.GetEndMillis());
+        assertEquals("weekly_20260302T140000Z", instances.get(0).GetID());
+        assertEquals("weekly_20260323T130000Z", instances.get(2).GetID());
+    }
+
+    @Test
+    public void AllDayInstanceIDsCarryOnlyTheDate()
+    {
+        var recurring = new SimpleEvent();
+        recurring.SetID("daily");
+        recurring.SetStartMillis(Instant.parse("2026-03-02T00:00:00Z").toEpochMilli(), 0);
+        recurring.SetEndMillis(Instant.parse("2026-03-03T00:00:00Z").toEpochMilli(), 0);
+        recurring.SetRecurrence(List.of("RRULE:FREQ=DAILY;COUNT=2"));
+
+        var instances = Recurrence.Instances(recurring, 0, Long.MAX_VALUE, null);
+
+        assertTrue(Recurrence.IsAllDay(recurring));
+        assertEquals("daily_20260302", instances.next().GetID());
+        assertEquals("daily_20260303", instances.next().GetID());
+        assertFalse(instances.hasNext());
+    }
+}
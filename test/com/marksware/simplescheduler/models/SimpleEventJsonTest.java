@@ -0,0 +1,65 @@
+package com.marksware.simplescheduler.models;
+
+import com.google.api.client.util.DateTime;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import org.junit.jupiter.api.Test;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SimpleEventJsonTest {
+
+    private static SimpleEvent RoundTrip(SimpleEvent e) throws Exception
+    {
+        var json = new StringWriter();
+        SimpleEventJson.Write(new JsonWriter(json), e);
+        return SimpleEventJson.Read(new JsonReader(new StringReader(json.toString())));
+    }
+
+    @Test
+    public void TimesKeepTheirOffset() throws Exception
+    {
+        var e = new SimpleEvent();
+        e.SetStartDateTime(new DateTime("2026-03-06T19:30:00-08:00"));
+        e.SetEndDateTime(new DateTime("2026-03-06T20:30:00-08:00"));
+
+        var read = RoundTrip(e);
+
+        assertEquals(e.GetStartMillis(), read.GetStartMillis());
+        assertEquals(-8 * 60, read.GetStartTimeZoneShift());
+        assertEquals(e.GetEndMillis(), read.GetEndMillis());
+        assertEquals(-8 * 60, read.GetEndTimeZoneShift());
+    }
+
+    @Test
+    public void UtcTimesAreWrittenInOurOwnForm() throws Exception
+    {
+        var e = new SimpleEvent();
+        e.SetStartDateTime(Instant.parse("2026-03-07T03:30:00Z"));
+        e.SetEndDateTime(Instant.parse("2026-03-07T04:30:00Z"));
+        var json = new StringWriter();
+
+        SimpleEventJson.Write(new JsonWriter(json), e);
+
+        assertTrue(json.toString().contains("\"start\":\"2026-03-07T03:30:00.000Z\""));
+        assertEquals(e.GetStartMillis(), RoundTrip(e).GetStartMillis());
+    }
+
+    @Test
+    public void PropertyWithoutAValueIsKept() throws Exception
+    {
+        var e = new SimpleEvent();
+        e.GetExtendedProperties().put("empty", null);
+        e.GetExtendedProperties().put("set", "1");
+
+        var read = RoundTrip(e);
+
+        assertTrue(read.GetExtendedProperties().containsKey("empty"));
+        assertNull(read.GetExtendedProperties().get("empty"));
+        assertEquals("1", read.GetExtendedProperties().get("set"));
+    }
+}
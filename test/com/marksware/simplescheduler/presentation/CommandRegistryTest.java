@@ -0,0 +1,65 @@
+package com.marksware.simplescheduler.presentation;
+
+import com.marksware.simplescheduler.models.SchedulingCommand;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CommandRegistryTest {
+
+    private static CommandRegistry NewRegistry(String... names)
+    {
+        var registry = new CommandRegistry();
+        for (var name : names) {
+            registry.Register(name, (calendarID, e, command, outPlan) -> { });
+        }
+        return registry;
+    }
+
+    private static List<String> Names(List<SchedulingCommand> commands)
+    {
+        var names = new ArrayList<String>();
+        for (var command : commands) {
+            names.add(command.GetName());
+        }
+        return names;
+    }
+
+    @Test
+    public void NameAtTheEndOfALongerWordIsNotACommand()
+    {
+        var registry = NewRegistry("move", "split");
+
+        assertTrue(registry.Parse("premove(2) xsplit(3) split_2 movex").isEmpty());
+    }
+
+    @Test
+    public void NamesBetweenOtherCharactersAreCommands()
+    {
+        var registry = NewRegistry("move", "split");
+
+        var commands = registry.Parse("move(FR)\nnotes:split(3) (split)");
+
+        assertEquals(List.of("move", "split", "split"), Names(commands));
+        assertEquals(0, commands.get(0).GetOffset());
+        assertEquals(List.of("FR"), commands.get(0).GetArguments());
+        assertEquals(15, commands.get(1).GetOffset());
+        assertEquals(3, commands.get(1).GetIntArgument(0, 2));
+        assertEquals(25, commands.get(2).GetOffset());
+    }
+
+    @Test
+    public void LongerNameWinsOverTheNameItEndsWith()
+    {
+        var registry = NewRegistry("split", "xsplit");
+
+        var commands = registry.Parse("xsplit(2) split");
+
+        assertEquals(List.of("xsplit", "split"), Names(commands));
+        assertEquals(0, commands.get(0).GetOffset());
+        assertEquals(10, commands.get(1).GetOffset());
+    }
+}
@@ -0,0 +1,66 @@
+package com.marksware.simplescheduler.presentation;
+
+import com.google.api.client.json.gson.GsonFactory;
+import com.google.api.client.util.Data;
+import com.google.api.services.calendar.model.Events;
+import com.google.gson.stream.JsonReader;
+import org.junit.jupiter.api.Test;
+
+import java.io.StringReader;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class EventPageTest {
+
+    private static final String CALENDAR_ID = "team@example.com";
+
+    private static void AssertSamePage(String json) throws Exception
+    {
+        var expected = EventPage.FromEvents(CALENDAR_ID, GsonFactory.getDefaultInstance().fromString(json, Events.class));
+        var actual = EventPage.Read(CALENDAR_ID, new JsonReader(new StringReader(json)));
+
+        assertEquals(expected.GetNextPageToken(), actual.GetNextPageToken());
+        assertEquals(expected.GetNextSyncToken(), actual.GetNextSyncToken());
+        assertEquals(expected.GetItems().size(), actual.GetItems().size());
+        for (int i = 0; i < expected.GetItems().size(); i++) {
+            TestEvents.AssertSameEvent(expected.GetItems().get(i), actual.GetItems().get(i));
+        }
+    }
+
+    @Test
+    public void ReadMatchesFromEvents() throws Exception
+    {
+        var json = "{\"kind\":\"calendar#events\",\"summary\":\"Team\",\"nextPageToken\":\"page2\",\"items\":["
+                + "{\"kind\":\"calendar#event\",\"id\":\"timed\",\"status\":\"confirmed\",\"summary\":\"Planning\",\"location\":\"Room 4\","
+                + "\"description\":\"Agenda\\n#SimpleSchedule_Split(3)\",\"attendees\":[{\"email\":\"a@example.com\"}],"
+                + "\"start\":{\"dateTime\":\"2026-03-06T19:30:00-08:00\",\"timeZone\":\"America/Los_Angeles\"},"
+                + "\"end\":{\"dateTime\":\"2026-03-06T21:00:00-08:00\",\"timeZone\":\"America/Los_Angeles\"},"
+                + "\"extendedProperties\":{\"private\":{\"mine\":\"1\"},\"shared\":{\"owner\":\"ops\",\"empty\":null}}},"
+                + "{\"id\":\"allday\",\"status\":\"confirmed\",\"summary\":\"Offsite\",\"start\":{\"date\":\"2026-03-09\"},\"end\":{\"date\":\"2026-03-10\"}},"
+                + "{\"id\":\"weekly\",\"status\":\"confirmed\",\"summary\":\"Standup\","
+                + "\"start\":{\"dateTime\":\"2026-03-02T09:00:00-05:00\",\"timeZone\":\"America/New_York\"},"
+                + "\"end\":{\"dateTime\":\"2026-03-02T09:15:00-05:00\",\"timeZone\":\"America/New_York\"},"
+                + "\"recurrence\":[\"RRULE:FREQ=WEEKLY;BYDAY=MO\",\"EXDATE;TZID=America/New_York:20260316T090000\"]},"
+                + "{\"id\":\"weekly_20260309T130000Z\",\"status\":\"confirmed\",\"summary\":\"Standup\",\"recurringEventId\":\"weekly\","
+                + "\"originalStartTime\":{\"dateTime\":\"2026-03-09T09:00:00-04:00\",\"timeZone\":\"America/New_York\"},"
+                + "\"start\":{\"dateTime\":\"2026-03-09T10:00:00-04:00\",\"timeZone\":\"America/New_York\"},"
+                + "\"end\":{\"dateTime\":\"2026-03-09T10:15:00-04:00\",\"timeZone\":\"America/New_York\"}},"
+                + "{\"id\":\"gone\",\"status\":\"cancelled\"}"
+                + "]}";
+
+        AssertSamePage(json);
+        var props = EventPage.Read(CALENDAR_ID, new JsonReader(new StringReader(json))).GetItems().get(0).GetExtendedProperties();
+        assertTrue(Data.isNull(props.get("empty")));
+    }
+
+    @Test
+    public void LastPageCarriesTheSyncToken() throws Exception
+    {
+        AssertSamePage("{\"items\":[],\"nextSyncToken\":\"sync1\"}");
+
+        var page = EventPage.Read(CALENDAR_ID, new JsonReader(new StringReader("{\"nextSyncToken\":\"sync1\"}")));
+        assertNull(page.GetNextPageToken());
+        assertEquals("sync1", page.GetNextSyncToken());
+        assertTrue(page.GetItems().isEmpty());
+    }
+}
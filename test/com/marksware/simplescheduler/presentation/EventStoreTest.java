@@ -0,0 +1,110 @@
+package com.marksware.simplescheduler.presentation;
+
+import com.marksware.simplescheduler.models.SimpleEvent;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class EventStoreTest {
+
+    private static SimpleEvent NewGenerated(String id, String sourceID)
+    {
+        var e = TestEvents.NewEvent();
+        e.SetID(id);
+        e.SetRecurringEventID(null);
+        e.SetOriginalStartMillis(SimpleEvent.NO_TIME);
+        SchedulingUtil.MarkGenerated(e);
+        e.GetExtendedProperties().put(SchedulingUtil.ScheduledIdentifiers._SimpleSchedule_SourceID.toString(), sourceID);
+        return e;
+    }
+
+    @Test
+    public void EveryFieldSurvivesARoundTrip()
+    {
+        var store = new EventStore();
+        var instance = TestEvents.NewEvent();
+        var recurring = TestEvents.NewRecurringEvent();
+
+        store.Put(instance);
+        store.Put(recurring);
+
+        assertEquals(2, store.Size());
+        TestEvents.AssertSameEvent(instance, store.Get(instance.GetID()));
+        TestEvents.AssertSameEvent(recurring, store.Get(recurring.GetID()));
+    }
+
+    @Test
+    public void MarkersNotInOurOwnFormAreKeptAsWritten()
+    {
+        var store = new EventStore();
+        var e = TestEvents.NewEvent();
+        e.GetExtendedProperties().put(SchedulingUtil.ScheduledIdentifiers._SimpleSchedule_OriginalEndDateTime.toString(), "2026-03-07T04:30:00Z");
+        e.GetExtendedProperties().put(SchedulingUtil.ScheduledIdentifiers._SimpleSchedule_UpdatedEndDateTime.toString(), "not a time");
+        e.GetExtendedProperties().put(SchedulingUtil.ScheduledIdentifiers._SimpleSchedule_Generated.toString(), "yes");
+
+        store.Put(e);
+
+        TestEvents.AssertSameEvent(e, store.Get(e.GetID()));
+    }
+
+    @Test
+    public void RemovingKeepsTheOtherRowsWhole()
+    {
+        var store = new EventStore();
+        var first = TestEvents.NewEvent();
+        first.SetID("first");
+        var recurring = TestEvents.NewRecurringEvent();
+        var last = NewGenerated("last", recurring.GetID());
+        store.Put(first);
+        store.Put(recurring);
+        store.Put(last);
+
+        TestEvents.AssertSameEvent(first, store.Remove("first"));
+
+        assertNull(store.Get("first"));
+        assertEquals(2, store.Size());
+        TestEvents.AssertSameEvent(recurring, store.Get(recurring.GetID()));
+        TestEvents.AssertSameEvent(last, store.Get("last"));
+        assertEquals(1, store.GetGenerated(recurring.GetID()).size());
+        TestEvents.AssertSameEvent(last, store.GetGenerated(recurring.GetID()).get(0));
+    }
+
+    @Test
+    public void PutReplacesAnEventWithTheSameID()
+    {
+        var store = new EventStore();
+        store.Put(NewGenerated("generated", "source"));
+        var replacement = TestEvents.NewEvent();
+        replacement.SetID("generated");
+
+        store.Put(replacement);
+
+        assertEquals(1, store.Size());
+        assertTrue(store.GetGenerated("source").isEmpty());
+        TestEvents.AssertSameEvent(replacement, store.Get("generated"));
+    }
+
+    @Test
+    public void ViewsReadRowsInPlace()
+    {
+        var store = new EventStore();
+        var recurring = TestEvents.NewRecurringEvent();
+        var instance = TestEvents.NewEvent();
+        var generated = NewGenerated("generated", recurring.GetID());
+        store.Put(recurring);
+        store.Put(instance);
+        store.Put(generated);
+
+        var views = new ArrayList<String>();
+        for (var view : store.Views()) {
+            views.add(String.format("%s %b %b %b %s %d %s", view.GetID(), view.IsRecurring(), view.IsGenerated(), view.HasCommand(),
+                    view.GetRecurringEventID(), view.GetOriginalStartMillis(), view.GetSourceID()));
+        }
+
+        assertEquals(String.format("abc123 true false true null %d null", SimpleEvent.NO_TIME), views.get(0));
+        assertEquals(String.format("%s false false true abc123 %d null", instance.GetID(), instance.GetOriginalStartMillis()), views.get(1));
+        assertEquals(String.format("generated false true false null %d abc123", SimpleEvent.NO_TIME), views.get(2));
+    }
+}
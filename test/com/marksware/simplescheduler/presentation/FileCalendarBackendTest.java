@@ -0,0 +1,65 @@
+package com.marksware.simplescheduler.presentation;
+
+import com.marksware.simplescheduler.models.EventMutation;
+import com.marksware.simplescheduler.models.SimpleEvent;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FileCalendarBackendTest {
+
+    @TempDir
+    File _Directory;
+
+    private static SimpleEvent NewEvent(String summary)
+    {
+        var e = new SimpleEvent();
+        e.SetSummary(summary);
+        e.SetStartDateTime(Instant.parse("2026-03-02T17:00:00Z"));
+        e.SetEndDateTime(Instant.parse("2026-03-02T18:00:00Z"));
+        return e;
+    }
+
+    @Test
+    public void WritesStayInMemoryUntilSave() throws Exception
+    {
+        var file = new File(_Directory, "events.jsonl");
+        var backend = new FileCalendarBackend(file);
+
+        var results = backend.ExecuteBatch(List.of(new EventMutation(EventMutation.Operation.Add, NewEvent("Planning")),
+                new EventMutation(EventMutation.Operation.Add, NewEvent("Review"))));
+        backend.UpdateEvent(backend.PutEvent(NewEvent("Standup")));
+
+        assertTrue(results.get(0).IsSuccess());
+        assertFalse(file.exists());
+        assertTrue(backend.IsDirty());
+
+        backend.Save();
+
+        assertFalse(backend.IsDirty());
+        assertEquals(3, new FileCalendarBackend(file).Size(SimpleEvent.CALENDARID_PRIMARY));
+    }
+
+    @Test
+    public void SaveWithoutWritesLeavesTheFileAlone() throws Exception
+    {
+        var file = new File(_Directory, "events.jsonl");
+        var backend = new FileCalendarBackend(file);
+        backend.PutEvent(NewEvent("Planning"));
+        backend.Save();
+        var modified = file.lastModified();
+        assertTrue(file.setLastModified(modified - 60000));
+
+        var reloaded = new FileCalendarBackend(file);
+        var failed = reloaded.DeleteEvent(NewEvent("Not there"));
+        reloaded.Save();
+
+        assertFalse(failed.IsSuccess());
+        assertEquals(modified - 60000, file.lastModified());
+    }
+}
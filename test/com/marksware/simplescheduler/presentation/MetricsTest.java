@@ -0,0 +1,59 @@
+package com.marksware.simplescheduler.presentation;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MetricsTest {
+
+    // Keeps the counts it is given for one counter
+    private static class CountingExporter implements MetricsExporter {
+        private final String _Name;
+        final List<Long> _Counts = new ArrayList<Long>();
+
+        CountingExporter(String name)
+        {
+            _Name = name;
+        }
+
+        @Override
+        public void Counted(String name, long value)
+        {
+            if (name.equals(_Name))
+                _Counts.add(value);
+        }
+
+        @Override
+        public void Timed(String name, long nanos) { }
+
+        @Override
+        public Span StartSpan(String name) { return null; }
+
+        @Override
+        public void Export(Metrics.Snapshot snapshot) { }
+    }
+
+    @Test
+    public void CountersReachExportersOnlyOnExport() throws Exception
+    {
+        var exporter = new CountingExporter("test:bytes");
+        Metrics.AddExporter(exporter);
+        var counter = Metrics.GetCounter("test:bytes");
+
+        for (int i = 0; i < 5; i++) {
+            counter.Increment();
+        }
+        assertTrue(exporter._Counts.isEmpty());
+
+        Metrics.Export();
+        counter.Add(3);
+        Metrics.Export();
+        Metrics.Export();
+
+        assertEquals(List.of(5L, 3L), exporter._Counts);
+        assertEquals(8L, Metrics.GetSnapshot().GetCounters().get("test:bytes"));
+    }
+}
@@ -0,0 +1,129 @@
+package com.marksware.simplescheduler.presentation;
+
+import com.marksware.simplescheduler.models.EventMutation;
+import com.marksware.simplescheduler.models.MutationResult;
+import com.marksware.simplescheduler.models.SimpleEvent;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MutationPipelineTest {
+
+    private static SimpleEvent NewEvent()
+    {
+        var e = new SimpleEvent();
+        e.SetSummary("Planning");
+        e.SetStartDateTime(Instant.parse("2026-03-02T17:00:00Z"));
+        e.SetEndDateTime(Instant.parse("2026-03-02T18:00:00Z"));
+        return e;
+    }
+
+    // Applies every batch, but loses the responses to the first lostBatches of them as a dropped connection would
+    private static MutationPipeline NewPipeline(InMemoryCalendarBackend backend, int lostBatches)
+    {
+        var batches = new AtomicInteger();
+        var pipeline = new MutationPipeline(mutations -> {
+            var results = backend.ExecuteBatch(mutations);
+            if (batches.incrementAndGet() > lostBatches)
+                return results;
+            var lost = new ArrayList<MutationResult>();
+            for (var m : mutations) {
+                lost.add(MutationResult.Failed(m, 0, null, "Connection reset"));
+            }
+            return lost;
+        });
+        pipeline.SetBaseBackoffMillis(1);
+        return pipeline;
+    }
+
+    @Test
+    public void InsertWithLostResponseIsAddedOnce() throws Exception
+    {
+        var backend = new InMemoryCalendarBackend();
+        var add = new EventMutation(EventMutation.Operation.Add, NewEvent());
+
+        var results = NewPipeline(backend, 1).Execute(List.of(add));
+
+        assertEquals(1, backend.Size(SimpleEvent.CALENDARID_PRIMARY));
+        var result = results.get(0);
+        assertTrue(result.IsSuccess());
+        assertEquals(2, result.GetAttempts());
+        assertEquals(add.GetInsertID(), result.GetResultID());
+    }
+
+    @Test
+    public void InsertRetriesKeepTheirID() throws Exception
+    {
+        var backend = new InMemoryCalendarBackend();
+        var adds = List.of(new EventMutation(EventMutation.Operation.Add, NewEvent()),
+                new EventMutation(EventMutation.Operation.Add, NewEvent()));
+
+        var results = NewPipeline(backend, 3).Execute(adds);
+
+        assertEquals(2, backend.Size(SimpleEvent.CALENDARID_PRIMARY));
+        assertNotEquals(adds.get(0).GetInsertID(), adds.get(1).GetInsertID());
+        for (int i = 0; i < adds.size(); i++) {
+            assertTrue(results.get(i).IsSuccess());
+            assertEquals(adds.get(i).GetInsertID(), results.get(i).GetResultID());
+        }
+    }
+
+    @Test
+    public void FirstInsertFindingItsIDTakenFails() throws Exception
+    {
+        var backend = new InMemoryCalendarBackend();
+        var add = new EventMutation(EventMutation.Operation.Add, NewEvent());
+        var taken = NewEvent();
+        taken.SetID(add.GetInsertID());
+        backend.PutEvent(taken);
+
+        var result = NewPipeline(backend, 0).Execute(List.of(add)).get(0);
+
+        assertFalse(result.IsSuccess());
+        assertEquals(409, result.GetStatusCode());
+        assertEquals(1, result.GetAttempts());
+        assertEquals(1, backend.Size(SimpleEvent.CALENDARID_PRIMARY));
+    }
+
+    @Test
+    public void DeleteWithLostResponseSucceeds() throws Exception
+    {
+        var backend = new InMemoryCalendarBackend();
+        var stored = backend.PutEvent(NewEvent());
+        var delete = new EventMutation(EventMutation.Operation.Delete, stored);
+
+        var result = NewPipeline(backend, 1).Execute(List.of(delete)).get(0);
+
+        assertTrue(result.IsSuccess());
+        assertEquals(2, result.GetAttempts());
+        assertEquals(stored.GetID(), result.GetResultID());
+        assertEquals(0, backend.Size(SimpleEvent.CALENDARID_PRIMARY));
+    }
+
+    @Test
+    public void FirstDeleteOfAnEventAlreadyGoneFails() throws Exception
+    {
+        var backend = new InMemoryCalendarBackend();
+        var stored = backend.PutEvent(NewEvent());
+        backend.DeleteEvent(stored);
+
+        var result = NewPipeline(backend, 0).Execute(List.of(new EventMutation(EventMutation.Operation.Delete, stored))).get(0);
+
+        assertFalse(result.IsSuccess());
+        assertEquals(410, result.GetStatusCode());
+        assertEquals(1, result.GetAttempts());
+    }
+
+    @Test
+    public void InsertIDsAreBase32Hex()
+    {
+        for (int i = 0; i < 100; i++) {
+            assertTrue(EventMutation.NewEventID().matches("[0-9a-v]{26}"));
+        }
+    }
+}
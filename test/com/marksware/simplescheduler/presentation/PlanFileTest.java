@@ -0,0 +1,64 @@
+package com.marksware.simplescheduler.presentation;
+
+import com.marksware.simplescheduler.models.EventMutation;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PlanFileTest {
+
+    @TempDir
+    File _Directory;
+
+    @Test
+    public void MutationsSurviveARoundTrip() throws Exception
+    {
+        var file = new File(_Directory, "plan.jsonl");
+        var mutations = List.of(new EventMutation(EventMutation.Operation.Delete, TestEvents.NewEvent()),
+                new EventMutation(EventMutation.Operation.Update, TestEvents.NewRecurringEvent()),
+                new EventMutation(EventMutation.Operation.Add, TestEvents.NewEvent()));
+
+        PlanFile.Write(file, mutations);
+        var read = PlanFile.Read(file);
+
+        assertEquals(3, Files.readAllLines(file.toPath()).size());
+        assertEquals(mutations.size(), read.size());
+        for (int i = 0; i < mutations.size(); i++) {
+            assertEquals(mutations.get(i).GetOperation(), read.get(i).GetOperation());
+            assertEquals(mutations.get(i).GetInsertID(), read.get(i).GetInsertID());
+            TestEvents.AssertSameEvent(mutations.get(i).GetEvent(), read.get(i).GetEvent());
+        }
+    }
+
+    @Test
+    public void AddWithoutAnInsertIDGetsANewOne() throws Exception
+    {
+        var file = new File(_Directory, "plan.jsonl");
+        Files.writeString(file.toPath(), "{\"op\":\"add\",\"event\":{\"summary\":\"Planning\"}}\n\n", StandardCharsets.UTF_8);
+
+        var read = PlanFile.Read(file);
+
+        assertEquals(1, read.size());
+        assertEquals(EventMutation.Operation.Add, read.get(0).GetOperation());
+        assertNotNull(read.get(0).GetInsertID());
+        assertEquals("Planning", read.get(0).GetEvent().GetSummary());
+    }
+
+    @Test
+    public void BadLineIsReportedWithItsNumber() throws Exception
+    {
+        var file = new File(_Directory, "plan.jsonl");
+        Files.writeString(file.toPath(), "{\"op\":\"delete\",\"event\":{}}\n{\"op\":\"move\",\"event\":{}}\n", StandardCharsets.UTF_8);
+
+        var ex = assertThrows(IOException.class, () -> PlanFile.Read(file));
+
+        assertTrue(ex.getMessage().contains("line 2"), ex.getMessage());
+    }
+}
@@ -0,0 +1,210 @@
+package com.marksware.simplescheduler.presentation;
+
+import com.google.api.client.util.DateTime;
+import com.marksware.simplescheduler.models.EventMutation;
+import com.marksware.simplescheduler.models.SimpleEvent;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SchedulingUtilTest {
+
+    private TimeZone _DefaultZone;
+    private CalendarBackend _Backend;
+    private MutationPipeline _Pipeline;
+    private File _SyncDirectory;
+
+    @TempDir
+    File _TempDirectory;
+
+    // Run as on a server in UTC, where the events below are already on Saturday
+    @BeforeEach
+    public void SetUp()
+    {
+        _DefaultZone = TimeZone.getDefault();
+        TimeZone.setDefault(TimeZone.getTimeZone("UTC"));
+        _Backend = SchedulingUtil.GetBackend();
+        _Pipeline = SchedulingUtil.GetPipeline();
+        _SyncDirectory = SyncState.GetDirectory();
+        SyncState.SetDirectory(_TempDirectory);
+    }
+
+    @AfterEach
+    public void TearDown()
+    {
+        TimeZone.setDefault(_DefaultZone);
+        SchedulingUtil.SetBackend(_Backend);
+        SchedulingUtil.SetPipeline(_Pipeline);
+        SyncState.SetDirectory(_SyncDirectory);
+    }
+
+    // Expands the event as a run would on first seeing it, restoring it and then running the command
+    private static SimpleEvent MoveToNextWeekday(SimpleEvent e)
+    {
+        e.SetDescription(SchedulingUtil.SchedulingCommands._SimpleSchedule_MoveToNextWeekday.toString());
+        var plan = new EventPlan(SimpleEvent.CALENDARID_PRIMARY);
+        SchedulingUtil.ExpandEvent(SimpleEvent.CALENDARID_PRIMARY, e, plan);
+        assertEquals(2, plan.GetUpdateEvents().size());
+        return plan.GetUpdateEvents().get(1);
+    }
+
+    @Test
+    public void MoveToNextWeekdayCountsDaysInTheEventsTimeZone()
+    {
+        // Friday 19:30 in Los Angeles; the clocks go forward on Sunday, so Monday 19:30 is at -07:00
+        var e = new SimpleEvent();
+        e.SetStartDateTime(Instant.parse("2026-03-07T03:30:00Z"));
+        e.SetEndDateTime(Instant.parse("2026-03-07T04:30:00Z"));
+        e.SetTimeZone("America/Los_Angeles");
+
+        var moved = MoveToNextWeekday(e);
+
+        assertEquals(Instant.parse("2026-03-10T02:30:00Z").toEpochMilli(), moved.GetStartMillis());
+        assertEquals(Instant.parse("2026-03-10T03:30:00Z").toEpochMilli(), moved.GetEndMillis());
+    }
+
+    @Test
+    public void MoveToNextWeekdayFallsBackToTheStartOffset()
+    {
+        var e = new SimpleEvent();
+        e.SetStartDateTime(new DateTime("2026-03-06T19:30:00-08:00"));
+        e.SetEndDateTime(new DateTime("2026-03-06T20:30:00-08:00"));
+
+        var moved = MoveToNextWeekday(e);
+
+        assertEquals(Instant.parse("2026-03-10T03:30:00Z").toEpochMilli(), moved.GetStartMillis());
+        assertEquals(-8 * 60, moved.GetStartTimeZoneShift());
+    }
+
+    @Test
+    public void MoveToNextWeekdayCountsFromTheOffsetOfAnEventItMovedBefore()
+    {
+        // Moved once already, from Friday to Monday, and the markers say so
+        var e = new SimpleEvent();
+        e.SetStartDateTime(new DateTime("2026-03-09T19:30:00-08:00"));
+        e.SetEndDateTime(new DateTime("2026-03-09T20:30:00-08:00"));
+        var props = e.GetExtendedProperties();
+        props.put(SchedulingUtil.ScheduledIdentifiers._SimpleSchedule_OriginalStartDateTime.toString(), "2026-03-07T03:30:00.000Z");
+        props.put(SchedulingUtil.ScheduledIdentifiers._SimpleSchedule_OriginalEndDateTime.toString(), "2026-03-07T04:30:00.000Z");
+        props.put(SchedulingUtil.ScheduledIdentifiers._SimpleSchedule_UpdatedStartDateTime.toString(), "2026-03-10T03:30:00.000Z");
+        props.put(SchedulingUtil.ScheduledIdentifiers._SimpleSchedule_UpdatedEndDateTime.toString(), "2026-03-10T04:30:00.000Z");
+
+        var moved = MoveToNextWeekday(e);
+
+        assertEquals(Instant.parse("2026-03-10T03:30:00Z").toEpochMilli(), moved.GetStartMillis());
+    }
+
+    @Test
+    public void MoveToNextWeekdaySkipsAnUnknownTimeZone()
+    {
+        var e = new SimpleEvent();
+        e.SetTimeZone("Mars/Olympus_Mons");
+        e.SetDescription(SchedulingUtil.SchedulingCommands._SimpleSchedule_MoveToNextWeekday.toString());
+        var plan = new EventPlan(SimpleEvent.CALENDARID_PRIMARY);
+
+        SchedulingUtil.ApplySchedulingCommands(SimpleEvent.CALENDARID_PRIMARY, e, plan);
+
+        assertTrue(plan.GetUpdateEvents().isEmpty());
+    }
+
+    // A weekly meeting in New York from tomorrow, three times, with a command to split every instance
+    private static InMemoryCalendarBackend NewRecurringCalendar()
+    {
+        var zone = ZoneId.of("America/New_York");
+        var start = ZonedDateTime.now(zone).truncatedTo(ChronoUnit.DAYS).plusDays(1).withHour(9);
+        var e = new SimpleEvent();
+        e.SetID("weekly");
+        e.SetSummary("Review");
+        e.SetDescription(SchedulingUtil.SchedulingCommands._SimpleSchedule_SplitInHalfToNextDay.toString());
+        e.SetStartMillis(start.toInstant().toEpochMilli(), start.getOffset().getTotalSeconds() / 60);
+        e.SetEndMillis(start.plusHours(2).toInstant().toEpochMilli(), start.getOffset().getTotalSeconds() / 60);
+        e.SetTimeZone(zone.getId());
+        e.SetRecurrence(List.of("RRULE:FREQ=WEEKLY;COUNT=3"));
+        var backend = new InMemoryCalendarBackend();
+        backend.PutEvent(e);
+        return backend;
+    }
+
+    // Runs against the backend and returns every write the run sent, in a form that can be compared across runs
+    private static List<String> RecordWrites(InMemoryCalendarBackend backend, boolean incremental) throws Exception
+    {
+        var writes = new ArrayList<String>();
+        SchedulingUtil.SetBackend(backend);
+        SchedulingUtil.SetPipeline(new MutationPipeline(mutations -> {
+            for (var m : mutations) {
+                writes.add(Describe(m));
+            }
+            return backend.ExecuteBatch(mutations);
+        }));
+
+        var report = incremental ? SchedulingUtil.ProcessEventsIncremental(SimpleEvent.CALENDARID_PRIMARY, 250)
+                : SchedulingUtil.ProcessEvents(SimpleEvent.CALENDARID_PRIMARY, SchedulingUtil.GetEvents(SimpleEvent.CALENDARID_PRIMARY, 250));
+        assertEquals(0, report.GetFailed());
+        Collections.sort(writes);
+        return writes;
+    }
+
+    private static String Describe(EventMutation m)
+    {
+        var e = m.GetEvent();
+        return String.join(" ", m.GetOperation().toString(), e.GetID(), e.GetSummary(), e.GetStartRfc3339(),
+                Integer.toString(e.GetStartTimeZoneShift()), e.GetEndRfc3339(), e.GetTimeZone(), String.valueOf(e.GetRecurrence()),
+                e.GetRecurringEventID(), Long.toString(e.GetOriginalStartMillis()), new TreeMap<String, String>(e.GetExtendedProperties()).toString());
+    }
+
+    @Test
+    public void IncrementalRunWritesWhatAFullRunDoesForARecurringEvent() throws Exception
+    {
+        var full = RecordWrites(NewRecurringCalendar(), false);
+        var incremental = RecordWrites(NewRecurringCalendar(), true);
+
+        // Each instance is updated to its first half and the second half added
+        assertEquals(6, full.size());
+        assertEquals(3, full.stream().filter(w -> w.startsWith("Update weekly_") && w.contains(" America/New_York ")).count());
+        assertEquals(full, incremental);
+    }
+
+    @Test
+    public void IncrementalRunRedoesOnlyTheInstanceAUserChanged() throws Exception
+    {
+        var backend = NewRecurringCalendar();
+        assertEquals(6, RecordWrites(backend, true).size());
+        // Our own writes come back as changes, and are recognised as ours
+        assertEquals(List.of(), RecordWrites(backend, true));
+
+        var instances = new ArrayList<SimpleEvent>();
+        backend.GetEvents(SimpleEvent.CALENDARID_PRIMARY, 250).forEachRemaining(e -> {
+            if ("weekly".equals(e.GetRecurringEventID()))
+                instances.add(e);
+        });
+        assertEquals(3, instances.size());
+        var edited = instances.get(1);
+        edited.SetSummary("Review moved");
+        backend.PutEvent(edited);
+
+        var writes = RecordWrites(backend, true);
+
+        // The instance is already split, so only its second half is replaced; the other instances are left alone
+        assertEquals(2, writes.size(), writes.toString());
+        assertTrue(writes.get(0).startsWith("Add ") && writes.get(0).contains(" Review moved "), writes.get(0));
+        assertTrue(writes.get(1).startsWith("Delete ") && writes.get(1).contains("_SimpleSchedule_SourceID=" + edited.GetID()), writes.get(1));
+        var summaries = new ArrayList<String>();
+        backend.GetEvents(SimpleEvent.CALENDARID_PRIMARY, 250).forEachRemaining(e -> summaries.add(e.GetSummary()));
+        Collections.sort(summaries);
+        assertEquals(List.of("Review", "Review", "Review", "Review", "Review moved", "Review moved"), summaries);
+    }
+}
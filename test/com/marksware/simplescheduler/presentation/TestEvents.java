@@ -0,0 +1,66 @@
+package com.marksware.simplescheduler.presentation;
+
+import com.google.api.client.util.DateTime;
+import com.marksware.simplescheduler.models.SimpleEvent;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/*
+Events with every field set, and a check that two events agree on every field, for round trip tests
+ */
+class TestEvents {
+
+    static SimpleEvent NewEvent()
+    {
+        var e = new SimpleEvent();
+        e.SetCalendarID("team@example.com");
+        e.SetID("abc123_20260306T033000Z");
+        e.SetStatus("confirmed");
+        e.SetSummary("Planning");
+        e.SetLocation("Room 4");
+        e.SetDescription("Agenda\n" + SchedulingUtil.SchedulingCommands._SimpleSchedule_Split + "(3)");
+        e.SetStartDateTime(new DateTime("2026-03-06T19:30:00-08:00"));
+        e.SetEndDateTime(new DateTime("2026-03-06T21:00:00-08:00"));
+        e.SetTimeZone("America/Los_Angeles");
+        e.SetRecurringEventID("abc123");
+        e.SetOriginalStartMillis(new DateTime("2026-03-06T19:00:00-08:00").getValue());
+        var props = e.GetExtendedProperties();
+        props.put(SchedulingUtil.ScheduledIdentifiers._SimpleSchedule_OriginalStartDateTime.toString(), "2026-03-07T03:00:00.000Z");
+        props.put(SchedulingUtil.ScheduledIdentifiers._SimpleSchedule_UpdatedStartDateTime.toString(), "2026-03-07T03:30:00.000Z");
+        props.put("owner", "ops");
+        props.put("empty", null);
+        return e;
+    }
+
+    static SimpleEvent NewRecurringEvent()
+    {
+        var e = NewEvent();
+        e.SetID("abc123");
+        e.SetRecurringEventID(null);
+        e.SetOriginalStartMillis(SimpleEvent.NO_TIME);
+        e.SetRecurrence(new ArrayList<String>(List.of("RRULE:FREQ=WEEKLY;BYDAY=FR", "EXDATE;TZID=America/Los_Angeles:20260313T193000")));
+        return e;
+    }
+
+    static void AssertSameEvent(SimpleEvent expected, SimpleEvent actual)
+    {
+        assertEquals(expected.GetCalendarID(), actual.GetCalendarID());
+        assertEquals(expected.GetID(), actual.GetID());
+        assertEquals(expected.GetStatus(), actual.GetStatus());
+        assertEquals(expected.GetSummary(), actual.GetSummary());
+        assertEquals(expected.GetLocation(), actual.GetLocation());
+        assertEquals(expected.GetDescription(), actual.GetDescription());
+        assertEquals(expected.GetStartMillis(), actual.GetStartMillis());
+        assertEquals(expected.GetStartTimeZoneShift(), actual.GetStartTimeZoneShift());
+        assertEquals(expected.GetEndMillis(), actual.GetEndMillis());
+        assertEquals(expected.GetEndTimeZoneShift(), actual.GetEndTimeZoneShift());
+        assertEquals(expected.GetTimeZone(), actual.GetTimeZone());
+        assertEquals(expected.GetRecurrence(), actual.GetRecurrence());
+        assertEquals(expected.GetRecurringEventID(), actual.GetRecurringEventID());
+        assertEquals(expected.GetOriginalStartMillis(), actual.GetOriginalStartMillis());
+        assertEquals(expected.GetExtendedProperties(), actual.GetExtendedProperties());
+    }
+}